@@ -0,0 +1,150 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Switches the daemon to the preset mapped to the foreground app in
+ * {@link AppPresets}. The foreground app has to keep its preset for
+ * {@link #DEBOUNCE_MS} before the switch is made, so hopping between apps costs
+ * at most one fan.conf write once it settles. Leaving the mapped apps goes back
+ * to the preset that was selected before, unless another one was picked in the
+ * meantime.
+ */
+public class AppPresetSwitcher implements Closeable {
+    public interface Target {
+        /** Writes a preset selection, a subset of {@link AppPresets#PRESET_KEYS}, to fan.conf. */
+        void applyPreset(Map<String, String> values) throws IOException;
+    }
+
+    static final long POLL_MS = 2000;
+    /** Without any mapping only the mapping file is checked, this often. */
+    static final long IDLE_POLL_MS = 10000;
+    static final long DEBOUNCE_MS = 3000;
+
+    private final File presetsFile;
+    private final File configFile;
+    private final ForegroundApp foreground;
+    private final Target target;
+    private final DaemonLog log;
+
+    private AppPresets presets = AppPresets.EMPTY;
+    private long presetsStamp = Long.MIN_VALUE;
+    private Map<String, String> candidate;
+    private long candidateSince;
+    /** The selection this switcher made, or null while the one picked by hand is in effect. */
+    private Map<String, String> applied;
+    private Map<String, String> manual;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public AppPresetSwitcher(File presetsFile, File configFile, ForegroundApp foreground,
+                             Target target, DaemonLog log) {
+        this.presetsFile = presetsFile;
+        this.configFile = configFile;
+        this.foreground = foreground;
+        this.target = target;
+        this.log = log;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::loop, "AppPresetSwitcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                reloadPresets();
+                poll(System.currentTimeMillis());
+                Thread.sleep(presets.isEmpty() && applied == null ? IDLE_POLL_MS : POLL_MS);
+            }
+        } catch (InterruptedException e) {
+        }
+    }
+
+    private void reloadPresets() {
+        long stamp = presetsFile.lastModified() * 31 + presetsFile.length();
+        if (stamp == presetsStamp) {
+            return;
+        }
+        presetsStamp = stamp;
+        if (!presetsFile.exists()) {
+            presets = AppPresets.EMPTY;
+            return;
+        }
+        try {
+            presets = AppPresets.fromValues(ConfigFile.read(presetsFile));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable " + presetsFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void poll(long now) {
+        Map<String, String> wanted = null;
+        if (!presets.isEmpty()) {
+            for (String packageName : foreground.read()) {
+                wanted = presets.get(packageName);
+                if (wanted != null) {
+                    break;
+                }
+            }
+        }
+        if (!Objects.equals(wanted, candidate)) {
+            candidate = wanted;
+            candidateSince = now;
+            return;
+        }
+        if (now - candidateSince < DEBOUNCE_MS || Objects.equals(wanted, applied)) {
+            return;
+        }
+        try {
+            if (wanted != null) {
+                if (applied == null) {
+                    manual = currentSelection();
+                }
+                target.applyPreset(wanted);
+                applied = wanted;
+                log.log("Foreground app preset: " + wanted.get("CURRENT_PRESET"));
+            } else {
+                String uuid = currentSelection().get("CURRENT_PRESET_UUID");
+                if (manual != null && Objects.equals(uuid, applied.get("CURRENT_PRESET_UUID"))) {
+                    target.applyPreset(manual);
+                    log.log("Foreground app preset ended, back to " + manual.get("CURRENT_PRESET"));
+                }
+                applied = null;
+                manual = null;
+            }
+        } catch (IOException e) {
+            log.warn("Cannot switch preset: " + e.getMessage());
+            candidateSince = now;
+        }
+    }
+
+    private Map<String, String> currentSelection() throws IOException {
+        Map<String, String> config = ConfigFile.readWithBackup(configFile);
+        Map<String, String> selection = new LinkedHashMap<>();
+        for (String key : AppPresets.PRESET_KEYS) {
+            String value = config.get(key);
+            if (value != null) {
+                selection.put(key, value);
+            }
+        }
+        return selection;
+    }
+}
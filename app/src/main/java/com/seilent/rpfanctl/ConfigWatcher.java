@@ -0,0 +1,221 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps an in-memory snapshot of fan.conf. The module directory is watched with
+ * inotify (through {@link WatchService}); if that is unavailable the file's
+ * modification time is polled instead. Either way the file is only read again
+ * when it changes, and readers on the control loop never touch the filesystem.
+ *
+ * If fan.conf does not exist yet it is created from the old fan_config and
+ * fan_state files. Every good read is also saved as fan.conf.bak; a corrupt
+ * fan.conf is ignored while a snapshot is loaded, and restored from that copy
+ * when the daemon starts with one, before falling back to the old files.
+ */
+public class ConfigWatcher implements Closeable {
+    public interface Listener {
+        void onConfigChanged(DaemonConfig config);
+    }
+
+    private static final long POLL_FALLBACK_MS = 2000;
+    private static final long WATCH_RESCAN_MS = 60000;
+
+    private final File configFile;
+    private final File legacyConfigFile;
+    private final File legacyStateFile;
+    private final DaemonLog log;
+    private final AtomicReference<DaemonConfig> snapshot = new AtomicReference<>();
+
+    private volatile Listener listener;
+    private volatile boolean running;
+    private Thread thread;
+    private WatchService watchService;
+
+    private long configStamp = Long.MIN_VALUE;
+
+    public ConfigWatcher(File configFile, File legacyConfigFile, File legacyStateFile, DaemonLog log) {
+        this.configFile = configFile;
+        this.legacyConfigFile = legacyConfigFile;
+        this.legacyStateFile = legacyStateFile;
+        this.log = log;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public DaemonConfig current() {
+        return snapshot.get();
+    }
+
+    public void start() {
+        reload(true);
+        running = true;
+        thread = new Thread(this::watchLoop, "ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void watchLoop() {
+        WatchService service = openWatchService();
+        try {
+            if (service != null) {
+                watchEvents(service);
+            } else {
+                log.log("inotify unavailable, polling config every " + POLL_FALLBACK_MS + "ms");
+                pollTimestamps();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+        }
+    }
+
+    private synchronized WatchService openWatchService() {
+        try {
+            Path dir = configFile.getAbsoluteFile().getParentFile().toPath();
+            WatchService service = dir.getFileSystem().newWatchService();
+            dir.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchService = service;
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private void watchEvents(WatchService service) throws InterruptedException {
+        String configName = configFile.getName();
+        while (running) {
+            // The timeout doubles as a periodic rescan in case an event was lost.
+            WatchKey key = service.poll(WATCH_RESCAN_MS, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                reload(false);
+                continue;
+            }
+            boolean relevant = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object context = event.context();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || context == null) {
+                    relevant = true;
+                    continue;
+                }
+                String name = context.toString();
+                if (name.equals(configName)) {
+                    relevant = true;
+                }
+            }
+            if (relevant) {
+                reload(true);
+            }
+            if (!key.reset()) {
+                log.warn("Config directory is no longer watchable, polling instead");
+                pollTimestamps();
+                return;
+            }
+        }
+    }
+
+    private void pollTimestamps() throws InterruptedException {
+        while (running) {
+            Thread.sleep(POLL_FALLBACK_MS);
+            reload(false);
+        }
+    }
+
+    /** Reads the file again if forced by an event or if its mtime/size changed. */
+    private synchronized void reload(boolean force) {
+        long newConfigStamp = stamp(configFile);
+        if (!force && newConfigStamp == configStamp) {
+            return;
+        }
+        configStamp = newConfigStamp;
+        Map<String, String> values;
+        if (!configFile.exists()) {
+            values = migrate();
+        } else {
+            try {
+                values = ConfigFile.read(configFile);
+                saveBackup(values);
+            } catch (IOException e) {
+                if (snapshot.get() != null) {
+                    log.warn("Ignoring unreadable " + configFile.getName() + ": " + e.getMessage());
+                    return;
+                }
+                values = restoreBackup(e);
+            }
+        }
+        DaemonConfig config = DaemonConfig.fromValues(values);
+        DaemonConfig previous = snapshot.getAndSet(config);
+        Listener l = listener;
+        if (previous != null && l != null) {
+            l.onConfigChanged(config);
+        }
+    }
+
+    private void saveBackup(Map<String, String> values) {
+        try {
+            ConfigFile.write(ConfigFile.backupOf(configFile), values);
+        } catch (IOException e) {
+            log.warn("Cannot save " + ConfigFile.backupOf(configFile).getName() + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, String> restoreBackup(IOException error) {
+        File backup = ConfigFile.backupOf(configFile);
+        try {
+            Map<String, String> values = ConfigFile.read(backup);
+            ConfigFile.write(configFile, values);
+            configStamp = stamp(configFile);
+            log.warn("Restored unreadable " + configFile.getName() + " from " + backup.getName()
+                    + ": " + error.getMessage());
+            return values;
+        } catch (IOException e) {
+            log.warn("Replacing unreadable " + configFile.getName() + ": " + error.getMessage());
+            return migrate();
+        }
+    }
+
+    private Map<String, String> migrate() {
+        Map<String, String> values = ConfigFile.migrate(legacyConfigFile, legacyStateFile);
+        try {
+            ConfigFile.write(configFile, values);
+            configStamp = stamp(configFile);
+            log.log("Created " + configFile.getName() + " from " + legacyConfigFile.getName()
+                    + " and " + legacyStateFile.getName());
+        } catch (IOException e) {
+            log.error("Cannot write " + configFile.getName() + ": " + e.getMessage());
+        }
+        return values;
+    }
+
+    private static long stamp(File file) {
+        return file.lastModified() * 31 + file.length();
+    }
+}
@@ -0,0 +1,72 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Overall CPU utilisation from the aggregate line of /proc/stat, measured
+ * between consecutive calls. Uses a fixed buffer so sampling allocates nothing.
+ */
+public class CpuLoadMonitor implements Closeable {
+    private final RandomAccessFile file;
+    private final byte[] buffer = new byte[256];
+    private long lastTotal = -1;
+    private long lastIdle;
+    private float load;
+
+    public CpuLoadMonitor(File procStat) throws IOException {
+        this.file = new RandomAccessFile(procStat, "r");
+    }
+
+    /** Load in [0, 1] since the previous sample; 0 on the first call or on error. */
+    public float sample() {
+        int len;
+        try {
+            file.seek(0);
+            len = file.read(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            return 0;
+        }
+        if (len < 4 || buffer[0] != 'c' || buffer[1] != 'p' || buffer[2] != 'u') {
+            return 0;
+        }
+
+        long total = 0;
+        long idle = 0;
+        int field = 0;
+        int i = 3;
+        while (i < len && buffer[i] != '\n') {
+            while (i < len && buffer[i] == ' ') i++;
+            if (i >= len || buffer[i] < '0' || buffer[i] > '9') break;
+            long value = 0;
+            while (i < len && buffer[i] >= '0' && buffer[i] <= '9') {
+                value = value * 10 + (buffer[i] - '0');
+                i++;
+            }
+            // user nice system idle iowait irq softirq steal; guest time is already in user.
+            if (field < 8) {
+                total += value;
+                if (field == 3 || field == 4) idle += value;
+            }
+            field++;
+        }
+
+        if (lastTotal >= 0 && total > lastTotal) {
+            load = 1f - (float) (idle - lastIdle) / (total - lastTotal);
+            load = Math.max(0, Math.min(1, load));
+        }
+        lastTotal = total;
+        lastIdle = idle;
+        return load;
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+}
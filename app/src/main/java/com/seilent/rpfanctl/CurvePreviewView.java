@@ -0,0 +1,100 @@
+package com.seilent.rpfanctl;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Small read-only rendering of a preset's curve for the preset list. The path
+ * is sampled from the curve's lookup table and only rebuilt when the curve or
+ * the view size changes.
+ */
+public class CurvePreviewView extends View {
+    private static final int MIN_TEMP = 0;
+    private static final int MAX_TEMP = 100;
+
+    private final Path curvePath = new Path();
+    private final Path fillPath = new Path();
+    private Paint curvePaint;
+    private Paint fillPaint;
+    private FanCurve curve;
+
+    public CurvePreviewView(Context context) {
+        super(context);
+        init();
+    }
+
+    public CurvePreviewView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public CurvePreviewView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        boolean isDarkMode = (getResources().getConfiguration().uiMode
+                & android.content.res.Configuration.UI_MODE_NIGHT_MASK)
+                == android.content.res.Configuration.UI_MODE_NIGHT_YES;
+        float density = getResources().getDisplayMetrics().density;
+
+        curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        curvePaint.setColor(getContext().getColor(isDarkMode ? R.color.fan_curve_dark_curve : R.color.fan_curve_light_curve));
+        curvePaint.setStrokeWidth(2 * density);
+        curvePaint.setStyle(Paint.Style.STROKE);
+        curvePaint.setStrokeJoin(Paint.Join.ROUND);
+
+        fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fillPaint.setColor(getContext().getColor(isDarkMode ? R.color.fan_curve_dark_fill : R.color.fan_curve_light_fill));
+        fillPaint.setStyle(Paint.Style.FILL);
+    }
+
+    public void setCurve(FanCurve curve) {
+        this.curve = curve;
+        rebuildPaths();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        rebuildPaths();
+    }
+
+    private void rebuildPaths() {
+        curvePath.rewind();
+        fillPath.rewind();
+        int width = getWidth();
+        int height = getHeight();
+        if (curve == null || width == 0 || height == 0) {
+            return;
+        }
+        float inset = curvePaint.getStrokeWidth() / 2;
+        float bottom = height - inset;
+        float range = bottom - inset;
+        for (int x = 0; x <= width; x++) {
+            int tenths = (MIN_TEMP + (MAX_TEMP - MIN_TEMP) * x / width) * 10;
+            float y = bottom - range * curve.dutyForTenths(tenths) / FanCurve.MAX_DUTY;
+            if (x == 0) {
+                curvePath.moveTo(x, y);
+                fillPath.moveTo(x, bottom);
+            }
+            curvePath.lineTo(x, y);
+            fillPath.lineTo(x, y);
+        }
+        fillPath.lineTo(width, bottom);
+        fillPath.close();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawPath(fillPath, fillPaint);
+        canvas.drawPath(curvePath, curvePaint);
+    }
+}
@@ -0,0 +1,181 @@
+package com.seilent.rpfanctl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Client side of {@link DaemonProtocol}. A connection is used either for
+ * commands, each of which waits for its reply, or for a subscription.
+ * Replies are waited for at most {@link #CALL_TIMEOUT_MS}, so a hung daemon
+ * fails the call instead of blocking the caller; a subscription waits
+ * without a limit.
+ *
+ * Usage: DaemonClient (--tcp PORT | --socket NAME) COMMAND
+ * where COMMAND is subscribe, enable, disable, select NAME UUID,
+ * curve SPEC [KEY=VALUE ...], apply SPEC NAME UUID (enable|disable)
+ * or history SECONDS [MAX].
+ */
+public class DaemonClient implements Closeable {
+    public static final int CALL_TIMEOUT_MS = 2000;
+
+    private final Transport.Connection connection;
+    private final DataInputStream in;
+    private final OutputStream out;
+
+    private DaemonClient(Transport.Connection connection) throws IOException {
+        this.connection = connection;
+        this.in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+        this.out = connection.getOutputStream();
+        connection.setReadTimeout(CALL_TIMEOUT_MS);
+    }
+
+    public static DaemonClient connect(Transport.Client transport) throws IOException {
+        Transport.Connection connection = transport.connect();
+        try {
+            return new DaemonClient(connection);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public void setEnabled(boolean enabled) throws IOException {
+        call(DaemonProtocol.CMD_SET_ENABLED, DaemonProtocol.encodeEnabled(enabled));
+    }
+
+    public void selectPreset(String name, String uuid) throws IOException {
+        call(DaemonProtocol.CMD_SELECT_PRESET, DaemonProtocol.encodePreset(name, uuid));
+    }
+
+    public void setCurve(DaemonProtocol.CurveUpdate update) throws IOException {
+        call(DaemonProtocol.CMD_SET_CURVE, DaemonProtocol.encodeCurve(update));
+    }
+
+    /** Sends the curve, preset and enabled state as one command; null parts are left unchanged. */
+    public void apply(DaemonProtocol.Apply apply) throws IOException {
+        call(DaemonProtocol.CMD_APPLY, DaemonProtocol.encodeApply(apply));
+    }
+
+    /** Recorded history between the two times, at the finest resolution that fits in maxBuckets. */
+    public List<HistoryBucket> queryHistory(long fromMillis, long toMillis, int maxBuckets) throws IOException {
+        DaemonProtocol.writeFrame(out, DaemonProtocol.CMD_QUERY_HISTORY,
+                DaemonProtocol.encodeHistoryQuery(fromMillis, toMillis, maxBuckets));
+        DaemonProtocol.Frame reply = DaemonProtocol.readFrame(in);
+        if (reply.type == DaemonProtocol.RSP_ERROR) {
+            throw new IOException(DaemonProtocol.decodeError(reply));
+        }
+        if (reply.type != DaemonProtocol.RSP_HISTORY) {
+            throw new IOException("Unexpected reply " + reply.type);
+        }
+        return DaemonProtocol.decodeHistory(reply);
+    }
+
+    /** Subscribes and delivers pushed states until the connection closes. */
+    public void subscribe(Consumer<TelemetrySnapshot> listener) throws IOException {
+        connection.setReadTimeout(0);
+        DaemonProtocol.writeFrame(out, DaemonProtocol.CMD_SUBSCRIBE, new byte[0]);
+        while (true) {
+            DaemonProtocol.Frame frame = DaemonProtocol.readFrame(in);
+            if (frame.type == DaemonProtocol.EVT_STATE) {
+                listener.accept(DaemonProtocol.decodeState(frame));
+            } else if (frame.type == DaemonProtocol.RSP_ERROR) {
+                throw new IOException(DaemonProtocol.decodeError(frame));
+            }
+        }
+    }
+
+    private void call(int type, byte[] payload) throws IOException {
+        DaemonProtocol.writeFrame(out, type, payload);
+        DaemonProtocol.Frame reply = DaemonProtocol.readFrame(in);
+        if (reply.type == DaemonProtocol.RSP_ERROR) {
+            throw new IOException(DaemonProtocol.decodeError(reply));
+        }
+        if (reply.type != DaemonProtocol.RSP_ACK) {
+            throw new IOException("Unexpected reply " + reply.type);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (IOException e) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Transport.Client transport = null;
+        int i = 0;
+        for (; i < args.length - 1 && args[i].startsWith("--"); i += 2) {
+            if (args[i].equals("--tcp")) {
+                transport = LoopbackTransport.client(Integer.parseInt(args[i + 1]));
+            } else if (args[i].equals("--socket")) {
+                transport = Transport.localClient(args[i + 1]);
+            }
+        }
+        if (transport == null || i >= args.length) {
+            System.err.println("Usage: DaemonClient (--tcp PORT | --socket NAME) COMMAND [ARGS]");
+            System.exit(2);
+        }
+
+        try (DaemonClient client = connect(transport)) {
+            switch (args[i]) {
+                case "subscribe":
+                    try {
+                        client.subscribe(s -> System.out.println("state enabled=" + (s.enabled ? 1 : 0)
+                                + " temp=" + s.tempMilli + " duty=" + s.duty
+                                + " preset=" + s.presetName + " uuid=" + s.presetUuid
+                                + " cpu=" + s.cpuKhz + " gpu=" + s.gpuKhz + " throttle=" + s.throttlePercent
+                                + " rpm=" + s.rpm + (s.stalled ? " stalled" : "")));
+                    } catch (EOFException e) {
+                        System.out.println("daemon closed the connection");
+                    }
+                    return;
+                case "enable":
+                case "disable":
+                    client.setEnabled(args[i].equals("enable"));
+                    break;
+                case "select":
+                    client.selectPreset(args[i + 1], args[i + 2]);
+                    break;
+                case "curve":
+                    Map<String, String> options = new LinkedHashMap<>();
+                    for (int j = i + 2; j < args.length; j++) {
+                        int sep = args[j].indexOf('=');
+                        options.put(args[j].substring(0, sep), args[j].substring(sep + 1));
+                    }
+                    client.setCurve(new DaemonProtocol.CurveUpdate(FanCurve.parse(args[i + 1]), options));
+                    break;
+                case "apply":
+                    client.apply(new DaemonProtocol.Apply(
+                            new DaemonProtocol.CurveUpdate(FanCurve.parse(args[i + 1]), new LinkedHashMap<>()),
+                            new String[] {args[i + 2], args[i + 3]}, args[i + 4].equals("enable")));
+                    break;
+                case "history":
+                    long now = System.currentTimeMillis();
+                    long from = now - Long.parseLong(args[i + 1]) * 1000;
+                    int max = i + 2 < args.length ? Integer.parseInt(args[i + 2]) : DaemonProtocol.MAX_HISTORY_BUCKETS;
+                    for (HistoryBucket b : client.queryHistory(from, now, max)) {
+                        System.out.println("bucket start=" + b.startSeconds + " seconds=" + b.seconds
+                                + " temp=" + b.tempMinMilli + "/" + b.tempAvgMilli + "/" + b.tempMaxMilli
+                                + " duty=" + b.dutyMin + "/" + b.dutyAvg + "/" + b.dutyMax
+                                + " samples=" + b.samples + " flags=" + b.flags
+                                + " throttle=" + b.throttlePercent);
+                    }
+                    return;
+                default:
+                    System.err.println("Unknown command: " + args[i]);
+                    System.exit(2);
+            }
+            System.out.println("ok");
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.seilent.rpfanctl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary protocol between the app and the daemon. Every message is a frame of
+ * one type byte, a big-endian u16 payload length and the payload. Commands are
+ * answered with ACK or ERROR on the same connection (QUERY_HISTORY with
+ * HISTORY instead of ACK); after SUBSCRIBE the
+ * daemon pushes a STATE frame whenever the temperature, duty or state changes.
+ *
+ * SET_ENABLED    u8 enabled
+ * SELECT_PRESET  utf name, utf uuid
+ * SET_CURVE      u8 n, n x (u8 temp, u8 fan), u8 m, m x (utf key, utf value)
+ * SUBSCRIBE      (empty)
+ * QUERY_HISTORY  i64 from, i64 to (epoch millis), u16 max buckets
+ * APPLY          u8 flags, [SET_CURVE body], [utf name, utf uuid]; saved as one fan.conf update
+ * ERROR          utf message
+ * STATE          u8 flags, i32 millidegrees, i32 duty, i64 time, utf name, utf uuid,
+ *                i32 CPU kHz, i32 GPU kHz, u8 throttle percent, i32 rpm (-1 if unknown)
+ * HISTORY        u32 bucket seconds, u16 n, n x {@link HistoryBucket} (24 bytes)
+ *
+ * Strings use {@link DataOutputStream#writeUTF}; an empty string stands for null.
+ */
+public final class DaemonProtocol {
+    public static final String SOCKET_NAME = "rpfanctl";
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    public static final int CMD_SET_ENABLED = 0x01;
+    public static final int CMD_SELECT_PRESET = 0x02;
+    public static final int CMD_SET_CURVE = 0x03;
+    public static final int CMD_SUBSCRIBE = 0x04;
+    public static final int CMD_QUERY_HISTORY = 0x05;
+    public static final int CMD_APPLY = 0x06;
+
+    public static final int RSP_ACK = 0x80;
+    public static final int RSP_ERROR = 0x81;
+    public static final int EVT_STATE = 0x82;
+    public static final int RSP_HISTORY = 0x83;
+
+    /** Most buckets a HISTORY frame can carry. */
+    public static final int MAX_HISTORY_BUCKETS = (MAX_PAYLOAD - 6) / HistoryBucket.SIZE;
+
+    private static final int FLAG_ENABLED = 0x01;
+    private static final int FLAG_STALLED = 0x02;
+
+    private static final int APPLY_CURVE = 0x01;
+    private static final int APPLY_PRESET = 0x02;
+    private static final int APPLY_ENABLED = 0x04;
+    private static final int APPLY_ENABLED_ON = 0x08;
+
+    private DaemonProtocol() {
+    }
+
+    public static final class Frame {
+        public final int type;
+        public final byte[] payload;
+
+        public Frame(int type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public DataInputStream body() {
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        }
+    }
+
+    /** A SET_CURVE command: the points plus the other fan.conf keys of a preset. */
+    public static final class CurveUpdate {
+        public final FanCurve curve;
+        public final Map<String, String> options;
+
+        public CurveUpdate(FanCurve curve, Map<String, String> options) {
+            this.curve = curve;
+            this.options = options;
+        }
+    }
+
+    /** An APPLY command; null fields are left as they are. */
+    public static final class Apply {
+        public final CurveUpdate curve;
+        /** {name, uuid} */
+        public final String[] preset;
+        public final Boolean enabled;
+
+        public Apply(CurveUpdate curve, String[] preset, Boolean enabled) {
+            this.curve = curve;
+            this.preset = preset;
+            this.enabled = enabled;
+        }
+    }
+
+    public static void writeFrame(OutputStream out, int type, byte[] payload) throws IOException {
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IOException("Payload too large: " + payload.length);
+        }
+        byte[] frame = new byte[3 + payload.length];
+        frame[0] = (byte) type;
+        frame[1] = (byte) (payload.length >> 8);
+        frame[2] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 3, payload.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    /** Reads one frame; throws {@link java.io.EOFException} when the peer has closed. */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        int length = in.readUnsignedShort();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    public static byte[] encodeEnabled(boolean enabled) {
+        return new byte[] {(byte) (enabled ? 1 : 0)};
+    }
+
+    public static boolean decodeEnabled(Frame frame) throws IOException {
+        return frame.body().readUnsignedByte() != 0;
+    }
+
+    public static byte[] encodePreset(String name, String uuid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, name);
+        writeString(out, uuid);
+        return bytes.toByteArray();
+    }
+
+    /** Returns {name, uuid}. */
+    public static String[] decodePreset(Frame frame) throws IOException {
+        DataInputStream in = frame.body();
+        return new String[] {readString(in), readString(in)};
+    }
+
+    /** Points and options are counted in a byte, temperatures sent as u8 and fan speeds as 0-100. */
+    public static byte[] encodeCurve(CurveUpdate update) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeCurve(new DataOutputStream(bytes), update);
+        return bytes.toByteArray();
+    }
+
+    public static CurveUpdate decodeCurve(Frame frame) throws IOException {
+        return readCurve(frame.body());
+    }
+
+    public static byte[] encodeApply(Apply apply) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte((apply.curve != null ? APPLY_CURVE : 0)
+                | (apply.preset != null ? APPLY_PRESET : 0)
+                | (apply.enabled != null ? APPLY_ENABLED : 0)
+                | (Boolean.TRUE.equals(apply.enabled) ? APPLY_ENABLED_ON : 0));
+        if (apply.curve != null) {
+            writeCurve(out, apply.curve);
+        }
+        if (apply.preset != null) {
+            writeString(out, apply.preset[0]);
+            writeString(out, apply.preset[1]);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Apply decodeApply(Frame frame) throws IOException {
+        DataInputStream in = frame.body();
+        int flags = in.readUnsignedByte();
+        CurveUpdate curve = (flags & APPLY_CURVE) != 0 ? readCurve(in) : null;
+        String[] preset = (flags & APPLY_PRESET) != 0 ? new String[] {readString(in), readString(in)} : null;
+        Boolean enabled = (flags & APPLY_ENABLED) != 0 ? (flags & APPLY_ENABLED_ON) != 0 : null;
+        return new Apply(curve, preset, enabled);
+    }
+
+    public static byte[] encodeError(String message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeString(new DataOutputStream(bytes), message);
+        return bytes.toByteArray();
+    }
+
+    public static String decodeError(Frame frame) throws IOException {
+        return readString(frame.body());
+    }
+
+    public static byte[] encodeState(TelemetrySnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte((snapshot.enabled ? FLAG_ENABLED : 0) | (snapshot.stalled ? FLAG_STALLED : 0));
+        out.writeInt(snapshot.tempMilli);
+        out.writeInt(snapshot.duty);
+        out.writeLong(snapshot.timestamp);
+        writeString(out, snapshot.presetName);
+        writeString(out, snapshot.presetUuid);
+        out.writeInt(snapshot.cpuKhz);
+        out.writeInt(snapshot.gpuKhz);
+        out.writeByte(Math.max(0, Math.min(100, snapshot.throttlePercent)));
+        out.writeInt(snapshot.rpm);
+        return bytes.toByteArray();
+    }
+
+    public static TelemetrySnapshot decodeState(Frame frame) throws IOException {
+        DataInputStream in = frame.body();
+        int flags = in.readUnsignedByte();
+        int tempMilli = in.readInt();
+        int duty = in.readInt();
+        long timestamp = in.readLong();
+        String name = readString(in);
+        String uuid = readString(in);
+        int cpuKhz = in.readInt();
+        int gpuKhz = in.readInt();
+        int throttlePercent = in.readUnsignedByte();
+        int rpm = in.readInt();
+        return new TelemetrySnapshot(timestamp, (flags & FLAG_ENABLED) != 0, name, uuid, duty, tempMilli,
+                cpuKhz, gpuKhz, throttlePercent, rpm, (flags & FLAG_STALLED) != 0);
+    }
+
+    public static byte[] encodeHistoryQuery(long fromMillis, long toMillis, int maxBuckets) {
+        return ByteBuffer.allocate(18).putLong(fromMillis).putLong(toMillis)
+                .putShort((short) Math.min(maxBuckets, MAX_HISTORY_BUCKETS)).array();
+    }
+
+    /** Returns {from, to, max buckets}. */
+    public static long[] decodeHistoryQuery(Frame frame) throws IOException {
+        DataInputStream in = frame.body();
+        return new long[] {in.readLong(), in.readLong(), in.readUnsignedShort()};
+    }
+
+    public static byte[] encodeHistory(List<HistoryBucket> buckets) {
+        int count = Math.min(buckets.size(), MAX_HISTORY_BUCKETS);
+        int first = buckets.size() - count;
+        ByteBuffer out = ByteBuffer.allocate(6 + count * HistoryBucket.SIZE);
+        out.putInt(count > 0 ? buckets.get(first).seconds : 0);
+        out.putShort((short) count);
+        for (int i = first; i < buckets.size(); i++) {
+            HistoryBucket b = buckets.get(i);
+            HistoryBucket.write(out, b.startSeconds, b.tempMinMilli, b.tempMaxMilli, b.tempAvgMilli,
+                    b.dutyMin, b.dutyMax, b.dutyAvg, b.samples, b.flags, b.throttlePercent, b.presetHash);
+        }
+        return out.array();
+    }
+
+    public static List<HistoryBucket> decodeHistory(Frame frame) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(frame.payload);
+        if (in.remaining() < 6) {
+            throw new IOException("Truncated history");
+        }
+        int seconds = in.getInt();
+        int count = in.getShort() & 0xFFFF;
+        if (in.remaining() < count * HistoryBucket.SIZE) {
+            throw new IOException("Truncated history");
+        }
+        List<HistoryBucket> buckets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            buckets.add(HistoryBucket.read(in, seconds));
+        }
+        return buckets;
+    }
+
+    private static void writeCurve(DataOutputStream out, CurveUpdate update) throws IOException {
+        FanCurve curve = update.curve;
+        if (curve.size() > 255) {
+            throw new IOException("Too many curve points: " + curve.size());
+        }
+        if (update.options.size() > 255) {
+            throw new IOException("Too many curve options: " + update.options.size());
+        }
+        out.writeByte(curve.size());
+        for (int i = 0; i < curve.size(); i++) {
+            int temp = curve.getTemperature(i);
+            int fan = curve.getFanPercent(i);
+            if (temp < 0 || temp > 255 || fan < 0 || fan > 100) {
+                throw new IOException("Curve point out of range: " + temp + ":" + fan);
+            }
+            out.writeByte(temp);
+            out.writeByte(fan);
+        }
+        out.writeByte(update.options.size());
+        for (Map.Entry<String, String> option : update.options.entrySet()) {
+            writeString(out, option.getKey());
+            writeString(out, option.getValue());
+        }
+    }
+
+    private static CurveUpdate readCurve(DataInputStream in) throws IOException {
+        int points = in.readUnsignedByte();
+        int[] temps = new int[points];
+        int[] fans = new int[points];
+        for (int i = 0; i < points; i++) {
+            temps[i] = in.readUnsignedByte();
+            fans[i] = in.readUnsignedByte();
+        }
+        int count = in.readUnsignedByte();
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            options.put(readString(in), readString(in));
+        }
+        return new CurveUpdate(new FanCurve(temps, fans), options);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeUTF(value != null ? value : "");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        String value = in.readUTF();
+        return value.isEmpty() ? null : value;
+    }
+}
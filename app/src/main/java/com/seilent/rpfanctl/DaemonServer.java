@@ -0,0 +1,202 @@
+package com.seilent.rpfanctl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves {@link DaemonProtocol} on a {@link Transport.Server}. Each client gets
+ * a thread that reads its commands; a subscribed client also gets a pusher
+ * thread that sends the latest state, so a slow reader never blocks the
+ * control loop, it just misses intermediate states.
+ */
+public class DaemonServer implements Closeable {
+    public interface Handler {
+        void setEnabled(boolean enabled) throws IOException;
+
+        void selectPreset(String name, String uuid) throws IOException;
+
+        void setCurve(DaemonProtocol.CurveUpdate update) throws IOException;
+
+        /** Saves every part of {@code apply} in one fan.conf update, or none of it. */
+        void apply(DaemonProtocol.Apply apply) throws IOException;
+
+        List<HistoryBucket> queryHistory(long fromMillis, long toMillis, int maxBuckets) throws IOException;
+    }
+
+    private final Transport.Server transport;
+    private final Handler handler;
+    private final DaemonLog log;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Object stateLock = new Object();
+
+    private TelemetrySnapshot latest = TelemetrySnapshot.EMPTY;
+    private long version;
+    private volatile boolean closed;
+
+    public DaemonServer(Transport.Server transport, Handler handler, DaemonLog log) {
+        this.transport = transport;
+        this.handler = handler;
+        this.log = log;
+    }
+
+    public void start() {
+        startThread("DaemonServer", this::acceptLoop);
+    }
+
+    public boolean hasSubscribers() {
+        return subscribers.get() > 0;
+    }
+
+    /**
+     * Hands a new state to subscribers; unchanged states are dropped. The daemon
+     * only publishes while {@link #hasSubscribers()}, so the state is forgotten
+     * when the last subscriber leaves, and the next one waits for a fresh state
+     * rather than getting an old one.
+     */
+    public void publish(TelemetrySnapshot snapshot) {
+        synchronized (stateLock) {
+            if (snapshot.sameState(latest)) {
+                return;
+            }
+            latest = snapshot;
+            version++;
+            stateLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            transport.close();
+        } catch (IOException e) {
+        }
+        synchronized (stateLock) {
+            stateLock.notifyAll();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Transport.Connection connection;
+            try {
+                connection = transport.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Control socket failed: " + e.getMessage());
+                }
+                return;
+            }
+            startThread("DaemonClient", () -> serve(connection));
+        }
+    }
+
+    private void serve(Transport.Connection connection) {
+        boolean subscribed = false;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            OutputStream out = connection.getOutputStream();
+            while (!closed) {
+                DaemonProtocol.Frame frame = DaemonProtocol.readFrame(in);
+                if (frame.type == DaemonProtocol.CMD_SUBSCRIBE) {
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscribers.incrementAndGet();
+                        startThread("DaemonPush", () -> push(connection, out));
+                    }
+                    reply(out, DaemonProtocol.RSP_ACK, new byte[0]);
+                    continue;
+                }
+                try {
+                    if (frame.type == DaemonProtocol.CMD_QUERY_HISTORY) {
+                        long[] query = DaemonProtocol.decodeHistoryQuery(frame);
+                        List<HistoryBucket> buckets = handler.queryHistory(query[0], query[1], (int) query[2]);
+                        reply(out, DaemonProtocol.RSP_HISTORY, DaemonProtocol.encodeHistory(buckets));
+                        continue;
+                    }
+                    handle(frame);
+                    reply(out, DaemonProtocol.RSP_ACK, new byte[0]);
+                } catch (IOException e) {
+                    reply(out, DaemonProtocol.RSP_ERROR, DaemonProtocol.encodeError(e.getMessage()));
+                }
+            }
+        } catch (EOFException e) {
+        } catch (IOException e) {
+            log.debug("Control client dropped: " + e.getMessage());
+        } finally {
+            if (subscribed && subscribers.decrementAndGet() == 0) {
+                synchronized (stateLock) {
+                    latest = TelemetrySnapshot.EMPTY;
+                }
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    private void handle(DaemonProtocol.Frame frame) throws IOException {
+        switch (frame.type) {
+            case DaemonProtocol.CMD_SET_ENABLED:
+                handler.setEnabled(DaemonProtocol.decodeEnabled(frame));
+                break;
+            case DaemonProtocol.CMD_SELECT_PRESET:
+                String[] preset = DaemonProtocol.decodePreset(frame);
+                handler.selectPreset(preset[0], preset[1]);
+                break;
+            case DaemonProtocol.CMD_SET_CURVE:
+                handler.setCurve(DaemonProtocol.decodeCurve(frame));
+                break;
+            case DaemonProtocol.CMD_APPLY:
+                handler.apply(DaemonProtocol.decodeApply(frame));
+                break;
+            default:
+                throw new IOException("Unknown command " + frame.type);
+        }
+    }
+
+    private void push(Transport.Connection connection, OutputStream out) {
+        long sent = -1;
+        try {
+            while (!closed) {
+                TelemetrySnapshot snapshot;
+                synchronized (stateLock) {
+                    while (!closed && version == sent) {
+                        stateLock.wait();
+                    }
+                    snapshot = latest;
+                    sent = version;
+                }
+                if (snapshot != TelemetrySnapshot.EMPTY) {
+                    reply(out, DaemonProtocol.EVT_STATE, DaemonProtocol.encodeState(snapshot));
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            closeQuietly(connection);
+        }
+    }
+
+    // Replies and pushed states share the stream, so whole frames are written under its lock.
+    private static void reply(OutputStream out, int type, byte[] payload) throws IOException {
+        synchronized (out) {
+            DaemonProtocol.writeFrame(out, type, payload);
+        }
+    }
+
+    private static void startThread(String name, Runnable body) {
+        Thread thread = new Thread(body, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.seilent.rpfanctl;
 
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import androidx.annotation.ColorRes;
@@ -20,13 +22,45 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Interactive curve editor. The grid, axes and labels are drawn once into a
+ * bitmap that is only redrawn when the size or the night mode changes; the
+ * curve is evaluated into a reused duty table and reused paths whenever the
+ * points change, so drawing and dragging allocate nothing.
+ *
+ * Telemetry samples can be added to show the current operating point and a
+ * trail of recent ones. The trail lives in a fixed-size ring buffer and is
+ * drawn with a reused path, so samples never touch the cached layer.
+ */
 public class FanCurveView extends View {
     private List<Preset.TempPoint> points;
+    private FanCurve.Interpolation interpolation = FanCurve.Interpolation.STEP;
 
     private static final int MIN_TEMP = 0;
     private static final int MAX_TEMP = 100;
     private static final int MIN_FAN = 0;
     private static final int MAX_FAN = 100;
+    private static final int GRID_STEP = 10;
+    private static final String[] FAN_LABELS = labels(MIN_FAN, MAX_FAN, "%");
+    private static final String[] TEMP_LABELS = labels(MIN_TEMP, MAX_TEMP, "°");
+
+    private Bitmap staticLayer;
+    private final Path curvePath = new Path();
+    private final Path fillPath = new Path();
+    private boolean curveDirty = true;
+    private final int[] dutyTable = new int[FanCurve.TABLE_SIZE];
+    private int[] curveTemps = new int[0];
+    private int[] curveFans = new int[0];
+    private double[] curveScratch = new double[0];
+
+    private static final int HISTORY_SIZE = 120;
+    private final int[] historyTenths = new int[HISTORY_SIZE];
+    private final int[] historyDuties = new int[HISTORY_SIZE];
+    private int historyHead;
+    private int historyCount;
+    private final Path historyPath = new Path();
+    private boolean historyDirty;
+    private boolean editable = true;
 
     private RectF graphArea;
     private int paddingLeft, paddingTop, paddingRight, paddingBottom;
@@ -46,6 +80,8 @@ public class FanCurveView extends View {
     private Paint textPaint;
     private Paint fillPaint;
     private Paint backgroundPaint;
+    private Paint livePaint;
+    private Paint historyPaint;
 
     private int pointRadius;
     private int selectedPointRadius;
@@ -118,6 +154,7 @@ public class FanCurveView extends View {
         int pointColor = getColor(isDarkMode ? R.color.fan_curve_dark_point : R.color.fan_curve_light_point);
         int curveColor = getColor(isDarkMode ? R.color.fan_curve_dark_curve : R.color.fan_curve_light_curve);
         int fillColor = getColor(isDarkMode ? R.color.fan_curve_dark_fill : R.color.fan_curve_light_fill);
+        int liveColor = getColor(isDarkMode ? R.color.fan_curve_dark_live : R.color.fan_curve_light_live);
 
         backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         backgroundPaint.setColor(bgColor);
@@ -159,16 +196,72 @@ public class FanCurveView extends View {
             selectedPointPaint.setShadowLayer(5 * density, 0, 0, Color.parseColor("#60000000"));
         }
 
+        livePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        livePaint.setColor(liveColor);
+        livePaint.setStyle(Paint.Style.FILL);
+
+        historyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        historyPaint.setColor(liveColor);
+        historyPaint.setAlpha(0x70);
+        historyPaint.setStrokeWidth(2 * density);
+        historyPaint.setStyle(Paint.Style.STROKE);
+        historyPaint.setStrokeJoin(Paint.Join.ROUND);
+
         textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         textPaint.setColor(textColor);
         textPaint.setTextSize(10 * density);
         textPaint.setTextAlign(Paint.Align.CENTER);
     }
 
+    private static String[] labels(int from, int to, String suffix) {
+        String[] labels = new String[to - from + 1];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (from + i) + suffix;
+        }
+        return labels;
+    }
+
+    /** "45°" without building a new string for temperatures on the axis. */
+    public static String temperatureLabel(int temp) {
+        return temp >= MIN_TEMP && temp <= MAX_TEMP ? TEMP_LABELS[temp - MIN_TEMP] : temp + "°";
+    }
+
+    public static String fanLabel(int fanPercent) {
+        return fanPercent >= MIN_FAN && fanPercent <= MAX_FAN ? FAN_LABELS[fanPercent - MIN_FAN] : fanPercent + "%";
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         calculateGraphArea();
+        releaseStaticLayer();
+        curveDirty = true;
+        historyDirty = true;
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        boolean dark = isDarkMode();
+        if (dark != isDarkMode) {
+            isDarkMode = dark;
+            initPaints(getResources().getDisplayMetrics().density);
+            releaseStaticLayer();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseStaticLayer();
+    }
+
+    private void releaseStaticLayer() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
     }
 
     private void calculateGraphArea() {
@@ -190,29 +283,67 @@ public class FanCurveView extends View {
         if (graphArea == null) {
             calculateGraphArea();
         }
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
 
-        canvas.drawRect(0, 0, getWidth(), getHeight(), backgroundPaint);
-
-        drawGrid(canvas);
-
-        drawAxes(canvas);
+        if (staticLayer == null) {
+            staticLayer = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            Canvas layerCanvas = new Canvas(staticLayer);
+            layerCanvas.drawRect(0, 0, getWidth(), getHeight(), backgroundPaint);
+            drawGrid(layerCanvas);
+            drawAxes(layerCanvas);
+            drawAxisLabels(layerCanvas);
+        }
+        canvas.drawBitmap(staticLayer, 0, 0, null);
 
-        drawAxisLabels(canvas);
+        if (points.size() >= 1) {
+            if (curveDirty) {
+                rebuildCurvePaths();
+            }
+            canvas.drawPath(fillPath, fillPaint);
+            canvas.drawPath(curvePath, curvePaint);
+        }
 
-        drawCurveFill(canvas);
+        if (editable) {
+            drawPoints(canvas);
+        }
+        drawHistory(canvas);
+    }
 
-        drawCurve(canvas);
+    private void drawHistory(Canvas canvas) {
+        if (historyCount == 0) {
+            return;
+        }
+        if (historyDirty) {
+            historyPath.rewind();
+            int oldest = (historyHead - historyCount + HISTORY_SIZE) % HISTORY_SIZE;
+            for (int i = 0; i < historyCount; i++) {
+                int slot = (oldest + i) % HISTORY_SIZE;
+                float x = tenthsToX(historyTenths[slot]);
+                float y = dutyToY(historyDuties[slot]);
+                if (i == 0) {
+                    historyPath.moveTo(x, y);
+                } else {
+                    historyPath.lineTo(x, y);
+                }
+            }
+            historyDirty = false;
+        }
+        canvas.drawPath(historyPath, historyPaint);
 
-        drawPoints(canvas);
+        int latest = (historyHead - 1 + HISTORY_SIZE) % HISTORY_SIZE;
+        canvas.drawCircle(tenthsToX(historyTenths[latest]), dutyToY(historyDuties[latest]),
+                pointRadius / 2f, livePaint);
     }
 
     private void drawGrid(Canvas canvas) {
-        for (int temp = MIN_TEMP; temp <= MAX_TEMP; temp += 10) {
+        for (int temp = MIN_TEMP; temp <= MAX_TEMP; temp += GRID_STEP) {
             float x = tempToX(temp);
             canvas.drawLine(x, graphArea.top, x, graphArea.bottom, gridPaint);
         }
 
-        for (int fan = 0; fan <= MAX_FAN; fan += 10) {
+        for (int fan = MIN_FAN; fan <= MAX_FAN; fan += GRID_STEP) {
             float y = fanToY(fan);
             canvas.drawLine(graphArea.left, y, graphArea.right, y, gridPaint);
         }
@@ -227,69 +358,49 @@ public class FanCurveView extends View {
     private void drawAxisLabels(Canvas canvas) {
         textPaint.setTextAlign(Paint.Align.RIGHT);
 
-        for (int fan = 0; fan <= MAX_FAN; fan += 10) {
+        for (int fan = MIN_FAN; fan <= MAX_FAN; fan += GRID_STEP) {
             float y = fanToY(fan);
-            canvas.drawText(fan + "%", paddingLeft - 6, y + 3, textPaint);
+            canvas.drawText(fanLabel(fan), paddingLeft - 6, y + 3, textPaint);
         }
 
         textPaint.setTextAlign(Paint.Align.CENTER);
 
-        for (int temp = MIN_TEMP; temp <= MAX_TEMP; temp += 10) {
+        for (int temp = MIN_TEMP; temp <= MAX_TEMP; temp += GRID_STEP) {
             float x = tempToX(temp);
-            canvas.drawText(temp + "°", x, graphArea.bottom + paddingBottom - 6, textPaint);
+            canvas.drawText(temperatureLabel(temp), x, graphArea.bottom + paddingBottom - 6, textPaint);
         }
     }
 
-    private void drawCurveFill(Canvas canvas) {
-        if (points.size() < 1) return;
-
-        canvas.save();
-
-        Path clipPath = new Path();
-        Preset.TempPoint first = points.get(0);
-
-        clipPath.moveTo(tempToX(MIN_TEMP), fanToY(first.fanPercent));
-        clipPath.lineTo(tempToX(first.temperature), fanToY(first.fanPercent));
-
-        for (int i = 1; i < points.size(); i++) {
-            Preset.TempPoint point = points.get(i);
-            clipPath.lineTo(tempToX(point.temperature), fanToY(point.fanPercent));
+    /** Re-evaluates the curve into the reused table and paths; the fill is closed along the bottom axis. */
+    private void rebuildCurvePaths() {
+        int n = points.size();
+        if (curveTemps.length < n) {
+            curveTemps = new int[n];
+            curveFans = new int[n];
+            curveScratch = new double[2 * n];
         }
-
-        Preset.TempPoint last = points.get(points.size() - 1);
-        clipPath.lineTo(tempToX(MAX_TEMP), fanToY(last.fanPercent));
-
-        clipPath.lineTo(tempToX(MAX_TEMP), graphArea.bottom);
-
-        clipPath.lineTo(tempToX(MIN_TEMP), graphArea.bottom);
-
-        clipPath.close();
-
-        canvas.clipPath(clipPath);
-
-        canvas.drawRect(graphArea.left, graphArea.top, graphArea.right, graphArea.bottom, fillPaint);
-
-        canvas.restore();
-    }
-
-    private void drawCurve(Canvas canvas) {
-        if (points.size() < 1) return;
-
-        Path path = new Path();
-        Preset.TempPoint first = points.get(0);
-
-        path.moveTo(tempToX(MIN_TEMP), fanToY(first.fanPercent));
-        path.lineTo(tempToX(first.temperature), fanToY(first.fanPercent));
-
-        for (int i = 1; i < points.size(); i++) {
-            Preset.TempPoint point = points.get(i);
-            path.lineTo(tempToX(point.temperature), fanToY(point.fanPercent));
+        for (int i = 0; i < n; i++) {
+            curveTemps[i] = points.get(i).temperature;
+            curveFans[i] = points.get(i).fanPercent;
         }
-
-        Preset.TempPoint last = points.get(points.size() - 1);
-        path.lineTo(tempToX(MAX_TEMP), fanToY(last.fanPercent));
-
-        canvas.drawPath(path, curvePaint);
+        FanCurve.fillTable(curveTemps, curveFans, n, interpolation, dutyTable, curveScratch);
+
+        curvePath.rewind();
+        fillPath.rewind();
+        float startX = tenthsToX(MIN_TEMP * 10);
+        float startY = dutyToY(dutyTable[MIN_TEMP * 10]);
+        curvePath.moveTo(startX, startY);
+        fillPath.moveTo(startX, graphArea.bottom);
+        fillPath.lineTo(startX, startY);
+        for (int t = MIN_TEMP * 10 + 1; t <= MAX_TEMP * 10; t++) {
+            float x = tenthsToX(t);
+            float y = dutyToY(dutyTable[t]);
+            curvePath.lineTo(x, y);
+            fillPath.lineTo(x, y);
+        }
+        fillPath.lineTo(tempToX(MAX_TEMP), graphArea.bottom);
+        fillPath.close();
+        curveDirty = false;
     }
 
     private void drawPoints(Canvas canvas) {
@@ -323,6 +434,16 @@ public class FanCurveView extends View {
         return graphArea.left + ratio * graphArea.width();
     }
 
+    private float tenthsToX(int tenths) {
+        float ratio = (tenths / 10f - MIN_TEMP) / (MAX_TEMP - MIN_TEMP);
+        return graphArea.left + ratio * graphArea.width();
+    }
+
+    private float dutyToY(int duty) {
+        float ratio = (float) duty / FanCurve.MAX_DUTY;
+        return graphArea.bottom - ratio * graphArea.height();
+    }
+
     private int xToTemp(float x) {
         float ratio = (x - graphArea.left) / graphArea.width();
         return MIN_TEMP + (int) (ratio * (MAX_TEMP - MIN_TEMP));
@@ -340,6 +461,9 @@ public class FanCurveView extends View {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (!editable) {
+            return super.onTouchEvent(event);
+        }
         ViewParent parent = getParent();
         if (parent != null) {
             if (event.getAction() == MotionEvent.ACTION_DOWN || isDragging) {
@@ -426,6 +550,7 @@ public class FanCurveView extends View {
             }
         }
 
+        curveDirty = true;
         invalidate();
 
         if (onPointChangedListener != null) {
@@ -462,8 +587,13 @@ public class FanCurveView extends View {
     }
 
     public void setPoints(List<Preset.TempPoint> points) {
-        this.points = new ArrayList<>(points);
+        // Copies, so dragging never changes a preset that has not been saved.
+        this.points = new ArrayList<>(points.size());
+        for (Preset.TempPoint point : points) {
+            this.points.add(new Preset.TempPoint(point.temperature, point.fanPercent));
+        }
         Collections.sort(this.points, Comparator.comparingInt(Preset.TempPoint::getTemperature));
+        curveDirty = true;
         invalidate();
     }
 
@@ -471,6 +601,59 @@ public class FanCurveView extends View {
         return new ArrayList<>(points);
     }
 
+    public int getPointCount() {
+        return points.size();
+    }
+
+    public int getPointTemperature(int index) {
+        return points.get(index).temperature;
+    }
+
+    public int getPointFanPercent(int index) {
+        return points.get(index).fanPercent;
+    }
+
+    /** A read-only view shows the curve without handles and ignores touches. */
+    public void setEditable(boolean editable) {
+        this.editable = editable;
+        setClickable(editable);
+        setFocusable(editable);
+        if (!editable) {
+            selectedPointIndex = -1;
+            isDragging = false;
+        }
+        invalidate();
+    }
+
+    /** Moves the operating-point marker and extends the trail, dropping the oldest sample once full. */
+    public void addSample(int tempMilli, int duty) {
+        int tenths = Math.max(MIN_TEMP * 10, Math.min(MAX_TEMP * 10, tempMilli / 100));
+        historyTenths[historyHead] = tenths;
+        historyDuties[historyHead] = Math.max(0, Math.min(FanCurve.MAX_DUTY, duty));
+        historyHead = (historyHead + 1) % HISTORY_SIZE;
+        if (historyCount < HISTORY_SIZE) {
+            historyCount++;
+        }
+        historyDirty = true;
+        invalidate();
+    }
+
+    /** Call after changing points returned by {@link #getPoints()} in place. */
+    public void notifyPointsChanged() {
+        curveDirty = true;
+        invalidate();
+    }
+
+    public void setInterpolation(FanCurve.Interpolation interpolation) {
+        this.interpolation = interpolation;
+        curveDirty = true;
+        invalidate();
+    }
+
+    public FanCurve.Interpolation getInterpolation() {
+        return interpolation;
+    }
+
     public void setOnPointChangedListener(OnPointChangedListener listener) {
         this.onPointChangedListener = listener;
     }
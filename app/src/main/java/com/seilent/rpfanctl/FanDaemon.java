@@ -0,0 +1,602 @@
+package com.seilent.rpfanctl;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Root fan control loop. On the device it is started by rpfanctld through
+ * app_process with the APK on the classpath; on a desktop JVM it can be pointed
+ * at a fake sysfs tree with --root.
+ *
+ * Usage: FanDaemon [--root DIR] [--interval MS] [--ticks N] [--tcp PORT] [--dry-run] [--verbose]
+ * where --interval replaces adaptive scheduling with a fixed poll interval and
+ * --tcp serves the control protocol on a loopback port instead of the Unix socket.
+ */
+public class FanDaemon {
+    static final String MODULE_DIR = "/data/adb/modules/rpfanctl";
+    static final String THERMAL_DIR = "/sys/class/thermal";
+    static final String PWM_NODE = "/sys/class/gpio5_pwm2/duty";
+    static final String BACKLIGHT_DIR = "/sys/class/backlight";
+    static final String PROC_STAT = "/proc/stat";
+
+    /** Config changes wake the loop, so this only bounds how stale the status file gets. */
+    private static final long DISABLED_INTERVAL_MS = 60000;
+    /** While disabled but subscribed to, temperatures are still published this often. */
+    private static final long DISABLED_PUBLISH_INTERVAL_MS = 1000;
+    private static final long STATUS_PERIOD_MS = 30000;
+    private static final long THROTTLE_STATS_PERIOD_MS = 300000;
+    /** Written while the fan is stalled, in case full power gets it turning again. */
+    private static final int STALL_DUTY = FanCurve.MAX_DUTY;
+    /** Smallest duty change worth a write while the output is still slewing. */
+    private static final int MIN_APPLY_STEP = FanCurve.MAX_DUTY / 200;
+    /** fan.conf keys a SET_CURVE command may carry besides the points. */
+    private static final Set<String> CURVE_OPTIONS = new HashSet<>(Arrays.asList(
+            "FAN_INTERP", "FAN_CONTROLLER", "FAN_MODE", "FAN_PID", "FAN_SENSORS"));
+
+    private final File configFile;
+    private final File root;
+    private final File thermalDir;
+    private final File statusFile;
+    private final File historyFile;
+    private final File throttleStatsFile;
+    private volatile TelemetryHistory history;
+    private final FanActuator settingsActuator;
+    private FanActuator actuator;
+    private SysfsPwmActuator sysfsActuator;
+    private DaemonConfig appliedConfig;
+    private final DaemonLog log;
+    private final AdaptiveScheduler scheduler;
+    private final long maxTicks;
+    private final Transport.Server controlTransport;
+    private DaemonServer server;
+    private SysfsNode pwmReader;
+    private boolean pwmReaderFailed;
+    private long lastStatusWrite;
+
+    private final ConfigWatcher configWatcher;
+    private final ControlHandler controlHandler = new ControlHandler();
+    private final AppPresetSwitcher appPresetSwitcher;
+    private final Object wakeLock = new Object();
+
+    private final FanController controller =
+            new FanController(FanCurve.parse(null), ControllerSettings.DEFAULT);
+    private final PidController pidController = new PidController(PidSettings.DEFAULT, 0, 100);
+    private final SensorFusion sensorFusion = new SensorFusion();
+    private final RpmController rpmController = new RpmController(0);
+    private final StallDetector stallDetector = new StallDetector();
+    private FanTachometer tachometer;
+    private String tachOverride;
+    private boolean tachSearched;
+    private int rpm = FanTachometer.INVALID;
+    private boolean stalled;
+    private CpuLoadMonitor cpuLoad;
+    private FrequencyMonitor frequencies;
+    private ThrottleStats throttleStats = new ThrottleStats();
+    private long lastThrottleStatsWrite;
+    private boolean throttled;
+    private boolean active;
+    private int appliedDuty = -1;
+
+    /**
+     * @param settingsActuator the settings-provider path, used directly unless the
+     *                         config selects the sysfs actuator, and as its fallback
+     * @param controlTransport where to serve {@link DaemonProtocol}, or null for none
+     */
+    public FanDaemon(File root, FanActuator settingsActuator, DaemonLog log,
+                     AdaptiveScheduler scheduler, long maxTicks, Transport.Server controlTransport) {
+        this.root = root;
+        File moduleDir = resolve(root, MODULE_DIR);
+        this.configFile = new File(moduleDir, ConfigFile.NAME);
+        this.thermalDir = resolve(root, THERMAL_DIR);
+        this.statusFile = new File(moduleDir, "daemon_status");
+        this.historyFile = new File(moduleDir, TelemetryHistory.FILE_NAME);
+        this.throttleStatsFile = new File(moduleDir, ThrottleStats.FILE_NAME);
+        this.settingsActuator = settingsActuator;
+        this.actuator = settingsActuator;
+        this.log = log;
+        this.scheduler = scheduler;
+        this.maxTicks = maxTicks;
+        this.controlTransport = controlTransport;
+        this.configWatcher = new ConfigWatcher(configFile,
+                new File(moduleDir, "fan_config"), new File(moduleDir, "fan_state"), log);
+        this.appPresetSwitcher = new AppPresetSwitcher(new File(moduleDir, AppPresets.FILE_NAME), configFile,
+                new ForegroundApp(resolve(root, ForegroundApp.TOP_APP_DIR), resolve(root, ForegroundApp.PROC_DIR)),
+                controlHandler, log);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File root = null;
+        long interval = -1;
+        long ticks = -1;
+        int tcpPort = -1;
+        boolean dryRun = false;
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--root":
+                    root = new File(args[++i]);
+                    break;
+                case "--interval":
+                    interval = Long.parseLong(args[++i]);
+                    break;
+                case "--ticks":
+                    ticks = Long.parseLong(args[++i]);
+                    break;
+                case "--tcp":
+                    tcpPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--dry-run":
+                    dryRun = true;
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        DaemonLog log = new DaemonLog(new File(resolve(root, MODULE_DIR), "daemon.log"), verbose);
+        Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+        FanActuator actuator = dryRun ? new DryRunActuator(log) : new SettingsActuator(log);
+        AdaptiveScheduler scheduler = interval > 0
+                ? AdaptiveScheduler.fixed(interval)
+                : new AdaptiveScheduler(AdaptiveScheduler.DEFAULT_MIN_INTERVAL_MS,
+                        AdaptiveScheduler.DEFAULT_MAX_INTERVAL_MS,
+                        AdaptiveScheduler.DEFAULT_SCREEN_OFF_INTERVAL_MS);
+        Transport.Server transport = null;
+        try {
+            transport = tcpPort >= 0
+                    ? LoopbackTransport.listen(tcpPort)
+                    : Transport.localServer(DaemonProtocol.SOCKET_NAME);
+        } catch (IOException e) {
+            log.warn("Control socket unavailable: " + e.getMessage());
+        }
+        new FanDaemon(root, actuator, log, scheduler, ticks, transport).run();
+    }
+
+    static File resolve(File root, String path) {
+        return root == null ? new File(path) : new File(root, path);
+    }
+
+    public void run() throws IOException, InterruptedException {
+        log.log("Fan control daemon started");
+        configWatcher.setListener(config -> {
+            synchronized (wakeLock) {
+                wakeLock.notifyAll();
+            }
+        });
+        configWatcher.start();
+        try {
+            history = TelemetryHistory.open(historyFile);
+        } catch (IOException e) {
+            log.warn("Telemetry history unavailable: " + e.getMessage());
+        }
+        if (throttleStatsFile.exists()) {
+            try {
+                throttleStats = ThrottleStats.fromValues(ConfigFile.read(throttleStatsFile));
+            } catch (IOException e) {
+                log.warn("Starting new throttle stats: " + e.getMessage());
+            }
+        }
+        frequencies = FrequencyMonitor.open(root);
+        log.log("Clock domains: " + frequencies.getCpuClusterCount() + " CPU cluster(s)"
+                + (frequencies.hasGpu() ? ", GPU" : ", no GPU"));
+        if (controlTransport != null) {
+            server = new DaemonServer(controlTransport, controlHandler, log);
+            server.start();
+        }
+        appPresetSwitcher.start();
+        SysfsNode backlight = openBacklight();
+        try (TemperatureSensor zones = ThermalZones.open(thermalDir)) {
+            String[] zoneNames = zones.getNames();
+            String[] zoneTypes = zones.getTypes();
+            for (int i = 0; i < zoneNames.length; i++) {
+                log.log("Thermal zone " + zoneNames[i] + ": " + zoneTypes[i]);
+            }
+            for (long tick = 0; maxTicks < 0 || tick < maxTicks; tick++) {
+                scheduler.countWakeup();
+                long now = System.currentTimeMillis();
+                if (now - lastStatusWrite >= STATUS_PERIOD_MS) {
+                    writeStatus(now);
+                }
+                DaemonConfig config = configWatcher.current();
+                if (config != appliedConfig) {
+                    log.setLevel(config.logLevel);
+                    selectActuator(config);
+                    selectTachometer(config);
+                    controller.configure(config.curve, config.controller);
+                    pidController.configure(config.pid,
+                            config.curve.getMinFanPercent(), config.curve.getMaxFanPercent());
+                    sensorFusion.configure(config.sensors, zoneNames, zoneTypes, config.curve);
+                    if (sensorFusion.getZoneCount() == 0) {
+                        log.warn("No thermal zone matches " + config.sensors + ", using all zones");
+                        sensorFusion.configure(SensorSettings.parse("max"), zoneNames, zoneTypes, config.curve);
+                    }
+                    appliedConfig = config;
+                }
+                if (!config.enabled) {
+                    if (active) {
+                        actuator.restoreStock();
+                        active = false;
+                    }
+                    int tempMilli = sensorFusion.fuse(zones.read(), 0);
+                    int duty = readDuty(config);
+                    rpm = tachometer != null ? tachometer.readRpm() : FanTachometer.INVALID;
+                    sampleFrequencies(config, tempMilli, duty, now);
+                    record(config, tempMilli, duty, false, now);
+                    if (server != null && server.hasSubscribers()) {
+                        publish(config, tempMilli, duty, now);
+                        sleep(DISABLED_PUBLISH_INTERVAL_MS);
+                    } else {
+                        sleep(DISABLED_INTERVAL_MS);
+                    }
+                    continue;
+                }
+                if (!active) {
+                    active = true;
+                    actuator.enable();
+                    controller.reset();
+                    pidController.reset();
+                    rpmController.reset();
+                    stallDetector.reset();
+                    stalled = false;
+                    scheduler.reset();
+                    appliedDuty = -1;
+                }
+                int tempMilli = sensorFusion.fuse(zones.read(), 0);
+                rpm = tachometer != null ? tachometer.readRpm() : FanTachometer.INVALID;
+                int output;
+                int target;
+                if (config.mode == ControlMode.PID) {
+                    output = target = pidController.update(tempMilli, now, sampleCpuLoad());
+                } else {
+                    int demand = sensorFusion.getDemandedDuty();
+                    output = demand >= 0 ? controller.updateDemand(demand, tempMilli, now)
+                            : controller.update(tempMilli, now);
+                    target = controller.getTargetDuty();
+                }
+                checkStall(now);
+                if (stalled) {
+                    output = target = STALL_DUTY;
+                } else if (rpmController.isActive()) {
+                    int trimmed = rpmController.update(output, rpm, now);
+                    target += trimmed - output;
+                    output = trimmed;
+                }
+                apply(output, target, tempMilli);
+                boolean settling = appliedDuty != target;
+                int duty = readDuty(config);
+                sampleFrequencies(config, tempMilli, duty, now);
+                record(config, tempMilli, duty, settling, now);
+                publish(config, tempMilli, duty, now);
+                boolean screenOn = backlight == null || backlight.readInt(1) > 0;
+                sleep(scheduler.next(tempMilli, now, config.curve, settling, screenOn));
+            }
+        } finally {
+            appPresetSwitcher.close();
+            configWatcher.close();
+            frequencies.close();
+            writeThrottleStats();
+            if (tachometer != null) {
+                tachometer.close();
+            }
+            if (history != null) {
+                history.close();
+            }
+            if (server != null) {
+                server.close();
+            }
+            if (pwmReader != null) {
+                pwmReader.close();
+            }
+            if (backlight != null) {
+                backlight.close();
+            }
+            if (cpuLoad != null) {
+                cpuLoad.close();
+            }
+            if (sysfsActuator != null) {
+                sysfsActuator.close();
+            }
+        }
+    }
+
+    private SysfsNode openBacklight() {
+        File[] panels = resolve(root, BACKLIGHT_DIR).listFiles();
+        if (panels != null) {
+            for (File panel : panels) {
+                try {
+                    return SysfsNode.openRead(new File(panel, "brightness"));
+                } catch (IOException e) {
+                }
+            }
+        }
+        log.log("No backlight node found, assuming the screen is always on");
+        return null;
+    }
+
+    /** Publishes the scheduler state so wakeup savings can be checked from a shell. */
+    private void writeStatus(long now) {
+        lastStatusWrite = now;
+        File tmp = new File(statusFile.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(tmp)) {
+            writer.write("INTERVAL_MS=" + scheduler.getInterval() + "\n");
+            writer.write("WAKEUPS=" + scheduler.getWakeups() + "\n");
+            writer.write("ACTIVE=" + (active ? 1 : 0) + "\n");
+            writer.write("DUTY=" + appliedDuty + "\n");
+            writer.write("CPU_KHZ=" + frequencies.getCpuKhz() + "\n");
+            writer.write("GPU_KHZ=" + frequencies.getGpuKhz() + "\n");
+            writer.write("THROTTLE_PERCENT=" + frequencies.getThrottlePercent() + "\n");
+            writer.write("RPM=" + rpm + "\n");
+            writer.write("STALLED=" + (stalled ? 1 : 0) + "\n");
+            writer.write("UPDATED=" + now / 1000 + "\n");
+        } catch (IOException e) {
+            return;
+        }
+        if (!tmp.renameTo(statusFile)) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Samples the clocks and counts throttling against the preset in control,
+     * or against the stock service while disabled. Throttle events are saved
+     * straight away, the time spent every few minutes.
+     */
+    private void sampleFrequencies(DaemonConfig config, int tempMilli, int duty, long now) {
+        frequencies.sample();
+        int percent = frequencies.getThrottlePercent();
+        String key = config.enabled ? config.presetUuid : ThrottleStats.STOCK;
+        boolean started = throttleStats.record(key, percent > 0, now);
+        if (percent > 0 && !throttled) {
+            log.log("Throttling started at " + (tempMilli / 1000) + "C, fan " + FanCurve.dutyToPercent(duty)
+                    + "%: clocks capped " + percent + "% (CPU " + frequencies.getCpuKhz() / 1000
+                    + " MHz, GPU " + frequencies.getGpuKhz() / 1000 + " MHz)");
+        } else if (throttled && percent == 0) {
+            log.log("Throttling ended at " + (tempMilli / 1000) + "C");
+        }
+        throttled = percent > 0;
+        if (started || now - lastThrottleStatsWrite >= THROTTLE_STATS_PERIOD_MS) {
+            lastThrottleStatsWrite = now;
+            writeThrottleStats();
+        }
+    }
+
+    private void writeThrottleStats() {
+        try {
+            ConfigFile.write(throttleStatsFile, throttleStats.toValues());
+        } catch (IOException e) {
+            log.warn("Cannot save throttle stats: " + e.getMessage());
+        }
+    }
+
+    private void selectActuator(DaemonConfig config) {
+        FanActuator selected = settingsActuator;
+        if (config.useSysfsActuator()) {
+            File node = resolve(root, config.pwmNode != null ? config.pwmNode : PWM_NODE);
+            if (sysfsActuator == null || !sysfsActuator.getNode().equals(node)) {
+                if (sysfsActuator != null) {
+                    sysfsActuator.close();
+                }
+                sysfsActuator = new SysfsPwmActuator(node, settingsActuator, log);
+            }
+            selected = sysfsActuator;
+        }
+        if (selected != actuator) {
+            actuator = selected;
+            appliedDuty = -1;
+            log.log("Using " + (selected == settingsActuator ? "settings" : "sysfs " + sysfsActuator.getNode()) + " actuator");
+        }
+    }
+
+    /** Opens the tachometer FAN_TACH names, or looks for one the first time round. */
+    private void selectTachometer(DaemonConfig config) {
+        if (!tachSearched || !Objects.equals(config.tachNode, tachOverride)) {
+            tachSearched = true;
+            tachOverride = config.tachNode;
+            if (tachometer != null) {
+                tachometer.close();
+            }
+            tachometer = HwmonTachometer.find(root, config.tachNode,
+                    resolve(root, config.pwmNode != null ? config.pwmNode : PWM_NODE));
+            stallDetector.reset();
+            stalled = false;
+            log.log(tachometer != null ? "Fan tachometer: " + tachometer.getSource() : "No fan tachometer found");
+        }
+        if (config.maxRpm > 0 && tachometer == null) {
+            log.warn("FAN_MAX_RPM is set but there is no tachometer, using open-loop duty");
+        }
+        rpmController.configure(tachometer != null ? config.maxRpm : 0);
+    }
+
+    /** Forces {@link #STALL_DUTY} while a driven fan reads no speed, and raises the alert. */
+    private void checkStall(long now) {
+        boolean nowStalled = stallDetector.update(appliedDuty, rpm, now);
+        if (nowStalled && !stalled) {
+            log.error("Fan stalled: " + rpm + " RPM at " + FanCurve.dutyToPercent(appliedDuty)
+                    + "% duty, forcing full speed");
+        } else if (stalled && !nowStalled) {
+            log.warn("Fan turning again at " + rpm + " RPM");
+        }
+        stalled = nowStalled;
+    }
+
+    /** Sleeps until the next tick, or until the config changes. */
+    private void sleep(long millis) throws InterruptedException {
+        synchronized (wakeLock) {
+            wakeLock.wait(millis);
+        }
+    }
+
+    /** The duty the PWM node actually holds, which is the stock service's while disabled. */
+    private int readDuty(DaemonConfig config) {
+        if (pwmReader == null && !pwmReaderFailed) {
+            try {
+                pwmReader = SysfsNode.openRead(resolve(root, config.pwmNode != null ? config.pwmNode : PWM_NODE));
+            } catch (IOException e) {
+                pwmReaderFailed = true;
+            }
+        }
+        return pwmReader != null ? pwmReader.readInt(Math.max(0, appliedDuty)) : Math.max(0, appliedDuty);
+    }
+
+    /** Nothing is built while no client is subscribed, which is most ticks. */
+    private void publish(DaemonConfig config, int tempMilli, int duty, long now) {
+        if (server == null || !server.hasSubscribers()) {
+            return;
+        }
+        server.publish(new TelemetrySnapshot(now, config.enabled, config.presetName, config.presetUuid,
+                duty, tempMilli, frequencies.getCpuKhz(), frequencies.getGpuKhz(), frequencies.getThrottlePercent(),
+                rpm, active && stalled));
+    }
+
+    private void record(DaemonConfig config, int tempMilli, int duty, boolean settling, long now) {
+        if (history == null) {
+            return;
+        }
+        int flags = (config.enabled ? HistoryBucket.FLAG_ENABLED : 0)
+                | (config.mode == ControlMode.PID ? HistoryBucket.FLAG_PID : 0)
+                | (settling ? HistoryBucket.FLAG_SETTLING : 0)
+                | (active && stalled ? HistoryBucket.FLAG_STALLED : 0);
+        history.record(now, tempMilli, duty, flags, frequencies.getThrottlePercent(),
+                HistoryBucket.presetHash(config.presetUuid));
+    }
+
+    /**
+     * Applies protocol commands and foreground app switches by updating fan.conf,
+     * the file the app edits through su.
+     */
+    private class ControlHandler implements DaemonServer.Handler, AppPresetSwitcher.Target {
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            ConfigFile.update(configFile, Collections.singletonMap("ENABLED", enabled ? "1" : "0"));
+        }
+
+        @Override
+        public void selectPreset(String name, String uuid) throws IOException {
+            Map<String, String> values = new LinkedHashMap<>();
+            putPreset(values, name, uuid);
+            applyPreset(values);
+        }
+
+        @Override
+        public void applyPreset(Map<String, String> values) throws IOException {
+            for (String key : values.keySet()) {
+                if (!AppPresets.PRESET_KEYS.contains(key)) {
+                    throw new IOException("Not a preset key: " + key);
+                }
+            }
+            ConfigFile.update(configFile, values);
+        }
+
+        @Override
+        public void setCurve(DaemonProtocol.CurveUpdate update) throws IOException {
+            Map<String, String> values = new LinkedHashMap<>();
+            putCurve(values, update);
+            ConfigFile.update(configFile, values);
+        }
+
+        @Override
+        public void apply(DaemonProtocol.Apply apply) throws IOException {
+            Map<String, String> values = new LinkedHashMap<>();
+            if (apply.curve != null) {
+                putCurve(values, apply.curve);
+            }
+            if (apply.preset != null) {
+                putPreset(values, apply.preset[0], apply.preset[1]);
+            }
+            if (apply.enabled != null) {
+                values.put("ENABLED", apply.enabled ? "1" : "0");
+            }
+            if (!values.isEmpty()) {
+                ConfigFile.update(configFile, values);
+            }
+        }
+
+        private void putPreset(Map<String, String> values, String name, String uuid) {
+            values.put("CURRENT_PRESET", name != null ? name : "");
+            values.put("CURRENT_PRESET_UUID", uuid != null ? uuid : "");
+        }
+
+        private void putCurve(Map<String, String> values, DaemonProtocol.CurveUpdate update) throws IOException {
+            values.put("FAN_CURVE", update.curve.toString());
+            for (Map.Entry<String, String> option : update.options.entrySet()) {
+                if (!CURVE_OPTIONS.contains(option.getKey())) {
+                    throw new IOException("Not a curve option: " + option.getKey());
+                }
+                values.put(option.getKey(), option.getValue());
+            }
+        }
+
+        @Override
+        public List<HistoryBucket> queryHistory(long fromMillis, long toMillis, int maxBuckets) throws IOException {
+            TelemetryHistory h = history;
+            if (h == null) {
+                throw new IOException("Telemetry history unavailable");
+            }
+            return h.query(fromMillis, toMillis, maxBuckets);
+        }
+    }
+
+    private float sampleCpuLoad() {
+        if (cpuLoad == null) {
+            try {
+                cpuLoad = new CpuLoadMonitor(resolve(root, PROC_STAT));
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+        return cpuLoad.sample();
+    }
+
+    private void apply(int duty, int target, int tempMilli) {
+        if (duty == appliedDuty) {
+            return;
+        }
+        if (Math.abs(duty - appliedDuty) < MIN_APPLY_STEP && duty != target) {
+            return;
+        }
+        appliedDuty = duty;
+        actuator.setDuty(duty);
+        if (log.isLoggable(DaemonLog.Level.DEBUG)) {
+            log.debug("Temp: " + (tempMilli / 1000) + "C -> Fan: " + FanCurve.dutyToPercent(duty) + "% (Duty: " + duty + ")");
+        }
+    }
+
+    private static class DryRunActuator implements FanActuator {
+        private final DaemonLog log;
+
+        DryRunActuator(DaemonLog log) {
+            this.log = log;
+        }
+
+        @Override
+        public void enable() {
+            log.log("dry-run: enable");
+        }
+
+        @Override
+        public void setDuty(int duty) {
+            if (log.isLoggable(DaemonLog.Level.DEBUG)) {
+                log.debug("dry-run: duty " + duty);
+            }
+        }
+
+        @Override
+        public void restoreStock() {
+            log.log("dry-run: restore stock");
+        }
+    }
+}
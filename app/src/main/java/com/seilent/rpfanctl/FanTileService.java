@@ -1,22 +1,70 @@
 package com.seilent.rpfanctl;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.service.quicksettings.Tile;
 import android.service.quicksettings.TileService;
 
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Quick settings toggle. The tile is drawn from the cached {@link Telemetry}
+ * snapshot, never from a root call: a tap flips it at once and the change is
+ * committed on a background thread. The flipped state is shown until telemetry
+ * confirms it, and rolled back if the commit fails or is never confirmed.
+ * A tap before the first snapshot reads the real state from fan.conf first
+ * instead of toggling the placeholder.
+ */
 public class FanTileService extends TileService {
     private static final String TAG = "FanTileService";
+    /** How long a committed toggle is shown without telemetry confirming it. */
+    private static final long CONFIRM_TIMEOUT_MS = 5000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "FanTileService");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Telemetry.Observer telemetryObserver = this::onTelemetry;
+    private final Runnable confirmTimeout = this::dropPending;
+
+    /** The state the last tap asked for until telemetry reports it, or null. */
+    private Boolean pendingEnabled;
+    /** Counts taps, so only the result of the latest one settles the tile. */
+    private int toggles;
+    private boolean committing;
 
     @Override
     public void onClick() {
         super.onClick();
-        boolean isCustomEnabled = RootHelper.isFanControlEnabled();
-
-        if (isCustomEnabled) {
-            RootHelper.setFanControlEnabled(false);
-        } else {
-            RootHelper.setFanControlEnabled(true);
+        Boolean known = knownEnabled();
+        int toggle = ++toggles;
+        committing = true;
+        mainHandler.removeCallbacks(confirmTimeout);
+        if (known != null) {
+            pendingEnabled = !known;
+            updateTile();
         }
-        updateTile();
+        executor.execute(() -> {
+            boolean enabled;
+            if (known != null) {
+                enabled = !known;
+            } else {
+                Map<String, String> config = RootHelper.readConfig();
+                if (config == null) {
+                    mainHandler.post(() -> onCommitted(toggle, false));
+                    return;
+                }
+                enabled = !"1".equals(config.get("ENABLED"));
+                mainHandler.post(() -> showPending(toggle, enabled));
+            }
+            boolean committed = RootHelper.setFanControlEnabled(enabled);
+            mainHandler.post(() -> onCommitted(toggle, committed));
+        });
     }
 
     @Override
@@ -33,22 +81,80 @@ public class FanTileService extends TileService {
     public void onStartListening() {
         super.onStartListening();
         updateTile();
+        Telemetry.get().addObserver(telemetryObserver);
     }
 
     @Override
     public void onStopListening() {
         super.onStopListening();
+        Telemetry.get().removeObserver(telemetryObserver);
+    }
+
+    private void showPending(int toggle, boolean enabled) {
+        if (toggle == toggles) {
+            pendingEnabled = enabled;
+            updateTile();
+        }
+    }
+
+    private void onCommitted(int toggle, boolean committed) {
+        if (toggle != toggles) {
+            return;
+        }
+        committing = false;
+        if (!committed) {
+            dropPending();
+            return;
+        }
+        if (pendingEnabled != null && pendingEnabled == Telemetry.get().getLatest().enabled) {
+            dropPending();
+            return;
+        }
+        mainHandler.postDelayed(confirmTimeout, CONFIRM_TIMEOUT_MS);
+        Telemetry.get().refresh();
+    }
+
+    private void onTelemetry(TelemetrySnapshot snapshot) {
+        if (!committing && pendingEnabled != null && pendingEnabled == snapshot.enabled) {
+            dropPending();
+            return;
+        }
+        updateTile();
+    }
+
+    /** Goes back to whatever telemetry last reported. */
+    private void dropPending() {
+        mainHandler.removeCallbacks(confirmTimeout);
+        pendingEnabled = null;
+        updateTile();
+    }
+
+    private boolean isShownEnabled() {
+        return pendingEnabled != null ? pendingEnabled : Telemetry.get().getLatest().enabled;
+    }
+
+    /** The shown state, or null while there is neither a pending tap nor a real snapshot. */
+    private Boolean knownEnabled() {
+        if (pendingEnabled != null) {
+            return pendingEnabled;
+        }
+        TelemetrySnapshot latest = Telemetry.get().getLatest();
+        return latest != TelemetrySnapshot.EMPTY ? latest.enabled : null;
     }
 
     private void updateTile() {
         Tile tile = getQsTile();
         if (tile != null) {
-            boolean isEnabled = RootHelper.isFanControlEnabled();
+            boolean isEnabled = isShownEnabled();
+            TelemetrySnapshot snapshot = Telemetry.get().getLatest();
 
             tile.setState(isEnabled ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
 
-            if (isEnabled) {
-                String profileName = RootHelper.getCurrentPreset();
+            if (isEnabled && snapshot.stalled) {
+                tile.setLabel("Fan: STALLED");
+                tile.setContentDescription("Fan stalled - running at full power");
+            } else if (isEnabled) {
+                String profileName = snapshot.presetName != null ? snapshot.presetName : "Default";
                 tile.setLabel("Fan: " + profileName);
                 tile.setContentDescription("Fan control enabled - " + profileName);
             } else {
@@ -0,0 +1,95 @@
+package com.seilent.rpfanctl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packages running in the top-app cpuset, where Android puts the processes of
+ * the app in front. A poll reads that cgroup's process list and, for pids not
+ * seen before, their /proc cmdline; names are cached by pid, so the usual
+ * cost is one small read.
+ */
+public class ForegroundApp {
+    static final String TOP_APP_DIR = "/dev/cpuset/top-app";
+    static final String PROC_DIR = "/proc";
+
+    private final File procsFile;
+    private final File tasksFile;
+    private final File procDir;
+    private final Map<Integer, String> names = new HashMap<>();
+    private final Set<Integer> seen = new HashSet<>();
+    private final List<String> packages = new ArrayList<>();
+    private final byte[] buffer = new byte[4096];
+
+    public ForegroundApp(File topAppDir, File procDir) {
+        this.procsFile = new File(topAppDir, "cgroup.procs");
+        this.tasksFile = new File(topAppDir, "tasks");
+        this.procDir = procDir;
+    }
+
+    /** Package names of the foreground processes; the list is reused by the next call. */
+    public List<String> read() {
+        packages.clear();
+        seen.clear();
+        int len = readFile(procsFile.exists() ? procsFile : tasksFile, buffer);
+        // A full buffer may end in the middle of a pid, which is then dropped.
+        int end = len < buffer.length ? len + 1 : len;
+        int pid = -1;
+        for (int i = 0; i < end; i++) {
+            byte b = i < len ? buffer[i] : (byte) '\n';
+            if (b >= '0' && b <= '9') {
+                pid = (pid < 0 ? 0 : pid * 10) + (b - '0');
+            } else if (pid >= 0) {
+                addProcess(pid);
+                pid = -1;
+            }
+        }
+        names.keySet().retainAll(seen);
+        return packages;
+    }
+
+    private void addProcess(int pid) {
+        seen.add(pid);
+        String name = names.get(pid);
+        if (name == null) {
+            name = readPackage(pid);
+            names.put(pid, name);
+        }
+        if (!name.isEmpty() && !packages.contains(name)) {
+            packages.add(name);
+        }
+    }
+
+    /** The process name up to any ":service" suffix, or "" for kernel threads and exited pids. */
+    private String readPackage(int pid) {
+        byte[] cmdline = new byte[256];
+        int len = readFile(new File(new File(procDir, Integer.toString(pid)), "cmdline"), cmdline);
+        int end = 0;
+        while (end < len && cmdline[end] != 0 && cmdline[end] != ':') {
+            end++;
+        }
+        return new String(cmdline, 0, end, StandardCharsets.UTF_8).trim();
+    }
+
+    private static int readFile(File file, byte[] into) {
+        try (InputStream in = new FileInputStream(file)) {
+            int total = 0;
+            int n;
+            while (total < into.length && (n = in.read(into, total, into.length - total)) > 0) {
+                total += n;
+            }
+            return total;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
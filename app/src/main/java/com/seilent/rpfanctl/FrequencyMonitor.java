@@ -0,0 +1,191 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CPU and GPU clocks and the caps the kernel puts on them. Each cpufreq policy
+ * (the cpuN/cpufreq directory its cores share) and the GPU's kgsl or devfreq
+ * node is opened once; a sample reads the current clock and the current cap of
+ * each. The thermal framework throttles by lowering those caps, so a domain
+ * capped below its hardware maximum counts as throttled. A cap lowered by hand
+ * looks the same.
+ */
+public class FrequencyMonitor implements Closeable {
+    static final String CPU_DIR = "/sys/devices/system/cpu";
+    static final String KGSL_DIR = "/sys/class/kgsl/kgsl-3d0";
+    static final String DEVFREQ_DIR = "/sys/class/devfreq";
+
+    private final List<Domain> cpus;
+    private final Domain gpu;
+    private int cpuKhz;
+    private int gpuKhz;
+    private int throttlePercent;
+
+    private FrequencyMonitor(List<Domain> cpus, Domain gpu) {
+        this.cpus = cpus;
+        this.gpu = gpu;
+    }
+
+    /** Finds the clock domains under root (null for the real sysfs); missing ones are left out. */
+    public static FrequencyMonitor open(File root) {
+        List<Domain> cpus = new ArrayList<>();
+        Set<String> policies = new HashSet<>();
+        File[] dirs = FanDaemon.resolve(root, CPU_DIR).listFiles((dir, name) -> name.matches("cpu[0-9]+"));
+        if (dirs != null) {
+            Arrays.sort(dirs, (a, b) -> Integer.compare(cpuNumber(a), cpuNumber(b)));
+            for (File dir : dirs) {
+                File policy = new File(dir, "cpufreq");
+                try {
+                    if (policy.isDirectory() && policies.add(policy.getCanonicalPath())) {
+                        cpus.add(Domain.open(policy, "scaling_cur_freq", "scaling_max_freq",
+                                "cpuinfo_max_freq", 1));
+                    }
+                } catch (IOException e) {
+                }
+            }
+        }
+        return new FrequencyMonitor(cpus, openGpu(root));
+    }
+
+    private static Domain openGpu(File root) {
+        File kgsl = FanDaemon.resolve(root, KGSL_DIR);
+        try {
+            if (kgsl.isDirectory()) {
+                return Domain.open(kgsl, "gpuclk", "max_gpuclk", "gpu_available_frequencies", 1000);
+            }
+        } catch (IOException e) {
+        }
+        File[] devices = FanDaemon.resolve(root, DEVFREQ_DIR).listFiles();
+        if (devices != null) {
+            for (File device : devices) {
+                String name = device.getName().toLowerCase();
+                if (!name.contains("gpu") && !name.contains("kgsl") && !name.contains("mali")) {
+                    continue;
+                }
+                try {
+                    return Domain.open(device, "cur_freq", "max_freq", "available_frequencies", 1000);
+                } catch (IOException e) {
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int cpuNumber(File dir) {
+        return Integer.parseInt(dir.getName().substring(3));
+    }
+
+    public int getCpuClusterCount() {
+        return cpus.size();
+    }
+
+    public boolean hasGpu() {
+        return gpu != null;
+    }
+
+    public void sample() {
+        cpuKhz = 0;
+        throttlePercent = 0;
+        for (Domain cpu : cpus) {
+            cpu.read();
+            cpuKhz = Math.max(cpuKhz, cpu.curKhz);
+            throttlePercent = Math.max(throttlePercent, cpu.throttlePercent());
+        }
+        gpuKhz = 0;
+        if (gpu != null) {
+            gpu.read();
+            gpuKhz = gpu.curKhz;
+            throttlePercent = Math.max(throttlePercent, gpu.throttlePercent());
+        }
+    }
+
+    /** Clock of the fastest CPU cluster at the last sample, in kHz; 0 if unknown. */
+    public int getCpuKhz() {
+        return cpuKhz;
+    }
+
+    public int getGpuKhz() {
+        return gpuKhz;
+    }
+
+    /** How far the most limited domain was capped below its maximum at the last sample, 0 if none was. */
+    public int getThrottlePercent() {
+        return throttlePercent;
+    }
+
+    @Override
+    public void close() {
+        for (Domain cpu : cpus) {
+            cpu.close();
+        }
+        if (gpu != null) {
+            gpu.close();
+        }
+    }
+
+    private static final class Domain implements Closeable {
+        private final SysfsNode cur;
+        private final SysfsNode cap;
+        private final int maxKhz;
+        private final int divisor;
+        int curKhz;
+        int capKhz;
+
+        private Domain(SysfsNode cur, SysfsNode cap, int maxKhz, int divisor) {
+            this.cur = cur;
+            this.cap = cap;
+            this.maxKhz = maxKhz;
+            this.divisor = divisor;
+        }
+
+        /**
+         * @param maxName a node holding the hardware maximum, or the list of
+         *                available frequencies; in units of kHz times divisor
+         */
+        static Domain open(File dir, String curName, String capName, String maxName, int divisor)
+                throws IOException {
+            int max = 0;
+            String text = new String(Files.readAllBytes(new File(dir, maxName).toPath()), StandardCharsets.US_ASCII);
+            for (String value : text.trim().split("\\s+")) {
+                try {
+                    max = Math.max(max, (int) (Long.parseLong(value) / divisor));
+                } catch (NumberFormatException e) {
+                }
+            }
+            SysfsNode cur = SysfsNode.openRead(new File(dir, curName));
+            try {
+                return new Domain(cur, SysfsNode.openRead(new File(dir, capName)), max, divisor);
+            } catch (IOException e) {
+                cur.close();
+                throw e;
+            }
+        }
+
+        void read() {
+            curKhz = Math.max(0, cur.readInt(0) / divisor);
+            capKhz = Math.max(0, cap.readInt(0) / divisor);
+        }
+
+        int throttlePercent() {
+            if (maxKhz <= 0 || capKhz <= 0 || capKhz >= maxKhz) {
+                return 0;
+            }
+            return Math.max(1, (int) (100 - (long) capKhz * 100 / maxKhz));
+        }
+
+        @Override
+        public void close() {
+            cur.close();
+            cap.close();
+        }
+    }
+}
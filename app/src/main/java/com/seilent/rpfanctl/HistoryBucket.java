@@ -0,0 +1,105 @@
+package com.seilent.rpfanctl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Temperature and duty over one interval of {@link TelemetryHistory}: min, max
+ * and mean of the control-loop ticks that fell into it, the deepest clock
+ * throttling seen, plus the preset and controller state of the last one.
+ *
+ * Encoded in 24 bytes: u32 start (epoch seconds), i16 min/max/mean temperature
+ * in centidegrees, u16 min/max/mean duty, u16 tick count, u8 flags, u8 throttle
+ * percent, i32 preset hash. Buckets written before throttling was tracked hold 0.
+ */
+public final class HistoryBucket {
+    public static final int SIZE = 24;
+
+    public static final int FLAG_ENABLED = 0x01;
+    public static final int FLAG_PID = 0x02;
+    /** The output was still moving towards its target. */
+    public static final int FLAG_SETTLING = 0x04;
+    /** The tachometer read no speed although the fan was driven. */
+    public static final int FLAG_STALLED = 0x08;
+
+    public final long startSeconds;
+    public final int seconds;
+    public final int tempMinMilli;
+    public final int tempMaxMilli;
+    public final int tempAvgMilli;
+    public final int dutyMin;
+    public final int dutyMax;
+    public final int dutyAvg;
+    public final int samples;
+    public final int flags;
+    /** Most any clock domain was capped below its maximum, in percent; 0 if never. */
+    public final int throttlePercent;
+    public final int presetHash;
+
+    public HistoryBucket(long startSeconds, int seconds, int tempMinMilli, int tempMaxMilli, int tempAvgMilli,
+                         int dutyMin, int dutyMax, int dutyAvg, int samples, int flags, int throttlePercent, int presetHash) {
+        this.startSeconds = startSeconds;
+        this.seconds = seconds;
+        this.tempMinMilli = tempMinMilli;
+        this.tempMaxMilli = tempMaxMilli;
+        this.tempAvgMilli = tempAvgMilli;
+        this.dutyMin = dutyMin;
+        this.dutyMax = dutyMax;
+        this.dutyAvg = dutyAvg;
+        this.samples = samples;
+        this.flags = flags;
+        this.throttlePercent = throttlePercent;
+        this.presetHash = presetHash;
+    }
+
+    /** What a bucket stores for the preset, so the app can match it against its own UUIDs. */
+    public static int presetHash(String uuid) {
+        return uuid != null ? uuid.hashCode() : 0;
+    }
+
+    public boolean isEnabled() {
+        return (flags & FLAG_ENABLED) != 0;
+    }
+
+    public boolean isThrottled() {
+        return throttlePercent > 0;
+    }
+
+    static void write(ByteBuffer out, long startSeconds, int tempMin, int tempMax, int tempAvg,
+                      int dutyMin, int dutyMax, int dutyAvg, int samples, int flags, int throttlePercent, int presetHash) {
+        out.putInt((int) startSeconds);
+        out.putShort(centi(tempMin));
+        out.putShort(centi(tempMax));
+        out.putShort(centi(tempAvg));
+        out.putShort((short) clamp(dutyMin, 0, 0xFFFF));
+        out.putShort((short) clamp(dutyMax, 0, 0xFFFF));
+        out.putShort((short) clamp(dutyAvg, 0, 0xFFFF));
+        out.putShort((short) clamp(samples, 0, 0xFFFF));
+        out.put((byte) flags);
+        out.put((byte) clamp(throttlePercent, 0, 100));
+        out.putInt(presetHash);
+    }
+
+    static HistoryBucket read(ByteBuffer in, int seconds) {
+        long start = in.getInt() & 0xFFFFFFFFL;
+        int tempMin = in.getShort() * 10;
+        int tempMax = in.getShort() * 10;
+        int tempAvg = in.getShort() * 10;
+        int dutyMin = in.getShort() & 0xFFFF;
+        int dutyMax = in.getShort() & 0xFFFF;
+        int dutyAvg = in.getShort() & 0xFFFF;
+        int samples = in.getShort() & 0xFFFF;
+        int flags = in.get() & 0xFF;
+        int throttlePercent = in.get() & 0xFF;
+        int presetHash = in.getInt();
+        return new HistoryBucket(start, seconds, tempMin, tempMax, tempAvg,
+                dutyMin, dutyMax, dutyAvg, samples, flags, throttlePercent, presetHash);
+    }
+
+    private static short centi(int milli) {
+        return (short) clamp(milli / 10, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,83 @@
+package com.seilent.rpfanctl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A fan tachometer in sysfs: the node FAN_TACH names, else the first fanN_input
+ * of a /sys/class/hwmon device, else an rpm node next to the PWM duty node, as
+ * some PWM fan drivers provide. The node stays open, so a poll is one read.
+ */
+public class HwmonTachometer implements FanTachometer {
+    static final String HWMON_DIR = "/sys/class/hwmon";
+    private static final String[] PWM_SIBLINGS = {"rpm", "fan_rpm", "tach"};
+
+    private final SysfsNode node;
+
+    private HwmonTachometer(SysfsNode node) {
+        this.node = node;
+    }
+
+    /**
+     * @param override FAN_TACH, or null to search
+     * @return the tachometer, or null if the fan has none
+     */
+    public static HwmonTachometer find(File root, String override, File pwmNode) {
+        if (override != null) {
+            return open(FanDaemon.resolve(root, override));
+        }
+        File[] devices = FanDaemon.resolve(root, HWMON_DIR).listFiles();
+        if (devices != null) {
+            Arrays.sort(devices, Comparator.comparing(File::getName));
+            for (File device : devices) {
+                File[] inputs = device.listFiles((dir, name) -> name.matches("fan[0-9]+_input"));
+                if (inputs == null) {
+                    continue;
+                }
+                Arrays.sort(inputs, Comparator.comparing(File::getName));
+                for (File input : inputs) {
+                    HwmonTachometer tachometer = open(input);
+                    if (tachometer != null) {
+                        return tachometer;
+                    }
+                }
+            }
+        }
+        for (String name : PWM_SIBLINGS) {
+            File sibling = new File(pwmNode.getParentFile(), name);
+            if (sibling.exists()) {
+                HwmonTachometer tachometer = open(sibling);
+                if (tachometer != null) {
+                    return tachometer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static HwmonTachometer open(File path) {
+        try {
+            return new HwmonTachometer(SysfsNode.openRead(path));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getSource() {
+        return node.getPath();
+    }
+
+    @Override
+    public int readRpm() {
+        int rpm = node.readInt(INVALID);
+        return rpm >= 0 ? rpm : INVALID;
+    }
+
+    @Override
+    public void close() {
+        node.close();
+    }
+}
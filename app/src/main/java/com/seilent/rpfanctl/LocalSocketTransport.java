@@ -0,0 +1,104 @@
+package com.seilent.rpfanctl;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link Transport} over an abstract-namespace Unix socket. Any app can reach an
+ * abstract socket, so the server only keeps connections from root, shell and
+ * the companion app's uid.
+ */
+public final class LocalSocketTransport {
+    private static final String PACKAGE_DATA_DIR = "/data/data/com.seilent.rpfanctl";
+    private static final int SHELL_UID = 2000;
+
+    private LocalSocketTransport() {
+    }
+
+    public static Transport.Server listen(String name) throws IOException {
+        return new ServerImpl(new LocalServerSocket(name), appUid());
+    }
+
+    public static Transport.Client client(String name) {
+        return () -> {
+            LocalSocket socket = new LocalSocket();
+            try {
+                socket.connect(new LocalSocketAddress(name, LocalSocketAddress.Namespace.ABSTRACT));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return new ConnectionImpl(socket);
+        };
+    }
+
+    private static int appUid() {
+        try {
+            return Os.stat(PACKAGE_DATA_DIR).st_uid;
+        } catch (ErrnoException e) {
+            return -1;
+        }
+    }
+
+    private static final class ServerImpl implements Transport.Server {
+        private final LocalServerSocket socket;
+        private final int appUid;
+
+        ServerImpl(LocalServerSocket socket, int appUid) {
+            this.socket = socket;
+            this.appUid = appUid;
+        }
+
+        @Override
+        public Transport.Connection accept() throws IOException {
+            while (true) {
+                LocalSocket client = socket.accept();
+                int uid = client.getPeerCredentials().getUid();
+                if (uid == 0 || uid == SHELL_UID || uid == appUid || uid == appUid()) {
+                    return new ConnectionImpl(client);
+                }
+                client.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static final class ConnectionImpl implements Transport.Connection {
+        private final LocalSocket socket;
+
+        ConnectionImpl(LocalSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public void setReadTimeout(int millis) throws IOException {
+            socket.setSoTimeout(millis);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.seilent.rpfanctl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/** {@link Transport} over TCP on 127.0.0.1, for running the protocol off-device. */
+public final class LoopbackTransport {
+    private LoopbackTransport() {
+    }
+
+    /** Listens on the port; 0 picks a free one, see {@link #getPort}. */
+    public static Transport.Server listen(int port) throws IOException {
+        ServerSocket socket = new ServerSocket(port, 4, InetAddress.getLoopbackAddress());
+        return new ServerImpl(socket);
+    }
+
+    public static int getPort(Transport.Server server) {
+        return ((ServerImpl) server).socket.getLocalPort();
+    }
+
+    public static Transport.Client client(int port) {
+        return () -> new ConnectionImpl(new Socket(InetAddress.getLoopbackAddress(), port));
+    }
+
+    private static final class ServerImpl implements Transport.Server {
+        final ServerSocket socket;
+
+        ServerImpl(ServerSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public Transport.Connection accept() throws IOException {
+            return new ConnectionImpl(socket.accept());
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static final class ConnectionImpl implements Transport.Connection {
+        private final Socket socket;
+
+        ConnectionImpl(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public void setReadTimeout(int millis) throws IOException {
+            socket.setSoTimeout(millis);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
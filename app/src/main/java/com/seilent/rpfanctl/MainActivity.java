@@ -5,11 +5,11 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.service.quicksettings.TileService;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -29,22 +29,36 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.android.material.textview.MaterialTextView;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
     private static final String PREFS = "FanPrefs";
     private static final String KEY_PRESETS = "presets";
     private static final String KEY_CURRENT_PRESET = "current_preset";
+    /** Package name to the UUID of the preset the daemon switches to while it is in front. */
+    private static final String APP_PRESET_PREFS = "AppPresets";
 
     private SharedPreferences prefs;
+    private SharedPreferences appPresetPrefs;
+    private final Map<String, String> appPresets = new HashMap<>();
+    private PresetRepository presetRepository;
     private ArrayList<Preset> presets;
     private PresetAdapter presetAdapter;
     private RecyclerView presetRecyclerView;
     private TextView temperatureDisplay;
     private TextView fanSpeedDisplay;
+    private TextView clockDisplay;
+    private android.content.res.ColorStateList fanSpeedColors;
+    private FanCurveView liveCurve;
     private MaterialSwitch customControlSwitch;
     private MaterialTextView controlLabel;
     private FloatingActionButton fabAddPreset;
@@ -56,8 +70,11 @@ public class MainActivity extends AppCompatActivity {
     private RootHelper.PrerequisiteStatus prereqStatus;
     private AlertDialog prereqDialog;
 
-    private Handler statusUpdateHandler;
-    private Runnable statusUpdateRunnable;
+    private final Telemetry.Observer telemetryObserver = this::onTelemetry;
+    private boolean presetSynced;
+    private String syncedPresetUuid;
+    private boolean throttleShown;
+    private boolean stallShown;
 
     private long lastPresetChangeTime = 0;
     private long lastToggleTime = 0;
@@ -136,6 +153,10 @@ public class MainActivity extends AppCompatActivity {
 
         prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
         presets = loadPresets();
+        appPresetPrefs = getSharedPreferences(APP_PRESET_PREFS, MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : appPresetPrefs.getAll().entrySet()) {
+            appPresets.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
 
         String currentPresetJson = prefs.getString(KEY_CURRENT_PRESET, null);
         if (currentPresetJson != null) {
@@ -147,6 +168,10 @@ public class MainActivity extends AppCompatActivity {
 
         temperatureDisplay = findViewById(R.id.temperature_display);
         fanSpeedDisplay = findViewById(R.id.fan_speed_display);
+        clockDisplay = findViewById(R.id.clock_display);
+        fanSpeedColors = fanSpeedDisplay.getTextColors();
+        liveCurve = findViewById(R.id.live_curve);
+        liveCurve.setEditable(false);
         customControlSwitch = findViewById(R.id.custom_control_switch);
         controlLabel = findViewById(R.id.control_label);
         fabAddPreset = findViewById(R.id.fab_add_preset);
@@ -164,7 +189,7 @@ public class MainActivity extends AppCompatActivity {
             return true;
         });
 
-        boolean isCustomEnabled = RootHelper.isFanControlEnabled();
+        boolean isCustomEnabled = Telemetry.get().getLatest().enabled;
         customControlSwitch.setChecked(isCustomEnabled);
         updateControlLabel(isCustomEnabled);
         customControlSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
@@ -178,25 +203,9 @@ public class MainActivity extends AppCompatActivity {
 
         fabAddPreset.setOnClickListener(v -> showAddPresetDialog(-1));
 
-        statusUpdateHandler = new Handler(Looper.getMainLooper());
-        statusUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                updateStatus();
-                long timeSinceToggle = System.currentTimeMillis() - lastToggleTime;
-                if (timeSinceToggle >= TOGGLE_DEBOUNCE_MS) {
-                    isProgrammaticChange = true;
-                    boolean isCustomEnabled = RootHelper.isFanControlEnabled();
-                    customControlSwitch.setChecked(isCustomEnabled);
-                    updateControlLabel(isCustomEnabled);
-                    isProgrammaticChange = false;
-                }
-                statusUpdateHandler.postDelayed(this, 1000);
-            }
-        };
-
-        syncCurrentPresetFromDaemon();
-        updateStatus();
+        Preset currentPreset = findCurrentPreset();
+        showLiveCurve(currentPreset);
+        Telemetry.get().setActivePreset(currentPreset);
     }
 
     @Override
@@ -207,17 +216,20 @@ public class MainActivity extends AppCompatActivity {
             validatePrerequisites();
         }
 
-        statusUpdateHandler.post(statusUpdateRunnable);
-
-        isProgrammaticChange = true;
-        boolean isCustomEnabled = RootHelper.isFanControlEnabled();
-        customControlSwitch.setChecked(isCustomEnabled);
-        updateControlLabel(isCustomEnabled);
-        isProgrammaticChange = false;
-
-        syncCurrentPresetFromDaemon();
+        presetSynced = false;
         lastPresetChangeTime = System.currentTimeMillis();
-        updateStatus();
+        Telemetry.get().addObserver(telemetryObserver);
+        loadThrottleStats();
+    }
+
+    private void loadThrottleStats() {
+        if (!prereqStatus.isMet) {
+            return;
+        }
+        new Thread(() -> {
+            ThrottleStats stats = RootHelper.readThrottleStats();
+            runOnUiThread(() -> presetAdapter.setThrottleStats(stats));
+        }).start();
     }
 
     @Override
@@ -228,7 +240,25 @@ public class MainActivity extends AppCompatActivity {
             prereqDialog.dismiss();
         }
 
-        statusUpdateHandler.removeCallbacks(statusUpdateRunnable);
+        Telemetry.get().removeObserver(telemetryObserver);
+    }
+
+    private void onTelemetry(TelemetrySnapshot snapshot) {
+        // Resync whenever the daemon switches presets, e.g. for the app in front.
+        if (!presetSynced || !Objects.equals(snapshot.presetUuid, syncedPresetUuid)) {
+            presetSynced = true;
+            syncedPresetUuid = snapshot.presetUuid;
+            syncCurrentPresetFromDaemon(snapshot);
+        }
+        updateStatus(snapshot);
+
+        long timeSinceToggle = System.currentTimeMillis() - lastToggleTime;
+        if (timeSinceToggle >= TOGGLE_DEBOUNCE_MS) {
+            isProgrammaticChange = true;
+            customControlSwitch.setChecked(snapshot.enabled);
+            updateControlLabel(snapshot.enabled);
+            isProgrammaticChange = false;
+        }
     }
 
     private void updateControlLabel(boolean isEnabled) {
@@ -254,16 +284,18 @@ public class MainActivity extends AppCompatActivity {
             prefs.edit().putString(KEY_CURRENT_PRESET, preset.toJson()).apply();
         }
 
-        RootHelper.setFanCurve(preset.getPoints());
-        RootHelper.setFanControlEnabled(true);
-        RootHelper.setCurrentPreset(preset.getName(), preset.getUuid());
+        RootHelper.beginTransaction()
+                .setFanCurve(preset)
+                .setFanControlEnabled(true)
+                .setCurrentPreset(preset.getName(), preset.getUuid())
+                .commit();
 
         lastPresetChangeTime = System.currentTimeMillis();
         lastToggleTime = System.currentTimeMillis();
 
         requestTileUpdate();
         Toast.makeText(this, "Custom fan control enabled", Toast.LENGTH_SHORT).show();
-        updateStatus();
+        Telemetry.get().refresh();
     }
 
     private void disableCustomControl() {
@@ -278,56 +310,75 @@ public class MainActivity extends AppCompatActivity {
 
         requestTileUpdate();
         Toast.makeText(this, "Reverted to stock fan control", Toast.LENGTH_SHORT).show();
-        updateStatus();
+        Telemetry.get().refresh();
     }
 
     private void requestTileUpdate() {
         TileService.requestListeningState(this, new ComponentName(this, FanTileService.class));
     }
 
-    private void syncCurrentPresetFromDaemon() {
-        String daemonUuid = RootHelper.getCurrentPresetUuid();
+    private void syncCurrentPresetFromDaemon(TelemetrySnapshot snapshot) {
+        String daemonUuid = snapshot.presetUuid;
         if (daemonUuid != null) {
             for (Preset p : presets) {
                 if (p.getUuid().equals(daemonUuid)) {
-                    currentPresetUuid = p.getUuid();
-                    presetAdapter.setCurrentPreset(currentPresetUuid);
-                    prefs.edit().putString(KEY_CURRENT_PRESET, p.toJson()).apply();
+                    markCurrentPreset(p);
                     return;
                 }
             }
         }
 
-        String daemonName = RootHelper.getCurrentPreset();
+        String daemonName = snapshot.presetName;
         if (daemonName != null) {
             for (Preset p : presets) {
                 if (p.getName().equals(daemonName)) {
-                    currentPresetUuid = p.getUuid();
-                    presetAdapter.setCurrentPreset(currentPresetUuid);
-                    prefs.edit().putString(KEY_CURRENT_PRESET, p.toJson()).apply();
+                    markCurrentPreset(p);
                     return;
                 }
             }
         }
     }
 
+    private void markCurrentPreset(Preset preset) {
+        currentPresetUuid = preset.getUuid();
+        presetAdapter.setCurrentPreset(currentPresetUuid);
+        prefs.edit().putString(KEY_CURRENT_PRESET, preset.toJson()).apply();
+        showLiveCurve(preset);
+        Telemetry.get().setActivePreset(preset);
+    }
+
+    private void showLiveCurve(Preset preset) {
+        liveCurve.setPoints(preset.getPoints());
+        liveCurve.setInterpolation(preset.getInterpolation());
+    }
+
     private ArrayList<Preset> loadPresets() {
+        presetRepository = PresetRepository.open(new File(getFilesDir(), PresetRepository.FILE_NAME));
+        if (!presetRepository.exists()) {
+            importLegacyPresets();
+        }
+
         ArrayList<Preset> list = new ArrayList<>();
         list.add(Preset.createDefault());
-
-        Set<String> presetJsons = prefs.getStringSet(KEY_PRESETS, new HashSet<>());
-        for (String json : presetJsons) {
-            list.add(Preset.fromJson(json));
-        }
+        list.addAll(presetRepository.getAll());
         return list;
     }
 
-    private void savePresets() {
-        Set<String> presetJsons = new HashSet<>();
-        for (int i = 1; i < presets.size(); i++) {
-            presetJsons.add(presets.get(i).toJson());
+    /**
+     * Copies presets saved by older versions as a JSON string set. The set kept
+     * no order, so they are imported by name; the old key is left in place.
+     */
+    private void importLegacyPresets() {
+        Set<String> presetJsons = prefs.getStringSet(KEY_PRESETS, null);
+        if (presetJsons == null || presetJsons.isEmpty()) {
+            return;
         }
-        prefs.edit().putStringSet(KEY_PRESETS, presetJsons).apply();
+        List<Preset> imported = new ArrayList<>();
+        for (String json : presetJsons) {
+            imported.add(Preset.fromJson(json));
+        }
+        Collections.sort(imported, Comparator.comparing(Preset::getName, String.CASE_INSENSITIVE_ORDER));
+        presetRepository.putAll(imported);
     }
 
     private ArrayList<String> getPresetNames() {
@@ -344,46 +395,134 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        currentPresetUuid = preset.getUuid();
-        presetAdapter.setCurrentPreset(currentPresetUuid);
-        prefs.edit().putString(KEY_CURRENT_PRESET, preset.toJson()).apply();
-
-        RootHelper.setFanCurve(preset.getPoints());
-        RootHelper.setCurrentPreset(preset.getName(), preset.getUuid());
+        RootHelper.beginTransaction()
+                .setFanCurve(preset)
+                .setCurrentPreset(preset.getName(), preset.getUuid())
+                .commit();
+        markCurrentPreset(preset);
 
         lastPresetChangeTime = System.currentTimeMillis();
 
         Toast.makeText(this, "Selected: " + preset.getName(), Toast.LENGTH_SHORT).show();
         presetAdapter.notifyDataSetChanged();
-        updateStatus();
     }
 
     private void showEditDeleteDialog(int position) {
+        Preset preset = presets.get(position);
         if (position == 0) {
+            // The default preset cannot be edited, deleted or moved, but apps can use it.
             new AlertDialog.Builder(this)
-                .setTitle(presets.get(position).getName())
-                .setMessage("This is the default preset and cannot be edited.")
-                .setPositiveButton("OK", null)
+                .setTitle(preset.getName())
+                .setItems(new String[] {"Apps"}, (dialog, which) -> showAppPresetDialog(preset))
+                .setNegativeButton("Cancel", null)
                 .show();
             return;
         }
 
-        Preset preset = presets.get(position);
-        String[] options = {"Edit", "Delete"};
+        String[] options = {"Edit", "Delete", "Move up", "Move down", "Apps"};
 
         new AlertDialog.Builder(this)
             .setTitle(preset.getName())
             .setItems(options, (dialog, which) -> {
                 if (which == 0) {
                     showAddPresetDialog(position);
-                } else {
+                } else if (which == 1) {
                     showDeleteDialog(position);
+                } else if (which == 4) {
+                    showAppPresetDialog(preset);
+                } else {
+                    movePreset(position, which == 2 ? position - 1 : position + 1);
                 }
             })
             .setNegativeButton("Cancel", null)
             .show();
     }
 
+    private void movePreset(int from, int to) {
+        // The default preset always stays first.
+        if (to < 1 || to >= presets.size()) {
+            return;
+        }
+        presets.add(to, presets.remove(from));
+        presetRepository.move(from - 1, to - 1);
+        presetAdapter.notifyItemMoved(from, to);
+        presetAdapter.notifyItemRangeChanged(Math.min(from, to), 2);
+    }
+
+    /** Picks the apps the daemon switches to this preset for while they are in front. */
+    private void showAppPresetDialog(Preset preset) {
+        Map<String, String> presetNames = new HashMap<>();
+        for (Preset p : presets) {
+            presetNames.put(p.getUuid(), p.getName());
+        }
+        new Thread(() -> {
+            PackageManager pm = getPackageManager();
+            Intent launcher = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+            Map<String, String> apps = new LinkedHashMap<>();
+            for (ResolveInfo info : pm.queryIntentActivities(launcher, 0)) {
+                String packageName = info.activityInfo.packageName;
+                if (!packageName.equals(getPackageName()) && !apps.containsKey(packageName)) {
+                    apps.put(packageName, info.loadLabel(pm).toString());
+                }
+            }
+            List<String> packages = new ArrayList<>(apps.keySet());
+            Collections.sort(packages, Comparator.comparing(apps::get, String.CASE_INSENSITIVE_ORDER));
+
+            String[] labels = new String[packages.size()];
+            boolean[] checked = new boolean[packages.size()];
+            for (int i = 0; i < labels.length; i++) {
+                String uuid = appPresets.get(packages.get(i));
+                labels[i] = apps.get(packages.get(i));
+                checked[i] = preset.getUuid().equals(uuid);
+                String other = uuid != null && !checked[i] ? presetNames.get(uuid) : null;
+                if (other != null) {
+                    labels[i] += " (" + other + ")";
+                }
+            }
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                new AlertDialog.Builder(this)
+                    .setTitle("Apps using " + preset.getName())
+                    .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                    .setPositiveButton("Save", (dialog, which) -> {
+                        for (int i = 0; i < checked.length; i++) {
+                            String packageName = packages.get(i);
+                            if (checked[i]) {
+                                appPresets.put(packageName, preset.getUuid());
+                            } else if (preset.getUuid().equals(appPresets.get(packageName))) {
+                                appPresets.remove(packageName);
+                            }
+                        }
+                        saveAppPresets();
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+            });
+        }).start();
+    }
+
+    private void saveAppPresets() {
+        SharedPreferences.Editor editor = appPresetPrefs.edit().clear();
+        for (Map.Entry<String, String> entry : appPresets.entrySet()) {
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+        pushAppPresets();
+    }
+
+    /** Sends the mapping, with the current contents of the mapped presets, to the daemon. */
+    private void pushAppPresets() {
+        Map<String, String> mapping = new HashMap<>(appPresets);
+        Map<String, Preset> mapped = new HashMap<>();
+        for (String uuid : mapping.values()) {
+            Preset preset = findPreset(uuid);
+            if (preset != null) {
+                mapped.put(uuid, preset);
+            }
+        }
+        new Thread(() -> RootHelper.setAppPresets(mapping, mapped)).start();
+    }
+
     private void showDeleteDialog(int position) {
         Preset presetToDelete = presets.get(position);
         boolean isActive = presetToDelete.getUuid().equals(currentPresetUuid);
@@ -399,17 +538,20 @@ public class MainActivity extends AppCompatActivity {
 
         builder.setPositiveButton("Delete", (dialog, which) -> {
             presets.remove(position);
-            savePresets();
+            presetRepository.remove(presetToDelete.getUuid());
+            if (appPresets.values().removeIf(presetToDelete.getUuid()::equals)) {
+                saveAppPresets();
+            }
 
             if (isActive) {
                 Preset defaultPreset = presets.get(0);
-                currentPresetUuid = defaultPreset.getUuid();
-                presetAdapter.setCurrentPreset(currentPresetUuid);
-                prefs.edit().putString(KEY_CURRENT_PRESET, defaultPreset.toJson()).apply();
+                markCurrentPreset(defaultPreset);
 
-                if (RootHelper.isFanControlEnabled()) {
-                    RootHelper.setFanCurve(defaultPreset.getPoints());
-                    RootHelper.setCurrentPreset(defaultPreset.getName(), defaultPreset.getUuid());
+                if (Telemetry.get().getLatest().enabled) {
+                    RootHelper.beginTransaction()
+                            .setFanCurve(defaultPreset)
+                            .setCurrentPreset(defaultPreset.getName(), defaultPreset.getUuid())
+                            .commit();
                 }
             }
 
@@ -430,11 +572,30 @@ public class MainActivity extends AppCompatActivity {
         com.google.android.material.button.MaterialButton btnSave = dialogView.findViewById(R.id.btn_save);
         com.google.android.material.button.MaterialButton btnCancel = dialogView.findViewById(R.id.btn_cancel);
 
+        com.google.android.material.button.MaterialButtonToggleGroup interpolationGroup =
+            dialogView.findViewById(R.id.interpolation_group);
+        com.google.android.material.button.MaterialButton btnTuning = dialogView.findViewById(R.id.btn_tuning);
+        com.google.android.material.button.MaterialButton btnPid = dialogView.findViewById(R.id.btn_pid);
+        com.google.android.material.button.MaterialButton btnSensors = dialogView.findViewById(R.id.btn_sensors);
+        final ControllerSettings[] controllerSettings = {
+            isEdit ? editingPreset.getControllerSettings() : ControllerSettings.DEFAULT
+        };
+        final ControlMode[] controlMode = {
+            isEdit ? editingPreset.getControlMode() : ControlMode.CURVE
+        };
+        final PidSettings[] pidSettings = {
+            isEdit ? editingPreset.getPidSettings() : PidSettings.DEFAULT
+        };
+        final SensorSettings[] sensorSettings = {
+            isEdit ? editingPreset.getSensorSettings() : SensorSettings.DEFAULT
+        };
+
         btnSave.setText(isEdit ? "Save" : "Add");
 
         if (isEdit) {
             nameInput.setText(editingPreset.getName());
             graphView.setPoints(editingPreset.getPoints());
+            graphView.setInterpolation(editingPreset.getInterpolation());
         } else {
             List<Preset.TempPoint> defaultPoints = new ArrayList<>();
             defaultPoints.add(new Preset.TempPoint(20, 0));
@@ -446,8 +607,39 @@ public class MainActivity extends AppCompatActivity {
 
         updatePointEditButtons(pointEditContainer, graphView);
 
+        switch (graphView.getInterpolation()) {
+            case LINEAR:
+                interpolationGroup.check(R.id.interp_linear);
+                break;
+            case MONOTONE_CUBIC:
+                interpolationGroup.check(R.id.interp_cubic);
+                break;
+            default:
+                interpolationGroup.check(R.id.interp_step);
+                break;
+        }
+        interpolationGroup.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
+            if (!isChecked) return;
+            if (checkedId == R.id.interp_linear) {
+                graphView.setInterpolation(FanCurve.Interpolation.LINEAR);
+            } else if (checkedId == R.id.interp_cubic) {
+                graphView.setInterpolation(FanCurve.Interpolation.MONOTONE_CUBIC);
+            } else {
+                graphView.setInterpolation(FanCurve.Interpolation.STEP);
+            }
+        });
+
+        btnTuning.setOnClickListener(v -> showControllerDialog(controllerSettings[0],
+            updated -> controllerSettings[0] = updated));
+        btnPid.setOnClickListener(v -> showPidDialog(controlMode[0], pidSettings[0], (mode, updated) -> {
+            controlMode[0] = mode;
+            pidSettings[0] = updated;
+        }));
+        btnSensors.setOnClickListener(v -> showSensorDialog(sensorSettings[0],
+            updated -> sensorSettings[0] = updated));
+
         graphView.setOnPointChangedListener((index, temp, fan) -> {
-            updatePointEditButtons(pointEditContainer, graphView);
+            refreshPointEditValues(pointEditContainer, graphView);
         });
 
         graphView.setOnPointSelectedListener(new FanCurveView.OnPointSelectedListener() {
@@ -478,14 +670,32 @@ public class MainActivity extends AppCompatActivity {
                 return;
             }
 
-            Preset newPreset = new Preset(name, points);
+            Preset newPreset = isEdit
+                    ? editingPreset.edited(name, points, graphView.getInterpolation())
+                    : new Preset(name, points, graphView.getInterpolation());
+            newPreset.setControllerSettings(controllerSettings[0]);
+            newPreset.setControlMode(controlMode[0]);
+            newPreset.setPidSettings(pidSettings[0]);
+            newPreset.setSensorSettings(sensorSettings[0]);
 
             if (isEdit) {
                 presets.set(editPosition, newPreset);
             } else {
                 presets.add(newPreset);
             }
-            savePresets();
+            presetRepository.put(newPreset);
+            if (appPresets.containsValue(newPreset.getUuid())) {
+                pushAppPresets();
+            }
+            if (newPreset.getUuid().equals(currentPresetUuid)) {
+                markCurrentPreset(newPreset);
+                if (Telemetry.get().getLatest().enabled) {
+                    RootHelper.beginTransaction()
+                            .setFanCurve(newPreset)
+                            .setCurrentPreset(newPreset.getName(), newPreset.getUuid())
+                            .commit();
+                }
+            }
             refreshPresetList();
             Toast.makeText(this, isEdit ? "Preset saved" : "Preset added", Toast.LENGTH_SHORT).show();
             dialog.dismiss();
@@ -509,6 +719,185 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void showControllerDialog(ControllerSettings current,
+                                      java.util.function.Consumer<ControllerSettings> onSet) {
+        int paddingXl = getResources().getDimensionPixelSize(R.dimen.spacing_xl);
+        int paddingLg = getResources().getDimensionPixelSize(R.dimen.spacing_lg);
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setPadding(paddingXl, paddingLg, paddingXl, paddingLg);
+        layout.setOrientation(LinearLayout.VERTICAL);
+
+        EditText riseInput = addNumberField(layout, "Rise deadband (°C)", String.valueOf(current.riseDeadband));
+        EditText fallInput = addNumberField(layout, "Fall deadband (°C)", String.valueOf(current.fallDeadband));
+        EditText attackInput = addNumberField(layout, "Speed-up delay (s)", String.valueOf(current.attackMs / 1000f));
+        EditText releaseInput = addNumberField(layout, "Slow-down delay (s)", String.valueOf(current.releaseMs / 1000f));
+        EditText slewInput = addNumberField(layout, "Max change (%/s, 0 = off)", String.valueOf(current.maxSlewPerSecond));
+        EditText lookAheadInput = addNumberField(layout, "Look-ahead (s, 0 = off)", String.valueOf(current.lookAheadSeconds));
+        EditText slopeInput = addNumberField(layout, "Trend window (s)", String.valueOf(current.slopeWindowMs / 1000f));
+
+        android.widget.ScrollView scrollView = new android.widget.ScrollView(this);
+        scrollView.addView(layout);
+
+        new AlertDialog.Builder(this)
+            .setTitle("Response")
+            .setView(scrollView)
+            .setPositiveButton("Set", (dialog, which) -> {
+                try {
+                    onSet.accept(new ControllerSettings(
+                        Float.parseFloat(riseInput.getText().toString()),
+                        Float.parseFloat(fallInput.getText().toString()),
+                        Math.round(Float.parseFloat(attackInput.getText().toString()) * 1000),
+                        Math.round(Float.parseFloat(releaseInput.getText().toString()) * 1000),
+                        Float.parseFloat(slewInput.getText().toString()),
+                        Float.parseFloat(lookAheadInput.getText().toString()),
+                        Math.round(Float.parseFloat(slopeInput.getText().toString()) * 1000)));
+                } catch (NumberFormatException e) {
+                    Toast.makeText(this, "Invalid value", Toast.LENGTH_SHORT).show();
+                }
+            })
+            .setNeutralButton("Defaults", (dialog, which) -> onSet.accept(ControllerSettings.DEFAULT))
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    /**
+     * In target mode the daemon holds the set temperature with a PID loop; the
+     * curve only bounds the fan between its lowest and highest points.
+     */
+    private void showPidDialog(ControlMode mode, PidSettings current,
+                               java.util.function.BiConsumer<ControlMode, PidSettings> onSet) {
+        int paddingXl = getResources().getDimensionPixelSize(R.dimen.spacing_xl);
+        int paddingLg = getResources().getDimensionPixelSize(R.dimen.spacing_lg);
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setPadding(paddingXl, paddingLg, paddingXl, paddingLg);
+        layout.setOrientation(LinearLayout.VERTICAL);
+
+        MaterialSwitch enabledSwitch = new MaterialSwitch(this);
+        enabledSwitch.setText("Hold target temperature");
+        enabledSwitch.setChecked(mode == ControlMode.PID);
+        layout.addView(enabledSwitch);
+
+        EditText setpointInput = addNumberField(layout, "Target (°C)", String.valueOf(current.setpoint));
+        EditText kpInput = addNumberField(layout, "Proportional (%/°C)", String.valueOf(current.kp));
+        EditText kiInput = addNumberField(layout, "Integral (%/°C·s)", String.valueOf(current.ki));
+        EditText kdInput = addNumberField(layout, "Derivative (%·s/°C)", String.valueOf(current.kd));
+        EditText ffInput = addNumberField(layout, "CPU load boost (% at full load)", String.valueOf(current.feedForward));
+
+        android.widget.ScrollView scrollView = new android.widget.ScrollView(this);
+        scrollView.addView(layout);
+
+        new AlertDialog.Builder(this)
+            .setTitle("Target temperature")
+            .setView(scrollView)
+            .setPositiveButton("Set", (dialog, which) -> {
+                try {
+                    onSet.accept(enabledSwitch.isChecked() ? ControlMode.PID : ControlMode.CURVE,
+                        new PidSettings(
+                            Float.parseFloat(setpointInput.getText().toString()),
+                            Float.parseFloat(kpInput.getText().toString()),
+                            Float.parseFloat(kiInput.getText().toString()),
+                            Float.parseFloat(kdInput.getText().toString()),
+                            Float.parseFloat(ffInput.getText().toString())));
+                } catch (NumberFormatException e) {
+                    Toast.makeText(this, "Invalid value", Toast.LENGTH_SHORT).show();
+                }
+            })
+            .setNeutralButton("Defaults", (dialog, which) -> onSet.accept(mode, PidSettings.DEFAULT))
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void showSensorDialog(SensorSettings current,
+                                  java.util.function.Consumer<SensorSettings> onSet) {
+        int paddingXl = getResources().getDimensionPixelSize(R.dimen.spacing_xl);
+        int paddingLg = getResources().getDimensionPixelSize(R.dimen.spacing_lg);
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setPadding(paddingXl, paddingLg, paddingXl, paddingLg);
+        layout.setOrientation(LinearLayout.VERTICAL);
+
+        android.widget.RadioGroup modeGroup = new android.widget.RadioGroup(this);
+        String[] modeLabels = {"Hottest zone", "Weighted average", "Per-zone curves"};
+        SensorSettings.Mode[] modes = SensorSettings.Mode.values();
+        for (int i = 0; i < modes.length; i++) {
+            android.widget.RadioButton button = new android.widget.RadioButton(this);
+            button.setId(View.generateViewId());
+            button.setText(modeLabels[i]);
+            button.setTag(modes[i]);
+            modeGroup.addView(button);
+            if (modes[i] == current.mode) {
+                modeGroup.check(button.getId());
+            }
+        }
+        layout.addView(modeGroup);
+
+        TextView hint = new TextView(this);
+        hint.setText("Zones, one per line: a type prefix or zone name, "
+            + "optionally =weight or =TEMP:FAN,... curve. Leave empty for all zones.");
+        layout.addView(hint);
+
+        EditText selectorsInput = new EditText(this);
+        StringBuilder selectors = new StringBuilder();
+        for (SensorSettings.Selector selector : current.selectors) {
+            if (selectors.length() > 0) selectors.append("\n");
+            selectors.append(selector);
+        }
+        selectorsInput.setText(selectors);
+        selectorsInput.setInputType(android.text.InputType.TYPE_CLASS_TEXT
+            | android.text.InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+        layout.addView(selectorsInput);
+
+        TextView zonesView = new TextView(this);
+        zonesView.setTextAppearance(android.R.style.TextAppearance_Small);
+        layout.addView(zonesView);
+        new Thread(() -> {
+            RootHelper.ZoneReadings zones = RootHelper.readThermalZones();
+            StringBuilder sb = new StringBuilder("Detected zones:");
+            for (int i = 0; i < zones.names.length; i++) {
+                sb.append("\n").append(zones.names[i]).append("  ").append(zones.types[i])
+                    .append("  ").append(zones.temps[i] / 1000).append("°C");
+            }
+            runOnUiThread(() -> zonesView.setText(sb));
+        }).start();
+
+        android.widget.ScrollView scrollView = new android.widget.ScrollView(this);
+        scrollView.addView(layout);
+
+        new AlertDialog.Builder(this)
+            .setTitle("Sensors")
+            .setView(scrollView)
+            .setPositiveButton("Set", (dialog, which) -> {
+                View checked = modeGroup.findViewById(modeGroup.getCheckedRadioButtonId());
+                SensorSettings.Mode mode = checked != null
+                    ? (SensorSettings.Mode) checked.getTag() : SensorSettings.Mode.MAX;
+                StringBuilder spec = new StringBuilder(mode.key);
+                for (String line : selectorsInput.getText().toString().split("\n")) {
+                    if (!line.trim().isEmpty()) spec.append('|').append(line.trim());
+                }
+                onSet.accept(SensorSettings.parse(spec.toString()));
+            })
+            .setNeutralButton("Defaults", (dialog, which) -> onSet.accept(SensorSettings.DEFAULT))
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private EditText addNumberField(LinearLayout layout, String label, String value) {
+        TextView hint = new TextView(this);
+        hint.setText(label);
+        hint.setTextAppearance(android.R.style.TextAppearance_Medium);
+        layout.addView(hint);
+
+        EditText input = new EditText(this);
+        input.setText(value);
+        input.setInputType(android.text.InputType.TYPE_CLASS_NUMBER
+            | android.text.InputType.TYPE_NUMBER_FLAG_DECIMAL);
+        input.setSelectAllOnFocus(true);
+        layout.addView(input);
+        return input;
+    }
+
     private void updatePointEditButtons(LinearLayout container, FanCurveView graphView) {
         container.removeAllViews();
         highlightedButtons.clear();
@@ -529,7 +918,7 @@ public class MainActivity extends AppCompatActivity {
             row.setGravity(android.view.Gravity.CENTER_VERTICAL);
             row.setPadding(0, spacingXs, 0, spacingXs);
 
-            Button tempBtn = createValueButton(point.temperature + "°", buttonBgColor, buttonTextColor);
+            Button tempBtn = createValueButton(FanCurveView.temperatureLabel(point.temperature), buttonBgColor, buttonTextColor);
             tempBtn.setTag("temp_" + i);
             tempBtn.setOnClickListener(v -> showValueEditDialog("Temperature", index, true, graphView));
             row.addView(tempBtn);
@@ -540,7 +929,7 @@ public class MainActivity extends AppCompatActivity {
             arrow.setPadding(spacingSm, 0, spacingSm, 0);
             row.addView(arrow);
 
-            Button fanBtn = createValueButton(point.fanPercent + "%", buttonBgColor, buttonTextColor);
+            Button fanBtn = createValueButton(FanCurveView.fanLabel(point.fanPercent), buttonBgColor, buttonTextColor);
             fanBtn.setTag("fan_" + i);
             fanBtn.setOnClickListener(v -> showValueEditDialog("Fan Speed", index, false, graphView));
             row.addView(fanBtn);
@@ -556,6 +945,19 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /** Updates the existing buttons' values while dragging instead of rebuilding the rows. */
+    private void refreshPointEditValues(LinearLayout container, FanCurveView graphView) {
+        int count = graphView.getPointCount();
+        if (highlightedButtons.size() != count * 2) {
+            updatePointEditButtons(container, graphView);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            highlightedButtons.get(2 * i).setText(FanCurveView.temperatureLabel(graphView.getPointTemperature(i)));
+            highlightedButtons.get(2 * i + 1).setText(FanCurveView.fanLabel(graphView.getPointFanPercent(i)));
+        }
+    }
+
     private Button createValueButton(String text, int bgColor, int textColor) {
         Button btn = new Button(this, null, android.R.attr.buttonBarButtonStyle);
         btn.setText(text);
@@ -705,7 +1107,7 @@ public class MainActivity extends AppCompatActivity {
                     }
                 }
 
-                graphView.invalidate();
+                graphView.notifyPointsChanged();
                 android.view.ViewParent parent = graphView.getParent();
                 if (parent instanceof android.view.View) {
                     android.view.View parentView = (android.view.View) parent;
@@ -728,19 +1130,36 @@ public class MainActivity extends AppCompatActivity {
         builder.show();
     }
 
+    private Preset findCurrentPreset() {
+        Preset preset = findPreset(currentPresetUuid);
+        if (preset != null) {
+            return preset;
+        }
+        return presets.isEmpty() ? Preset.createDefault() : presets.get(0);
+    }
+
+    /** A listed preset, the default included, by UUID; null if there is none. */
+    private Preset findPreset(String uuid) {
+        for (Preset preset : presets) {
+            if (preset.getUuid().equals(uuid)) {
+                return preset;
+            }
+        }
+        return null;
+    }
+
     private void refreshPresetList() {
         presetAdapter.notifyDataSetChanged();
     }
 
-    private void updateStatus() {
-        int duty = RootHelper.getFanDuty();
-        int percent = Preset.dutyToPercent(duty);
+    private void updateStatus(TelemetrySnapshot snapshot) {
+        int percent = snapshot.getFanPercent();
 
         long timeSincePresetChange = System.currentTimeMillis() - lastPresetChangeTime;
         boolean skipTempUpdate = timeSincePresetChange < TEMP_UPDATE_DELAY_MS;
 
         if (!skipTempUpdate) {
-            int temp = RootHelper.getCpuTemp() / 1000;
+            int temp = snapshot.tempMilli / 1000;
             temperatureDisplay.setText(temp + "°C");
 
             int tempColor;
@@ -754,6 +1173,47 @@ public class MainActivity extends AppCompatActivity {
             temperatureDisplay.setTextColor(tempColor);
         }
 
-        fanSpeedDisplay.setText(percent + "%");
+        if (snapshot.stalled) {
+            fanSpeedDisplay.setText("Stalled");
+            fanSpeedDisplay.setTextColor(getColor(R.color.md_theme_light_error));
+            if (!stallShown) {
+                new AlertDialog.Builder(this)
+                    .setTitle("Fan stalled")
+                    .setMessage("The fan is not turning although it is being driven. It is running at "
+                        + "full power until it spins again; if it stays stalled, check it for "
+                        + "blockage or damage.")
+                    .setPositiveButton("OK", null)
+                    .show();
+            }
+        } else {
+            fanSpeedDisplay.setText(percent + "%");
+            fanSpeedDisplay.setTextColor(fanSpeedColors);
+        }
+        stallShown = snapshot.stalled;
+        liveCurve.addSample(snapshot.tempMilli, snapshot.duty);
+
+        if (snapshot.cpuKhz > 0 || snapshot.gpuKhz > 0 || snapshot.rpm != FanTachometer.INVALID) {
+            StringBuilder clocks = new StringBuilder();
+            if (snapshot.rpm != FanTachometer.INVALID) {
+                clocks.append("Fan ").append(snapshot.rpm).append(" RPM");
+            }
+            if (snapshot.cpuKhz > 0) {
+                clocks.append(clocks.length() > 0 ? " · " : "").append("CPU ").append(snapshot.cpuKhz / 1000).append(" MHz");
+            }
+            if (snapshot.gpuKhz > 0) {
+                clocks.append(clocks.length() > 0 ? " · " : "").append("GPU ").append(snapshot.gpuKhz / 1000).append(" MHz");
+            }
+            if (snapshot.throttlePercent > 0) {
+                clocks.append(" · throttled ").append(snapshot.throttlePercent).append("%");
+            }
+            clockDisplay.setText(clocks);
+            clockDisplay.setTextColor(getColor(snapshot.throttlePercent > 0
+                    ? R.color.md_theme_light_error : R.color.md_theme_light_secondary));
+            clockDisplay.setVisibility(View.VISIBLE);
+        }
+        if (snapshot.throttlePercent > 0 && !throttleShown) {
+            loadThrottleStats();
+        }
+        throttleShown = snapshot.throttlePercent > 0;
     }
 }
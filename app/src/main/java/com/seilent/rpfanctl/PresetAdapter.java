@@ -25,6 +25,7 @@ import java.util.ArrayList;
 public class PresetAdapter extends RecyclerView.Adapter<PresetAdapter.PresetViewHolder> {
     private ArrayList<Preset> presets;
     private String currentPresetUuid;
+    private ThrottleStats throttleStats = new ThrottleStats();
     private OnItemClickListener clickListener;
     private OnItemLongClickListener longClickListener;
 
@@ -46,6 +47,11 @@ public class PresetAdapter extends RecyclerView.Adapter<PresetAdapter.PresetView
         notifyDataSetChanged();
     }
 
+    public void setThrottleStats(ThrottleStats stats) {
+        this.throttleStats = stats;
+        notifyDataSetChanged();
+    }
+
     public void setOnItemClickListener(OnItemClickListener listener) {
         this.clickListener = listener;
     }
@@ -65,7 +71,7 @@ public class PresetAdapter extends RecyclerView.Adapter<PresetAdapter.PresetView
     @Override
     public void onBindViewHolder(@NonNull PresetViewHolder holder, int position) {
         Preset preset = presets.get(position);
-        holder.bind(preset, preset.getUuid().equals(currentPresetUuid));
+        holder.bind(preset, preset.getUuid().equals(currentPresetUuid), throttleStats.get(preset.getUuid()));
 
         holder.itemView.setOnClickListener(v -> {
             if (clickListener != null) {
@@ -90,20 +96,32 @@ public class PresetAdapter extends RecyclerView.Adapter<PresetAdapter.PresetView
         private MaterialCardView cardView;
         private TextView presetName;
         private TextView presetDetails;
+        private TextView presetThrottle;
         private MaterialCheckBox checkBox;
+        private CurvePreviewView preview;
 
         PresetViewHolder(View itemView) {
             super(itemView);
             cardView = (MaterialCardView) itemView;
             presetName = itemView.findViewById(R.id.preset_name);
             presetDetails = itemView.findViewById(R.id.preset_details);
+            presetThrottle = itemView.findViewById(R.id.preset_throttle);
             checkBox = itemView.findViewById(R.id.preset_checkbox);
+            preview = itemView.findViewById(R.id.preset_preview);
         }
 
-        void bind(Preset preset, boolean isSelected) {
+        void bind(Preset preset, boolean isSelected, ThrottleStats.Entry throttle) {
             presetName.setText(preset.getName());
             presetDetails.setText(createStyledCurveDetails(preset.getCurveDetails()));
+            if (throttle != null && throttle.activeMs > 0) {
+                presetThrottle.setText(throttle.events == 0 ? "Never throttled"
+                        : "Throttled " + throttle.events + "× · " + throttle.getThrottledPercent() + "% of the time");
+                presetThrottle.setVisibility(View.VISIBLE);
+            } else {
+                presetThrottle.setVisibility(View.GONE);
+            }
             checkBox.setChecked(isSelected);
+            preview.setCurve(preset.toFanCurve());
 
             if (isSelected) {
                 cardView.setStrokeWidth(2);
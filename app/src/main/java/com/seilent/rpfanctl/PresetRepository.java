@@ -0,0 +1,326 @@
+package com.seilent.rpfanctl;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * User presets in one append-only file. Every change appends a single record
+ * (a preset, a removal or a new order), so saving one preset never rewrites the
+ * others; the file is compacted once superseded records outweigh live ones.
+ * Presets are kept in user order with a UUID index, and their curve points are
+ * only parsed when first used.
+ *
+ * Layout (big-endian): "RPPS", u16 version, then records of u8 type, u32 payload
+ * length, payload, u32 CRC32 of type and payload. Reading stops at the first
+ * damaged record, so a write cut short loses only that change.
+ *
+ * Writes go to the file on a background thread in the order they were made.
+ */
+public final class PresetRepository {
+    public static final String FILE_NAME = "presets.bin";
+    public static final int VERSION = 1;
+
+    private static final String TAG = "PresetRepository";
+    private static final int MAGIC = 0x52505053;
+    private static final int HEADER_SIZE = 6;
+    private static final int RECORD_OVERHEAD = 9;
+    private static final int COMPACT_MIN_BYTES = 16 * 1024;
+
+    private static final int PUT = 1;
+    private static final int REMOVE = 2;
+    private static final int ORDER = 3;
+
+    private final File file;
+    private final List<Preset> order = new ArrayList<>();
+    private final Map<String, Preset> index = new HashMap<>();
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PresetRepository");
+        t.setDaemon(true);
+        return t;
+    });
+    private long fileBytes;
+    private long liveBytes;
+
+    private PresetRepository(File file) {
+        this.file = file;
+    }
+
+    /** Loads the repository, starting empty if the file does not exist yet. */
+    public static PresetRepository open(File file) {
+        PresetRepository repository = new PresetRepository(file);
+        repository.load();
+        return repository;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public synchronized Preset find(String uuid) {
+        return uuid != null ? index.get(uuid) : null;
+    }
+
+    public synchronized List<Preset> getAll() {
+        return new ArrayList<>(order);
+    }
+
+    /** Adds the preset at the end, or replaces the preset with the same UUID in place. */
+    public synchronized void put(Preset preset) {
+        insert(preset);
+        byte[] record = record(PUT, encodePreset(preset));
+        setRecordSize(preset.getUuid(), record.length);
+        append(record);
+    }
+
+    /** Adds presets in one write; used to import presets from older app versions. */
+    public synchronized void putAll(List<Preset> presets) {
+        for (Preset preset : presets) {
+            insert(preset);
+        }
+        compact();
+    }
+
+    public synchronized void remove(String uuid) {
+        Preset removed = index.remove(uuid);
+        if (removed == null) {
+            return;
+        }
+        order.remove(removed);
+        setRecordSize(uuid, 0);
+        append(record(REMOVE, encodeUuids(Collections.singletonList(uuid), false)));
+    }
+
+    public synchronized void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        order.add(to, order.remove(from));
+        List<String> uuids = new ArrayList<>(order.size());
+        for (Preset preset : order) {
+            uuids.add(preset.getUuid());
+        }
+        append(record(ORDER, encodeUuids(uuids, true)));
+    }
+
+    private void insert(Preset preset) {
+        Preset previous = index.put(preset.getUuid(), preset);
+        if (previous != null) {
+            order.set(order.indexOf(previous), preset);
+        } else {
+            order.add(preset);
+        }
+    }
+
+    private void setRecordSize(String uuid, int size) {
+        Integer previous = size > 0 ? recordSizes.put(uuid, size) : recordSizes.remove(uuid);
+        liveBytes += size - (previous != null ? previous : 0);
+    }
+
+    private void append(byte[] record) {
+        boolean create = fileBytes == 0;
+        if (create) {
+            fileBytes = HEADER_SIZE;
+        }
+        fileBytes += record.length;
+        if (fileBytes > COMPACT_MIN_BYTES && fileBytes > 2 * (liveBytes + HEADER_SIZE)) {
+            compact();
+            return;
+        }
+        writer.execute(() -> {
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                if (create) {
+                    out.write(header());
+                }
+                out.write(record);
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save presets", e);
+            }
+        });
+    }
+
+    /** Rewrites the file with one record per live preset, in order. */
+    private void compact() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header(), 0, HEADER_SIZE);
+        recordSizes.clear();
+        liveBytes = 0;
+        for (Preset preset : order) {
+            byte[] record = record(PUT, encodePreset(preset));
+            setRecordSize(preset.getUuid(), record.length);
+            out.write(record, 0, record.length);
+        }
+        byte[] data = out.toByteArray();
+        fileBytes = data.length;
+        writer.execute(() -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream stream = new FileOutputStream(tmp)) {
+                stream.write(data);
+                stream.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save presets", e);
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                Log.e(TAG, "Cannot replace " + file);
+            }
+        });
+    }
+
+    private synchronized void load() {
+        byte[] data;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            data = new byte[(int) in.length()];
+            in.readFully(data);
+        } catch (IOException e) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buffer.getInt() != MAGIC
+                || (buffer.getShort() & 0xFFFF) > VERSION) {
+            // Keep the file for inspection and start over rather than append to it.
+            File aside = new File(file.getPath() + ".bad");
+            Log.e(TAG, "Unreadable " + file + ", moved to " + aside);
+            file.renameTo(aside);
+            return;
+        }
+        int valid = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            int type = buffer.get() & 0xFF;
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - 4) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, start, 5 + length);
+            if ((int) crc.getValue() != buffer.getInt(start + 5 + length)) {
+                break;
+            }
+            try {
+                apply(type, data, start + 5, length, RECORD_OVERHEAD + length);
+            } catch (IOException e) {
+                break;
+            }
+            buffer.position(start + RECORD_OVERHEAD + length);
+            valid = buffer.position();
+        }
+        fileBytes = valid;
+        if (valid < data.length) {
+            // Drop the damaged tail so later appends follow the last good record.
+            Log.w(TAG, "Discarding " + (data.length - valid) + " damaged bytes");
+            compact();
+        }
+    }
+
+    private void apply(int type, byte[] data, int offset, int length, int recordSize) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        switch (type) {
+            case PUT: {
+                Preset preset = Preset.restore(in.readUTF(), in.readUTF(), in.readUTF());
+                preset.setInterpolation(FanCurve.Interpolation.fromKey(in.readUTF()));
+                preset.setControllerSettings(ControllerSettings.parse(in.readUTF()));
+                preset.setControlMode(ControlMode.fromKey(in.readUTF()));
+                preset.setPidSettings(PidSettings.parse(in.readUTF()));
+                preset.setSensorSettings(SensorSettings.parse(in.readUTF()));
+                insert(preset);
+                setRecordSize(preset.getUuid(), recordSize);
+                break;
+            }
+            case REMOVE: {
+                String uuid = in.readUTF();
+                Preset removed = index.remove(uuid);
+                if (removed != null) {
+                    order.remove(removed);
+                    setRecordSize(uuid, 0);
+                }
+                break;
+            }
+            case ORDER: {
+                int count = in.readUnsignedShort();
+                Set<Preset> reordered = new LinkedHashSet<>(order.size() * 2);
+                for (int i = 0; i < count; i++) {
+                    Preset preset = index.get(in.readUTF());
+                    if (preset != null) {
+                        reordered.add(preset);
+                    }
+                }
+                reordered.addAll(order);
+                order.clear();
+                order.addAll(reordered);
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).array();
+    }
+
+    private static byte[] encodePreset(Preset preset) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeUTF(preset.getUuid());
+            out.writeUTF(preset.getName());
+            out.writeUTF(preset.getPointsSpec());
+            out.writeUTF(preset.getInterpolation().key);
+            out.writeUTF(preset.getControllerSettings().toString());
+            out.writeUTF(preset.getControlMode().key);
+            out.writeUTF(preset.getPidSettings().toString());
+            out.writeUTF(preset.getSensorSettings().toString());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeUuids(List<String> values, boolean counted) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(40 * values.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (counted) {
+                out.writeShort(values.size());
+            }
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] record(int type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        buffer.put((byte) type).putInt(payload.length).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 5 + payload.length);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+}
@@ -2,15 +2,27 @@ package com.seilent.rpfanctl;
 
 import android.util.Log;
 
-import java.io.DataOutputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RootHelper {
     private static final String TAG = "RootHelper";
     private static final String MODULE_DIR = "/data/adb/modules/rpfanctl";
-    private static final String CONFIG_FILE = MODULE_DIR + "/fan_config";
-    private static final String STATE_FILE = MODULE_DIR + "/fan_state";
+    private static final String CONFIG_FILE = MODULE_DIR + "/" + ConfigFile.NAME;
+    private static final String LEGACY_CONFIG_FILE = MODULE_DIR + "/fan_config";
+    private static final String LEGACY_STATE_FILE = MODULE_DIR + "/fan_state";
+    private static final String PWM_DUTY_NODE = "/sys/class/gpio5_pwm2/duty";
+    private static final String THERMAL_DIR = "/sys/class/thermal";
+
+    private static RootShell shell = new RootShell(RootShell.SU);
 
     public static class PrerequisiteStatus {
         public final boolean hasRoot;
@@ -24,6 +36,245 @@ public class RootHelper {
         }
     }
 
+    /**
+     * Collects several root operations and sends them as one script. Settings
+     * changes are merged into the current fan.conf in memory and staged as a
+     * whole file in a temporary copy; the system settings are applied next, and
+     * renaming the copy over fan.conf is the last step. The daemon never sees a
+     * partial update; a failed commit leaves fan.conf untouched, removes the
+     * staged copy and puts the fan_mode and performance_mode settings back to
+     * the values read before the script ran. Just before the rename the script
+     * checks that fan.conf is still what was read, and the merge is redone if
+     * something else wrote it in between.
+     *
+     * When every step is something the daemon can do itself, the transaction is
+     * sent over the daemon's control socket instead, without starting su, as a
+     * single APPLY command that the daemon saves with one fan.conf update, so
+     * the daemon is the only writer of fan.conf while it runs.
+     */
+    public static class Transaction {
+        private static final int MAX_ATTEMPTS = 3;
+        private static final String[] MODE_SETTINGS = {"fan_mode", "performance_mode"};
+
+        private final List<String> commands = new ArrayList<>();
+        private final Map<String, String> updates = new LinkedHashMap<>();
+        private Boolean enabled;
+        private DaemonProtocol.CurveUpdate curve;
+        private String[] currentPreset;
+        private boolean shellOnly;
+
+        public Transaction setFanControlEnabled(boolean enabled) {
+            this.enabled = enabled;
+            updates.put("ENABLED", enabled ? "1" : "0");
+            if (!enabled) {
+                addResetCommands();
+            } else {
+                commands.add("settings put system fan_mode 6");
+            }
+            return this;
+        }
+
+        public Transaction setFanCurve(List<Preset.TempPoint> points) {
+            String spec = Preset.toPointsSpec(points);
+            curve = new DaemonProtocol.CurveUpdate(FanCurve.parse(spec), Collections.<String, String>emptyMap());
+            updates.put("FAN_CURVE", spec);
+            return this;
+        }
+
+        public Transaction setFanCurve(Preset preset) {
+            curve = toCurveUpdate(preset);
+            updates.put("FAN_CURVE", preset.getPointsSpec());
+            updates.putAll(curve.options);
+            return this;
+        }
+
+        public Transaction setCurrentPreset(String name, String uuid) {
+            currentPreset = new String[] {name, uuid};
+            updates.put("CURRENT_PRESET", name);
+            updates.put("CURRENT_PRESET_UUID", uuid != null ? uuid : "");
+            return this;
+        }
+
+        public Transaction resetToStock() {
+            shellOnly = true;
+            addResetCommands();
+            return this;
+        }
+
+        private void addResetCommands() {
+            commands.add("settings put system performance_mode 1");
+            commands.add("settings put system fan_mode 4");
+        }
+
+        public boolean commit() {
+            if (!shellOnly && commitToDaemon()) {
+                return true;
+            }
+            List<String> restore = commands.isEmpty() ? Collections.<String>emptyList() : readModeSettings();
+            if (restore == null) {
+                Log.e(TAG, "Transaction failed: cannot read the fan settings");
+                return false;
+            }
+            for (int attempt = 1; ; attempt++) {
+                List<String> script = new ArrayList<>();
+                String staged = null;
+                int checkStep = -1;
+                if (!updates.isEmpty()) {
+                    String current = executeShell(READ_CONFIG_COMMAND);
+                    Map<String, String> config = parseConfig(current);
+                    if (config == null) {
+                        Log.e(TAG, "Transaction failed: cannot read " + CONFIG_FILE);
+                        return false;
+                    }
+                    config.putAll(updates);
+                    staged = addStageCommands(script, CONFIG_FILE, config);
+                    script.addAll(commands);
+                    checkStep = script.size();
+                    script.add(unchangedCommand(current));
+                    script.add("mv " + staged + " " + CONFIG_FILE);
+                } else {
+                    script.addAll(commands);
+                }
+                RootShell.BatchResult result = getShell().runBatch(script);
+                if (result != null && result.success) {
+                    return true;
+                }
+                if (staged != null) {
+                    executeShell("rm -f " + staged);
+                }
+                if (result != null && result.failedStep() == checkStep && attempt < MAX_ATTEMPTS) {
+                    Log.w(TAG, CONFIG_FILE + " changed during the transaction, retrying");
+                    continue;
+                }
+                Log.e(TAG, result == null ? "Transaction failed: shell unavailable"
+                        : "Transaction failed at step: " + script.get(result.failedStep()));
+                if (!restore.isEmpty()) {
+                    RootShell.BatchResult undo = getShell().runBatch(restore);
+                    if (undo == null || !undo.success) {
+                        Log.e(TAG, "Could not restore the fan settings");
+                    }
+                }
+                return false;
+            }
+        }
+
+        /** Commands that put the mode settings back to their current values, or null if unreadable. */
+        private static List<String> readModeSettings() {
+            List<String> restore = new ArrayList<>();
+            for (String key : MODE_SETTINGS) {
+                String value = executeShell("settings get system " + key);
+                if (value == null) {
+                    return null;
+                }
+                value = value.trim();
+                restore.add(value.isEmpty() || value.equals("null")
+                        ? "settings delete system " + key
+                        : "settings put system " + key + " " + value);
+            }
+            return restore;
+        }
+
+        private boolean commitToDaemon() {
+            try (DaemonClient client = DaemonClient.connect(daemonTransport())) {
+                client.apply(new DaemonProtocol.Apply(curve, currentPreset, enabled));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    static Transport.Client daemonTransport() {
+        return LocalSocketTransport.client(DaemonProtocol.SOCKET_NAME);
+    }
+
+    /**
+     * Telemetry the daemon recorded between the two times, at the finest
+     * resolution that fits in maxBuckets; null if the daemon cannot be reached.
+     */
+    public static List<HistoryBucket> queryHistory(long fromMillis, long toMillis, int maxBuckets) {
+        try (DaemonClient client = DaemonClient.connect(daemonTransport())) {
+            return client.queryHistory(fromMillis, toMillis, maxBuckets);
+        } catch (IOException e) {
+            Log.e(TAG, "History query failed", e);
+            return null;
+        }
+    }
+
+    /** Throttling per preset as the daemon counted it; empty if nothing was recorded yet. */
+    public static ThrottleStats readThrottleStats() {
+        String path = MODULE_DIR + "/" + ThrottleStats.FILE_NAME;
+        String output = executeShell("[ -f " + path + " ] && base64 " + path);
+        if (output == null || output.trim().isEmpty()) {
+            return new ThrottleStats();
+        }
+        try {
+            return ThrottleStats.fromValues(ConfigFile.parseShellOutput(output));
+        } catch (IOException e) {
+            Log.e(TAG, "Unreadable " + path, e);
+            return new ThrottleStats();
+        }
+    }
+
+    /**
+     * Writes a ConfigFile-format file beside path and returns the staged copy's
+     * path; the caller renames it over path as its last step. The copy's name is
+     * unique, so concurrent writers never share one.
+     */
+    private static String addStageCommands(List<String> script, String path, Map<String, String> values) {
+        String staged = path + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+        String encoded = Base64.getEncoder().encodeToString(ConfigFile.encode(values));
+        script.add("echo '" + encoded + "' | base64 -d > " + staged);
+        script.add("chmod 644 " + staged);
+        return staged;
+    }
+
+    /**
+     * Hands the daemon the presets to switch to per foreground app, as package
+     * name to preset UUID; see {@link AppPresets}.
+     */
+    public static boolean setAppPresets(Map<String, String> packageToUuid, Map<String, Preset> presets) {
+        Map<String, Map<String, String>> presetValues = new LinkedHashMap<>();
+        for (Preset preset : presets.values()) {
+            presetValues.put(preset.getUuid(), toPresetValues(preset));
+        }
+        String path = MODULE_DIR + "/" + AppPresets.FILE_NAME;
+        List<String> script = new ArrayList<>();
+        String staged = addStageCommands(script, path, AppPresets.toValues(packageToUuid, presetValues));
+        script.add("mv " + staged + " " + path);
+        RootShell.BatchResult result = getShell().runBatch(script);
+        if (result == null || !result.success) {
+            Log.e(TAG, "Cannot write " + AppPresets.FILE_NAME);
+            executeShell("rm -f " + staged);
+            return false;
+        }
+        return true;
+    }
+
+    /** What selecting the preset writes to fan.conf. */
+    static Map<String, String> toPresetValues(Preset preset) {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("CURRENT_PRESET", preset.getName());
+        values.put("CURRENT_PRESET_UUID", preset.getUuid());
+        values.put("FAN_CURVE", preset.getPointsSpec());
+        values.putAll(toCurveUpdate(preset).options);
+        return values;
+    }
+
+    static DaemonProtocol.CurveUpdate toCurveUpdate(Preset preset) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("FAN_INTERP", preset.getInterpolation().key);
+        options.put("FAN_CONTROLLER", preset.getControllerSettings().toString());
+        options.put("FAN_MODE", preset.getControlMode().key);
+        options.put("FAN_PID", preset.getPidSettings().toString());
+        options.put("FAN_SENSORS", preset.getSensorSettings().toString());
+        return new DaemonProtocol.CurveUpdate(preset.toFanCurve(), options);
+    }
+
+    public static Transaction beginTransaction() {
+        return new Transaction();
+    }
+
     public static boolean isRootAvailable() {
         return executeShell("echo test") != null;
     }
@@ -39,21 +290,22 @@ public class RootHelper {
         return new PrerequisiteStatus(hasRoot, hasModule);
     }
 
+    public static synchronized void setShell(RootShell newShell) {
+        shell.close();
+        shell = newShell;
+    }
+
+    private static synchronized RootShell getShell() {
+        return shell;
+    }
+
     public static String executeShell(String command) {
-        try {
-            Process p = Runtime.getRuntime().exec(new String[]{"su", "-c", command});
-            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            StringBuilder output = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-            p.waitFor();
-            return output.toString().trim();
-        } catch (Exception e) {
-            Log.e(TAG, "Error executing command: " + command, e);
+        RootShell.Result result = getShell().run(command);
+        if (result == null) {
+            Log.e(TAG, "Error executing command: " + command);
             return null;
         }
+        return result.output;
     }
 
     public static boolean writeToFile(String path, String value) {
@@ -66,7 +318,7 @@ public class RootHelper {
     }
 
     public static int getFanDuty() {
-        String value = readFile("/sys/class/gpio5_pwm2/duty");
+        String value = readFile(PWM_DUTY_NODE);
         if (value != null) {
             try {
                 return Integer.parseInt(value.trim());
@@ -77,92 +329,186 @@ public class RootHelper {
         return 0;
     }
 
+    /**
+     * Writes the PWM node directly when the device config selects ACTUATOR=sysfs,
+     * otherwise (or if that write fails) goes through the settings provider.
+     */
     public static void setFanDuty(int duty) {
-        executeShell("settings put system fan_mode 6");
-        executeShell("settings put system fan_speed " + duty);
+        Map<String, String> config = readConfig();
+        boolean sysfs = config != null && DaemonConfig.ACTUATOR_SYSFS.equals(config.get("ACTUATOR"));
+        executeShell("if " + sysfs + " && echo " + duty + " > " + PWM_DUTY_NODE + "; then :; else "
+                + "settings put system fan_mode 6; settings put system fan_speed " + duty + "; fi");
     }
 
-    public static int getCpuTemp() {
-        String temp = readFile("/sys/class/thermal/thermal_zone0/temp");
-        if (temp != null) {
-            try {
-                return Integer.parseInt(temp.trim());
-            } catch (NumberFormatException e) {
-            }
+    /**
+     * Prints fan.conf as base64, or the old key=value files as text if the
+     * daemon has not created fan.conf yet.
+     */
+    private static final String READ_CONFIG_COMMAND = "if [ -f " + CONFIG_FILE + " ]; then base64 " + CONFIG_FILE
+            + "; else echo legacy; cat " + LEGACY_CONFIG_FILE + " " + LEGACY_STATE_FILE + " 2>/dev/null; fi";
+
+    /**
+     * A step that fails if fan.conf no longer holds what {@link #READ_CONFIG_COMMAND}
+     * printed as output, which must have parsed.
+     */
+    private static String unchangedCommand(String output) {
+        if (output.startsWith("legacy")) {
+            return "[ ! -f " + CONFIG_FILE + " ]";
         }
-        return 0;
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(Base64.getMimeDecoder().decode(output));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return "[ \"$(md5sum " + CONFIG_FILE + " | cut -d' ' -f1)\" = " + hex + " ]";
     }
 
-    public static void resetToStock() {
-        executeShell("settings put system performance_mode 1");
-        executeShell("settings put system fan_mode 4");
+    /** Current settings, or null if they could not be read. */
+    public static Map<String, String> readConfig() {
+        return parseConfig(executeShell(READ_CONFIG_COMMAND));
     }
 
-    public static void setFanControlEnabled(boolean enabled) {
-        String value = enabled ? "1" : "0";
-        executeShell("sed -i 's/^ENABLED=.*/ENABLED=" + value + "/' " + STATE_FILE);
-        if (!enabled) {
-            executeShell("settings put system performance_mode 1");
-            executeShell("settings put system fan_mode 4");
-        } else {
-            executeShell("settings put system fan_mode 6");
+    private static Map<String, String> parseConfig(String output) {
+        if (output == null) {
+            return null;
+        }
+        try {
+            return ConfigFile.parseShellOutput(output);
+        } catch (IOException e) {
+            Log.e(TAG, "Unreadable " + CONFIG_FILE, e);
+            return null;
         }
     }
 
-    public static boolean isFanControlEnabled() {
-        String state = readFile(STATE_FILE);
-        if (state != null) {
-            String[] lines = state.split("\n");
-            for (String line : lines) {
-                if (line.startsWith("ENABLED=")) {
-                    return line.substring(8).trim().equals("1");
-                }
+    /** One reading of every thermal zone, as the daemon enumerates them. */
+    public static class ZoneReadings {
+        public final String[] names;
+        public final String[] types;
+        public final int[] temps;
+
+        ZoneReadings(String[] names, String[] types, int[] temps) {
+            this.names = names;
+            this.types = types;
+            this.temps = temps;
+        }
+
+        /** Fuses the readings the way the daemon would for this preset. */
+        public int fuse(Preset preset) {
+            SensorFusion fusion = new SensorFusion();
+            fusion.configure(preset.getSensorSettings(), names, types, preset.toFanCurve());
+            if (fusion.getZoneCount() == 0) {
+                fusion.configure(SensorSettings.parse("max"), names, types, preset.toFanCurve());
             }
+            return fusion.fuse(temps, 0);
         }
-        return false;
     }
 
-    public static void setFanCurve(java.util.List<Preset.TempPoint> points) {
-        StringBuilder curve = new StringBuilder();
-        for (int i = 0; i < points.size(); i++) {
-            if (i > 0) curve.append(",");
-            curve.append(points.get(i).temperature).append(":").append(points.get(i).fanPercent);
-        }
-        executeShell("sed -i 's|^FAN_CURVE=.*|FAN_CURVE=" + curve.toString() + "|' " + CONFIG_FILE);
+    private static final String THERMAL_ZONES_COMMAND = "for z in " + THERMAL_DIR + "/thermal_zone*; do "
+            + "echo \"${z##*/} $(cat $z/type) $(cat $z/temp)\"; done";
+
+    public static ZoneReadings readThermalZones() {
+        return parseThermalZones(executeShell(THERMAL_ZONES_COMMAND));
     }
 
-    public static String getCurrentPreset() {
-        String state = readFile(STATE_FILE);
-        if (state != null) {
-            String[] lines = state.split("\n");
-            for (String line : lines) {
-                if (line.startsWith("CURRENT_PRESET=")) {
-                    return line.substring(15).trim();
+    private static ZoneReadings parseThermalZones(String output) {
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<Integer> temps = new ArrayList<>();
+        if (output != null) {
+            for (String line : output.split("\n")) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 3) continue;
+                try {
+                    temps.add(Integer.parseInt(parts[2]));
+                } catch (NumberFormatException e) {
+                    continue;
                 }
+                names.add(parts[0]);
+                types.add(parts[1]);
             }
         }
-        return "Default";
+        int[] values = new int[temps.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = temps.get(i);
+        }
+        return new ZoneReadings(names.toArray(new String[0]), types.toArray(new String[0]), values);
+    }
+
+    /**
+     * Reads the fan state, duty and thermal zones in one round trip. Returns null
+     * if the shell is unavailable. Clocks and fan speed are left unknown: only
+     * the daemon samples them.
+     */
+    static TelemetrySnapshot readTelemetry(Preset fusionPreset) {
+        RootShell.BatchResult result = getShell().batch()
+                .add(READ_CONFIG_COMMAND)
+                .add("cat " + PWM_DUTY_NODE + " || true")
+                .add(THERMAL_ZONES_COMMAND)
+                .execute();
+        if (result == null || !result.success) {
+            return null;
+        }
+        Map<String, String> config = parseConfig(result.steps.get(0).output);
+        if (config == null) {
+            config = new LinkedHashMap<>();
+        }
+        int duty = 0;
+        try {
+            duty = Integer.parseInt(result.steps.get(1).output.trim());
+        } catch (NumberFormatException e) {
+        }
+        return new TelemetrySnapshot(
+                System.currentTimeMillis(),
+                "1".equals(config.get("ENABLED")),
+                config.get("CURRENT_PRESET"),
+                emptyToNull(config.get("CURRENT_PRESET_UUID")),
+                duty,
+                parseThermalZones(result.steps.get(2).output).fuse(fusionPreset),
+                0, 0, 0, FanTachometer.INVALID, false);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    public static void resetToStock() {
+        beginTransaction().resetToStock().commit();
+    }
+
+    public static boolean setFanControlEnabled(boolean enabled) {
+        return beginTransaction().setFanControlEnabled(enabled).commit();
+    }
+
+    public static boolean isFanControlEnabled() {
+        Map<String, String> config = readConfig();
+        return config != null && "1".equals(config.get("ENABLED"));
+    }
+
+    public static void setFanCurve(List<Preset.TempPoint> points) {
+        beginTransaction().setFanCurve(points).commit();
+    }
+
+    public static String getCurrentPreset() {
+        Map<String, String> config = readConfig();
+        String name = config != null ? config.get("CURRENT_PRESET") : null;
+        return name != null ? name : "Default";
     }
 
     public static void setCurrentPreset(String name) {
-        executeShell("sed -i 's|^CURRENT_PRESET=.*|CURRENT_PRESET=" + name + "|' " + STATE_FILE);
+        setCurrentPreset(name, null);
     }
 
     public static void setCurrentPreset(String name, String uuid) {
-        executeShell("sed -i 's|^CURRENT_PRESET=.*|CURRENT_PRESET=" + name + "|' " + STATE_FILE);
-        executeShell("sed -i 's|^CURRENT_PRESET_UUID=.*|CURRENT_PRESET_UUID=" + uuid + "|' " + STATE_FILE);
+        beginTransaction().setCurrentPreset(name, uuid).commit();
     }
 
     public static String getCurrentPresetUuid() {
-        String state = readFile(STATE_FILE);
-        if (state != null) {
-            String[] lines = state.split("\n");
-            for (String line : lines) {
-                if (line.startsWith("CURRENT_PRESET_UUID=")) {
-                    return line.substring(19).trim();
-                }
-            }
-        }
-        return null;
+        Map<String, String> config = readConfig();
+        return config != null ? emptyToNull(config.get("CURRENT_PRESET_UUID")) : null;
     }
 }
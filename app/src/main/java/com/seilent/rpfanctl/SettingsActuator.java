@@ -0,0 +1,47 @@
+package com.seilent.rpfanctl;
+
+import java.io.IOException;
+
+/**
+ * Drives the fan through the stock settings provider, the same way the vendor
+ * fan service expects it. Each call starts a {@code settings} process, so it is
+ * only used when the duty actually changes.
+ */
+public class SettingsActuator implements FanActuator {
+    private final DaemonLog log;
+
+    public SettingsActuator(DaemonLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void enable() {
+        putSetting("fan_mode", "6");
+    }
+
+    @Override
+    public void setDuty(int duty) {
+        putSetting("fan_mode", "6");
+        putSetting("fan_speed", String.valueOf(duty));
+    }
+
+    @Override
+    public void restoreStock() {
+        putSetting("performance_mode", "1");
+        putSetting("fan_mode", "4");
+    }
+
+    private void putSetting(String key, String value) {
+        try {
+            Process p = new ProcessBuilder("settings", "put", "system", key, value)
+                    .redirectErrorStream(true)
+                    .start();
+            p.getInputStream().close();
+            p.waitFor();
+        } catch (IOException e) {
+            log.warn("Failed to put setting " + key + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.seilent.rpfanctl;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes duty straight to the PWM sysfs node through a descriptor that stays
+ * open. Taking over from and handing back to the stock fan service still goes
+ * through the settings provider, and so does any duty write that fails.
+ */
+public class SysfsPwmActuator implements FanActuator {
+    private final File node;
+    private final FanActuator fallback;
+    private final DaemonLog log;
+    private SysfsNode pwm;
+    private boolean failed;
+
+    public SysfsPwmActuator(File node, FanActuator fallback, DaemonLog log) {
+        this.node = node;
+        this.fallback = fallback;
+        this.log = log;
+    }
+
+    public File getNode() {
+        return node;
+    }
+
+    @Override
+    public void enable() {
+        fallback.enable();
+    }
+
+    @Override
+    public void setDuty(int duty) {
+        if (!failed && pwm == null) {
+            try {
+                pwm = SysfsNode.openReadWrite(node);
+            } catch (IOException e) {
+                failed = true;
+                log.warn("Cannot open " + node + ", using settings provider: " + e.getMessage());
+            }
+        }
+        if (pwm != null && pwm.writeInt(duty)) {
+            return;
+        }
+        fallback.setDuty(duty);
+    }
+
+    @Override
+    public void restoreStock() {
+        fallback.restoreStock();
+    }
+
+    public void close() {
+        if (pwm != null) {
+            pwm.close();
+            pwm = null;
+        }
+    }
+}
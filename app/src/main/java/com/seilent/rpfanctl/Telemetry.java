@@ -0,0 +1,149 @@
+package com.seilent.rpfanctl;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the latest {@link TelemetrySnapshot} and hands it to observers on the
+ * main thread. While someone is observing, states are pushed by the daemon over
+ * its control socket; if the daemon cannot be reached, the state is sampled
+ * through the root shell on this component's own thread until it can.
+ * Observers are only called when the state actually changes.
+ */
+public final class Telemetry {
+    public interface Observer {
+        void onTelemetry(TelemetrySnapshot snapshot);
+    }
+
+    private static final long PERIOD_MS = 1000;
+    private static final long RECONNECT_MS = 10000;
+    private static final Telemetry INSTANCE = new Telemetry();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Telemetry");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+
+    private volatile TelemetrySnapshot latest = TelemetrySnapshot.EMPTY;
+    private volatile Preset fusionPreset = Preset.createDefault();
+    private ScheduledFuture<?> polling;
+    private volatile DaemonClient subscription;
+    private long lastConnectAttempt;
+
+    private Telemetry() {
+    }
+
+    public static Telemetry get() {
+        return INSTANCE;
+    }
+
+    public TelemetrySnapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * Preset whose sensor settings decide the temperature while sampling through
+     * root; pushed states carry the temperature the daemon fused itself.
+     */
+    public void setActivePreset(Preset preset) {
+        fusionPreset = preset;
+        refresh();
+    }
+
+    /**
+     * Registers an observer and starts sampling if it is the first. The observer
+     * gets the latest snapshot straight away if one exists.
+     */
+    public synchronized void addObserver(Observer observer) {
+        observers.addIfAbsent(observer);
+        TelemetrySnapshot snapshot = latest;
+        if (snapshot != TelemetrySnapshot.EMPTY) {
+            mainHandler.post(() -> {
+                if (observers.contains(observer)) observer.onTelemetry(snapshot);
+            });
+        }
+        if (polling == null) {
+            polling = executor.scheduleWithFixedDelay(this::sample, 0, PERIOD_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void removeObserver(Observer observer) {
+        observers.remove(observer);
+        if (observers.isEmpty() && polling != null) {
+            polling.cancel(false);
+            polling = null;
+            DaemonClient client = subscription;
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    /** Takes a sample now, e.g. right after the app changed the config. */
+    public void refresh() {
+        executor.execute(this::sample);
+    }
+
+    private void sample() {
+        if (subscription != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!observers.isEmpty() && now - lastConnectAttempt >= RECONNECT_MS) {
+            lastConnectAttempt = now;
+            if (subscribe()) {
+                return;
+            }
+        }
+        TelemetrySnapshot snapshot = RootHelper.readTelemetry(fusionPreset);
+        if (snapshot != null) {
+            deliver(snapshot);
+        }
+    }
+
+    /** Connects to the daemon and reads its pushes on a separate thread. */
+    private boolean subscribe() {
+        DaemonClient client;
+        try {
+            client = DaemonClient.connect(RootHelper.daemonTransport());
+        } catch (IOException e) {
+            return false;
+        }
+        subscription = client;
+        Thread reader = new Thread(() -> {
+            try {
+                client.subscribe(this::deliver);
+            } catch (IOException e) {
+            } finally {
+                client.close();
+                subscription = null;
+            }
+        }, "TelemetryPush");
+        reader.setDaemon(true);
+        reader.start();
+        return true;
+    }
+
+    private void deliver(TelemetrySnapshot snapshot) {
+        TelemetrySnapshot previous = latest;
+        latest = snapshot;
+        if (snapshot.sameState(previous)) {
+            return;
+        }
+        mainHandler.post(() -> {
+            for (Observer observer : observers) {
+                observer.onTelemetry(snapshot);
+            }
+        });
+    }
+}
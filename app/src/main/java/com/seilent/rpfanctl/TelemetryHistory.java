@@ -0,0 +1,305 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Daemon telemetry history in a fixed-size, memory-mapped file. Every tick is
+ * folded into a one-second bucket; finished seconds roll up into minutes and
+ * finished minutes into hours, each tier kept in its own ring of
+ * {@link HistoryBucket} records. Three days of minutes and ninety of hours fit
+ * in about 240 KB, and recording a tick touches no file API at all: the kernel
+ * writes the dirty pages back on its own schedule.
+ *
+ * Layout (big-endian): "RPTH", u16 version, u16 tier count, then per tier u32
+ * resolution in seconds, u32 capacity, u32 next slot, u32 record count; the
+ * rings follow the 64-byte header in tier order.
+ */
+public class TelemetryHistory implements Closeable {
+    public static final String FILE_NAME = "history.bin";
+
+    private static final int MAGIC = 0x52505448;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int TIER_HEADER_OFFSET = 8;
+    private static final int TIER_HEADER_SIZE = 16;
+    private static final int[] RESOLUTIONS = {1, 60, 3600};
+    private static final int[] CAPACITIES = {3600, 3 * 24 * 60, 90 * 24};
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int[] ringOffsets = new int[RESOLUTIONS.length];
+    private final int[] heads = new int[RESOLUTIONS.length];
+    private final int[] counts = new int[RESOLUTIONS.length];
+    private final Accumulator[] pending = new Accumulator[RESOLUTIONS.length];
+    private final Accumulator sample = new Accumulator();
+
+    private TelemetryHistory(RandomAccessFile file, MappedByteBuffer map) {
+        this.file = file;
+        this.map = map;
+        int offset = HEADER_SIZE;
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            ringOffsets[tier] = offset;
+            offset += CAPACITIES[tier] * HistoryBucket.SIZE;
+            pending[tier] = new Accumulator();
+        }
+    }
+
+    /** Maps the file, starting a new history if it is missing or laid out differently. */
+    public static TelemetryHistory open(File path) throws IOException {
+        long size = HEADER_SIZE;
+        for (int capacity : CAPACITIES) {
+            size += (long) capacity * HistoryBucket.SIZE;
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            boolean fresh = file.length() != size;
+            file.setLength(size);
+            MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            TelemetryHistory history = new TelemetryHistory(file, map);
+            if (fresh || !history.readHeader()) {
+                history.writeHeader();
+            }
+            return history;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** Adds one control-loop tick. */
+    public synchronized void record(long nowMillis, int tempMilli, int duty, int flags,
+                                    int throttlePercent, int presetHash) {
+        sample.set(nowMillis / 1000, tempMilli, duty, flags, throttlePercent, presetHash);
+        add(0, sample);
+    }
+
+    /**
+     * Buckets overlapping [from, to], oldest first, from the finest tier that
+     * holds the whole range in at most {@code maxBuckets}. If even hours are too
+     * many, the newest {@code maxBuckets} hours are returned. The bucket still
+     * being filled is included, so recent ticks show up at every resolution.
+     */
+    public synchronized List<HistoryBucket> query(long fromMillis, long toMillis, int maxBuckets) {
+        long from = fromMillis / 1000;
+        long to = toMillis / 1000;
+        int last = RESOLUTIONS.length - 1;
+        for (int tier = 0; tier < last; tier++) {
+            boolean covers = counts[tier] < CAPACITIES[tier] || startOf(tier, 0) <= from;
+            if (covers && countInRange(tier, from, to) <= maxBuckets) {
+                return collect(tier, from, to, maxBuckets);
+            }
+        }
+        return collect(last, from, to, maxBuckets);
+    }
+
+    /** Stores the unfinished buckets of every tier, then syncs and closes the file. */
+    @Override
+    public synchronized void close() throws IOException {
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            Accumulator current = pending[tier];
+            if (current.samples > 0) {
+                store(tier, current);
+                if (tier + 1 < RESOLUTIONS.length) {
+                    add(tier + 1, current);
+                }
+                current.samples = 0;
+            }
+        }
+        map.force();
+        file.close();
+    }
+
+    private void add(int tier, Accumulator bucket) {
+        int resolution = RESOLUTIONS[tier];
+        long aligned = bucket.start - bucket.start % resolution;
+        Accumulator current = pending[tier];
+        if (current.samples > 0 && current.start != aligned) {
+            store(tier, current);
+            if (tier + 1 < RESOLUTIONS.length) {
+                add(tier + 1, current);
+            }
+            current.samples = 0;
+        }
+        if (current.samples == 0) {
+            current.reset(aligned);
+        }
+        current.merge(bucket);
+    }
+
+    private void store(int tier, Accumulator bucket) {
+        map.position(ringOffsets[tier] + heads[tier] * HistoryBucket.SIZE);
+        HistoryBucket.write(map, bucket.start, bucket.tempMin, bucket.tempMax, (int) (bucket.tempSum / bucket.samples),
+                bucket.dutyMin, bucket.dutyMax, (int) (bucket.dutySum / bucket.samples),
+                bucket.samples, bucket.flags, bucket.throttlePercent, bucket.presetHash);
+        heads[tier] = (heads[tier] + 1) % CAPACITIES[tier];
+        if (counts[tier] < CAPACITIES[tier]) {
+            counts[tier]++;
+        }
+        int header = TIER_HEADER_OFFSET + tier * TIER_HEADER_SIZE;
+        map.putInt(header + 8, heads[tier]);
+        map.putInt(header + 12, counts[tier]);
+    }
+
+    private int slot(int tier, int index) {
+        return (heads[tier] - counts[tier] + index + CAPACITIES[tier]) % CAPACITIES[tier];
+    }
+
+    private long startOf(int tier, int index) {
+        return map.getInt(ringOffsets[tier] + slot(tier, index) * HistoryBucket.SIZE) & 0xFFFFFFFFL;
+    }
+
+    /** Index of the first bucket that ends after {@code from}. */
+    private int lowerBound(int tier, long from) {
+        long firstStart = from - RESOLUTIONS[tier] + 1;
+        int low = 0;
+        int high = counts[tier];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startOf(tier, mid) < firstStart) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Index after the last bucket that starts at or before {@code to}. */
+    private int upperBound(int tier, long to) {
+        int low = 0;
+        int high = counts[tier];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startOf(tier, mid) <= to) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int countInRange(int tier, long from, long to) {
+        int stored = Math.max(0, upperBound(tier, to) - lowerBound(tier, from));
+        return stored + (pendingInRange(tier, from, to) ? 1 : 0);
+    }
+
+    private boolean pendingInRange(int tier, long from, long to) {
+        Accumulator current = pending[tier];
+        return current.samples > 0 && current.start <= to && current.start + RESOLUTIONS[tier] > from;
+    }
+
+    private List<HistoryBucket> collect(int tier, long from, long to, int maxBuckets) {
+        boolean withPending = pendingInRange(tier, from, to);
+        int end = upperBound(tier, to);
+        int begin = Math.max(lowerBound(tier, from), end - maxBuckets + (withPending ? 1 : 0));
+        List<HistoryBucket> buckets = new ArrayList<>(Math.max(0, end - begin) + 1);
+        ByteBuffer view = map.duplicate();
+        for (int i = begin; i < end; i++) {
+            view.position(ringOffsets[tier] + slot(tier, i) * HistoryBucket.SIZE);
+            buckets.add(HistoryBucket.read(view, RESOLUTIONS[tier]));
+        }
+        if (withPending && maxBuckets > 0) {
+            Accumulator current = pending[tier];
+            buckets.add(new HistoryBucket(current.start, RESOLUTIONS[tier],
+                    current.tempMin, current.tempMax, (int) (current.tempSum / current.samples),
+                    current.dutyMin, current.dutyMax, (int) (current.dutySum / current.samples),
+                    current.samples, current.flags, current.throttlePercent, current.presetHash));
+        }
+        return buckets;
+    }
+
+    private boolean readHeader() {
+        if (map.getInt(0) != MAGIC || (map.getShort(4) & 0xFFFF) != VERSION
+                || map.getShort(6) != RESOLUTIONS.length) {
+            return false;
+        }
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            int header = TIER_HEADER_OFFSET + tier * TIER_HEADER_SIZE;
+            int head = map.getInt(header + 8);
+            int count = map.getInt(header + 12);
+            if (map.getInt(header) != RESOLUTIONS[tier] || map.getInt(header + 4) != CAPACITIES[tier]
+                    || head < 0 || head >= CAPACITIES[tier] || count < 0 || count > CAPACITIES[tier]) {
+                return false;
+            }
+            heads[tier] = head;
+            counts[tier] = count;
+        }
+        return true;
+    }
+
+    private void writeHeader() {
+        map.putInt(0, MAGIC);
+        map.putShort(4, (short) VERSION);
+        map.putShort(6, (short) RESOLUTIONS.length);
+        for (int tier = 0; tier < RESOLUTIONS.length; tier++) {
+            int header = TIER_HEADER_OFFSET + tier * TIER_HEADER_SIZE;
+            map.putInt(header, RESOLUTIONS[tier]);
+            map.putInt(header + 4, CAPACITIES[tier]);
+            map.putInt(header + 8, 0);
+            map.putInt(header + 12, 0);
+            heads[tier] = 0;
+            counts[tier] = 0;
+        }
+    }
+
+    /** A bucket being filled; sums are kept so means stay exact across rollups. */
+    private static final class Accumulator {
+        long start;
+        int samples;
+        int tempMin;
+        int tempMax;
+        long tempSum;
+        int dutyMin;
+        int dutyMax;
+        long dutySum;
+        int flags;
+        int throttlePercent;
+        int presetHash;
+
+        void reset(long start) {
+            this.start = start;
+            samples = 0;
+            tempMin = Integer.MAX_VALUE;
+            tempMax = Integer.MIN_VALUE;
+            tempSum = 0;
+            dutyMin = Integer.MAX_VALUE;
+            dutyMax = Integer.MIN_VALUE;
+            dutySum = 0;
+            throttlePercent = 0;
+        }
+
+        void merge(Accumulator other) {
+            tempMin = Math.min(tempMin, other.tempMin);
+            tempMax = Math.max(tempMax, other.tempMax);
+            tempSum += other.tempSum;
+            dutyMin = Math.min(dutyMin, other.dutyMin);
+            dutyMax = Math.max(dutyMax, other.dutyMax);
+            dutySum += other.dutySum;
+            samples += other.samples;
+            throttlePercent = Math.max(throttlePercent, other.throttlePercent);
+            flags = other.flags;
+            presetHash = other.presetHash;
+        }
+
+        void set(long start, int tempMilli, int duty, int flags, int throttlePercent, int presetHash) {
+            this.start = start;
+            samples = 1;
+            tempMin = tempMax = tempMilli;
+            tempSum = tempMilli;
+            dutyMin = dutyMax = duty;
+            dutySum = duty;
+            this.flags = flags;
+            this.throttlePercent = throttlePercent;
+            this.presetHash = presetHash;
+        }
+    }
+}
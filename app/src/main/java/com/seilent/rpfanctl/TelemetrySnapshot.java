@@ -0,0 +1,65 @@
+package com.seilent.rpfanctl;
+
+/** One sample of the fan state, as published by {@link Telemetry}. */
+public final class TelemetrySnapshot {
+    /** Before the first sample arrives. */
+    public static final TelemetrySnapshot EMPTY = new TelemetrySnapshot(0, false, null, null, 0, 0, 0, 0, 0,
+            FanTachometer.INVALID, false);
+
+    /** Wall-clock time of the sample in milliseconds. */
+    public final long timestamp;
+    public final boolean enabled;
+    public final String presetName;
+    public final String presetUuid;
+    public final int duty;
+    /** Temperature fused for the active preset, in millidegrees. */
+    public final int tempMilli;
+    /** Clock of the fastest CPU cluster and of the GPU in kHz, 0 if unknown. */
+    public final int cpuKhz;
+    public final int gpuKhz;
+    /** How far clocks were capped below their maximum, 0 when not throttled or unknown. */
+    public final int throttlePercent;
+    /** Measured fan speed, or {@link FanTachometer#INVALID} without a tachometer. */
+    public final int rpm;
+    /** The fan is driven but not turning, and the daemon has forced full duty. */
+    public final boolean stalled;
+
+    public TelemetrySnapshot(long timestamp, boolean enabled, String presetName, String presetUuid,
+                             int duty, int tempMilli, int cpuKhz, int gpuKhz, int throttlePercent,
+                             int rpm, boolean stalled) {
+        this.timestamp = timestamp;
+        this.enabled = enabled;
+        this.presetName = presetName;
+        this.presetUuid = presetUuid;
+        this.duty = duty;
+        this.tempMilli = tempMilli;
+        this.cpuKhz = cpuKhz;
+        this.gpuKhz = gpuKhz;
+        this.throttlePercent = throttlePercent;
+        this.rpm = rpm;
+        this.stalled = stalled;
+    }
+
+    public int getFanPercent() {
+        return FanCurve.dutyToPercent(duty);
+    }
+
+    /** Compares everything except the timestamp. */
+    public boolean sameState(TelemetrySnapshot other) {
+        return other != null
+                && enabled == other.enabled
+                && duty == other.duty
+                && tempMilli == other.tempMilli
+                && cpuKhz == other.cpuKhz
+                && gpuKhz == other.gpuKhz
+                && throttlePercent == other.throttlePercent
+                && rpm == other.rpm
+                && stalled == other.stalled
+                && equal(presetName, other.presetName)
+                && equal(presetUuid, other.presetUuid);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,59 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Byte-stream endpoints for {@link DaemonProtocol}. On the device this is an
+ * abstract-namespace Unix socket ({@link LocalSocketTransport}); on a desktop
+ * JVM it is loopback TCP ({@link LoopbackTransport}), so the protocol can be
+ * exercised without Android.
+ */
+public interface Transport {
+    interface Connection extends Closeable {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+
+        /** Makes reads fail with an IOException after the given time; 0 waits forever. */
+        void setReadTimeout(int millis) throws IOException;
+    }
+
+    interface Server extends Closeable {
+        /** Blocks until a client connects; throws once the server is closed. */
+        Connection accept() throws IOException;
+    }
+
+    interface Client {
+        Connection connect() throws IOException;
+    }
+
+    /**
+     * The device socket, looked up by name so that this class, and the daemon,
+     * still compile and run on a desktop JVM without the Android framework.
+     */
+    static Server localServer(String name) throws IOException {
+        try {
+            return (Server) Class.forName("com.seilent.rpfanctl.LocalSocketTransport")
+                    .getMethod("listen", String.class)
+                    .invoke(null, name);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IOException("Local sockets unavailable: " + e);
+        }
+    }
+
+    static Client localClient(String name) throws IOException {
+        try {
+            return (Client) Class.forName("com.seilent.rpfanctl.LocalSocketTransport")
+                    .getMethod("client", String.class)
+                    .invoke(null, name);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IOException("Local sockets unavailable: " + e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.seilent.rpfanctl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config parsing behind RootHelper.isFanControlEnabled and getCurrentPreset,
+ * from both forms the read command prints, plus the daemon's reload and the
+ * encode a transaction does before writing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConfigBenchmark {
+    private Map<String, String> values;
+    private String shellOutput;
+    private String legacyOutput;
+
+    @Setup
+    public void setUp() {
+        values = new LinkedHashMap<>();
+        values.put("FAN_CURVE", "30:10,40:15,50:20,55:30,60:40,65:50,70:60,75:70,80:85,90:100");
+        values.put("FAN_INTERP", "cubic");
+        values.put("FAN_CONTROLLER", ControllerSettings.DEFAULT.toString());
+        values.put("FAN_MODE", "curve");
+        values.put("FAN_PID", PidSettings.DEFAULT.toString());
+        values.put("FAN_SENSORS", SensorSettings.DEFAULT.toString());
+        values.put("ACTUATOR", "settings");
+        values.put("ENABLED", "1");
+        values.put("CURRENT_PRESET", "Quiet");
+        values.put("CURRENT_PRESET_UUID", "123e4567-e89b-12d3-a456-426614174000");
+        // base64 wraps at 76 columns on the device, as the MIME decoder expects.
+        shellOutput = Base64.getMimeEncoder().encodeToString(ConfigFile.encode(values));
+        StringBuilder legacy = new StringBuilder("legacy");
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            legacy.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        legacyOutput = legacy.toString();
+    }
+
+    @Benchmark
+    public boolean isFanControlEnabled() throws IOException {
+        return "1".equals(ConfigFile.parseShellOutput(shellOutput).get("ENABLED"));
+    }
+
+    @Benchmark
+    public String getCurrentPreset() throws IOException {
+        return ConfigFile.parseShellOutput(shellOutput).get("CURRENT_PRESET");
+    }
+
+    @Benchmark
+    public String getCurrentPresetLegacy() throws IOException {
+        return ConfigFile.parseShellOutput(legacyOutput).get("CURRENT_PRESET");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return ConfigFile.encode(values);
+    }
+
+    @Benchmark
+    public DaemonConfig daemonReload() {
+        return DaemonConfig.fromValues(values);
+    }
+}
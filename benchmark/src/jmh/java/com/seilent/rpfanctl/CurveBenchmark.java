@@ -0,0 +1,97 @@
+package com.seilent.rpfanctl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Curve evaluation: the linear scan over the points that Preset.getDutyForTemp
+ * originally did, kept here verbatim as the reference, against the preset's
+ * cached curve, the precomputed table on its own and a full controller tick.
+ * The scan only knows step curves, so it answers the same as the others only
+ * for interpolation=step; its cost does not depend on the interpolation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CurveBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({"step", "linear", "cubic"})
+    public String interpolation;
+
+    @Param({"20:0,50:10,70:15,80:20", "30:10,40:15,50:20,55:30,60:40,65:50,70:60,75:70,80:85,90:100"})
+    public String curve;
+
+    private Preset preset;
+    private List<Preset.TempPoint> points;
+    private FanCurve table;
+    private FanController controller;
+    private final int[] temps = new int[SAMPLES];
+    private int next;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        FanCurve.Interpolation interp = FanCurve.Interpolation.fromKey(interpolation);
+        preset = Preset.restore("00000000-0000-0000-0000-000000000000", "Bench", curve);
+        preset.setInterpolation(interp);
+        points = preset.getPoints();
+        table = FanCurve.parse(curve, interp).precompute();
+        controller = new FanController(table, ControllerSettings.DEFAULT);
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            temps[i] = 20000 + random.nextInt(75000);
+        }
+    }
+
+    private int nextTemp() {
+        next = (next + 1) & (SAMPLES - 1);
+        return temps[next];
+    }
+
+    /** Preset.getDutyForTemp before the lookup table, unchanged. */
+    private static int linearScan(List<Preset.TempPoint> points, int tempMillis) {
+        int temp = tempMillis / 1000;
+
+        int duty = 5000;
+        for (Preset.TempPoint point : points) {
+            if (temp >= point.getTemperature()) {
+                duty = point.getDuty();
+            } else {
+                break;
+            }
+        }
+        return duty;
+    }
+
+    @Benchmark
+    public int linearScanDutyForTemp() {
+        return linearScan(points, nextTemp());
+    }
+
+    @Benchmark
+    public int presetDutyForTemp() {
+        return preset.getDutyForTemp(nextTemp());
+    }
+
+    @Benchmark
+    public int tableDutyForTemp() {
+        return table.dutyForTemp(nextTemp());
+    }
+
+    @Benchmark
+    public int controllerTick() {
+        now += 1000;
+        return controller.update(nextTemp(), now);
+    }
+}
@@ -0,0 +1,48 @@
+package com.seilent.rpfanctl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Preset JSON round trips and the FAN_CURVE string RootHelper.setFanCurve writes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PresetBenchmark {
+    private Preset preset;
+    private String json;
+    private List<Preset.TempPoint> points;
+
+    @Setup
+    public void setUp() {
+        points = new ArrayList<>();
+        for (int temp = 30; temp <= 90; temp += 5) {
+            points.add(new Preset.TempPoint(temp, Math.min(100, (temp - 30) * 2)));
+        }
+        preset = new Preset("Bench", new ArrayList<>(points), FanCurve.Interpolation.MONOTONE_CUBIC);
+        json = preset.toJson();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return preset.toJson();
+    }
+
+    @Benchmark
+    public Preset fromJson() {
+        return Preset.fromJson(json);
+    }
+
+    @Benchmark
+    public String fanCurveString() {
+        return Preset.toPointsSpec(points);
+    }
+}
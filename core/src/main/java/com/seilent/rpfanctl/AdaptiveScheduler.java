@@ -0,0 +1,93 @@
+package com.seilent.rpfanctl;
+
+/**
+ * Picks the delay before the next control tick. It polls fast while the
+ * temperature climbs quickly, sits near a curve breakpoint or the controller is
+ * still settling, and otherwise backs off geometrically toward the stable
+ * interval, or a longer one while the screen is off.
+ */
+public class AdaptiveScheduler {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 250;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 4000;
+    public static final long DEFAULT_SCREEN_OFF_INTERVAL_MS = 10000;
+
+    /** Degrees per second above which the temperature counts as rising fast. */
+    private static final float FAST_SLOPE = 0.5f;
+    /** Degrees around a curve point where the next reading may change the target. */
+    private static final float BREAKPOINT_MARGIN = 1.5f;
+    private static final float BACKOFF_FACTOR = 1.5f;
+    private static final float SLOPE_SMOOTHING = 0.5f;
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long screenOffIntervalMs;
+
+    private long intervalMs;
+    private long wakeups;
+    private float slope;
+    private int lastTempMilli;
+    private long lastTime = -1;
+
+    public AdaptiveScheduler(long minIntervalMs, long maxIntervalMs, long screenOffIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.screenOffIntervalMs = screenOffIntervalMs;
+        this.intervalMs = minIntervalMs;
+    }
+
+    public static AdaptiveScheduler fixed(long intervalMs) {
+        return new AdaptiveScheduler(intervalMs, intervalMs, intervalMs);
+    }
+
+    public long getInterval() {
+        return intervalMs;
+    }
+
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    /** Smoothed temperature slope in degrees per second. */
+    public float getSlope() {
+        return slope;
+    }
+
+    public void countWakeup() {
+        wakeups++;
+    }
+
+    /** Forgets the slope history, e.g. after control was disabled for a while. */
+    public void reset() {
+        lastTime = -1;
+        slope = 0;
+        intervalMs = minIntervalMs;
+    }
+
+    public long next(int tempMilli, long now, FanCurve curve, boolean settling, boolean screenOn) {
+        if (lastTime >= 0 && now > lastTime) {
+            float instant = (tempMilli - lastTempMilli) / (float) (now - lastTime);
+            slope += SLOPE_SMOOTHING * (instant - slope);
+        }
+        lastTempMilli = tempMilli;
+        lastTime = now;
+
+        boolean urgent = slope > FAST_SLOPE || settling || nearBreakpoint(tempMilli, curve);
+        if (urgent && (screenOn || slope > FAST_SLOPE)) {
+            intervalMs = minIntervalMs;
+        } else {
+            long ceiling = screenOn ? maxIntervalMs : screenOffIntervalMs;
+            intervalMs = Math.min(ceiling, Math.max(minIntervalMs, (long) (intervalMs * BACKOFF_FACTOR)));
+        }
+        return intervalMs;
+    }
+
+    private static boolean nearBreakpoint(int tempMilli, FanCurve curve) {
+        float temp = tempMilli / 1000f;
+        for (int i = 0; i < curve.size(); i++) {
+            if (Math.abs(temp - curve.getTemperature(i)) <= BREAKPOINT_MARGIN) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.seilent.rpfanctl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Presets to switch to while particular apps are in the foreground, kept in
+ * app_presets.conf next to fan.conf in the {@link ConfigFile} format. Every
+ * mapped preset is stored as the fan.conf values selecting it would write, so
+ * the daemon can switch on its own: "app.PACKAGE" holds a preset UUID and
+ * "preset.UUID.KEY" the value of KEY. Lookups go through a package index.
+ */
+public final class AppPresets {
+    public static final String FILE_NAME = "app_presets.conf";
+    public static final AppPresets EMPTY = new AppPresets(Collections.emptyMap());
+
+    /** fan.conf keys that make up a preset selection. */
+    public static final List<String> PRESET_KEYS = Collections.unmodifiableList(Arrays.asList(
+            "CURRENT_PRESET", "CURRENT_PRESET_UUID", "FAN_CURVE",
+            "FAN_INTERP", "FAN_CONTROLLER", "FAN_MODE", "FAN_PID", "FAN_SENSORS"));
+
+    private static final String APP_PREFIX = "app.";
+    private static final String PRESET_PREFIX = "preset.";
+
+    private final Map<String, Map<String, String>> byPackage;
+
+    private AppPresets(Map<String, Map<String, String>> byPackage) {
+        this.byPackage = byPackage;
+    }
+
+    public boolean isEmpty() {
+        return byPackage.isEmpty();
+    }
+
+    /** The fan.conf values to write while the app is in front, or null if it has no preset. */
+    public Map<String, String> get(String packageName) {
+        return byPackage.get(packageName);
+    }
+
+    public static AppPresets fromValues(Map<String, String> values) {
+        Map<String, Map<String, String>> presets = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = entry.getKey();
+            int sep = key.indexOf('.', PRESET_PREFIX.length());
+            if (key.startsWith(PRESET_PREFIX) && sep > 0) {
+                String uuid = key.substring(PRESET_PREFIX.length(), sep);
+                Map<String, String> preset = presets.get(uuid);
+                if (preset == null) {
+                    preset = new LinkedHashMap<>();
+                    presets.put(uuid, preset);
+                }
+                preset.put(key.substring(sep + 1), entry.getValue());
+            }
+        }
+        Map<String, Map<String, String>> byPackage = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = entry.getKey();
+            Map<String, String> preset = presets.get(entry.getValue());
+            if (key.startsWith(APP_PREFIX) && preset != null) {
+                byPackage.put(key.substring(APP_PREFIX.length()), Collections.unmodifiableMap(preset));
+            }
+        }
+        return new AppPresets(byPackage);
+    }
+
+    /**
+     * The file contents for a package to preset UUID mapping, given the fan.conf
+     * values of each preset. Packages whose preset is missing are left out.
+     */
+    public static Map<String, String> toValues(Map<String, String> packageToUuid,
+                                               Map<String, Map<String, String>> presetValues) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : packageToUuid.entrySet()) {
+            String uuid = entry.getValue();
+            Map<String, String> preset = presetValues.get(uuid);
+            if (preset == null) {
+                continue;
+            }
+            values.put(APP_PREFIX + entry.getKey(), uuid);
+            for (Map.Entry<String, String> value : preset.entrySet()) {
+                values.put(PRESET_PREFIX + uuid + "." + value.getKey(), value.getValue());
+            }
+        }
+        return values;
+    }
+}
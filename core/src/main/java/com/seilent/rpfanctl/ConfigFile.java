@@ -0,0 +1,240 @@
+package com.seilent.rpfanctl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The fan.conf file that replaces fan_config and fan_state: one file holding
+ * every setting as key/value entries, in a versioned, checksummed binary
+ * container. Writers build the whole file in memory and rename it into place,
+ * and readers take it in a single read, so a reader never sees a half-written
+ * config and a corrupted file is detected rather than half-parsed.
+ *
+ * Each writer stages through its own uniquely named temporary file, so
+ * concurrent writers (the daemon, and the app through su) can lose each
+ * other's update but never rename a mix of both into place. The daemon keeps
+ * the last good contents in a ".bak" sibling to recover from if the file is
+ * found corrupt anyway.
+ *
+ * Layout (big-endian): "RPFC", u16 version, u16 entry count, u32 body length,
+ * u32 CRC32 of the body, then the body: per entry u16 length + UTF-8 key,
+ * u16 length + UTF-8 value.
+ */
+public final class ConfigFile {
+    public static final String NAME = "fan.conf";
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x52504643;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_SIZE = 64 * 1024;
+
+    private ConfigFile() {
+    }
+
+    /** Where the last good copy of the file is kept. */
+    public static File backupOf(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    /** Reads the file, or its last good copy if the file itself is missing or corrupt. */
+    public static Map<String, String> readWithBackup(File file) throws IOException {
+        try {
+            return read(file);
+        } catch (IOException e) {
+            File backup = backupOf(file);
+            if (!backup.exists()) {
+                throw e;
+            }
+            return read(backup);
+        }
+    }
+
+    /** Reads and verifies the file; throws if it is missing, truncated or corrupt. */
+    public static Map<String, String> read(File file) throws IOException {
+        byte[] data;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length > MAX_SIZE) {
+                throw new IOException(file + " is too large");
+            }
+            data = new byte[(int) length];
+            in.readFully(data);
+        }
+        return decode(data);
+    }
+
+    public static Map<String, String> decode(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a fan config file");
+        }
+        int version = buffer.getShort() & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Unsupported config version " + version);
+        }
+        int count = buffer.getShort() & 0xFFFF;
+        int bodyLength = buffer.getInt();
+        long checksum = buffer.getInt() & 0xFFFFFFFFL;
+        if (bodyLength != data.length - HEADER_SIZE) {
+            throw new IOException("Truncated config file");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, HEADER_SIZE, bodyLength);
+        if (crc.getValue() != checksum) {
+            throw new IOException("Config checksum mismatch");
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                values.put(readString(buffer), readString(buffer));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed config entry");
+        }
+        return values;
+    }
+
+    public static byte[] encode(Map<String, String> values) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(body);
+        try {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue() != null ? entry.getValue() : "");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes, 0, bodyBytes.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyBytes.length);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) values.size());
+        buffer.putInt(bodyBytes.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bodyBytes);
+        return buffer.array();
+    }
+
+    /** Writes the whole file to a temporary sibling, syncs it and renames it over the target. */
+    public static synchronized void write(File file, Map<String, String> values) throws IOException {
+        File tmp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(encode(values));
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        tmp.setReadable(true, false);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Merges the values into the file's current contents in one write; a
+     * corrupt file is repaired from its last good copy.
+     */
+    public static synchronized void update(File file, Map<String, String> values) throws IOException {
+        Map<String, String> merged = readWithBackup(file);
+        merged.putAll(values);
+        write(file, merged);
+    }
+
+    /**
+     * Builds the settings from the old key=value files the way rpfanctld sourced
+     * them: fan_config first, then fan_state, so keys in fan_state win.
+     */
+    public static Map<String, String> migrate(File legacyConfig, File legacyState) {
+        Map<String, String> values = new LinkedHashMap<>();
+        DaemonConfig.readKeyValues(legacyConfig, values);
+        DaemonConfig.readKeyValues(legacyState, values);
+        return values;
+    }
+
+    /**
+     * Parses what RootHelper's read command prints: fan.conf in base64, or
+     * "legacy" followed by the old key=value files.
+     */
+    static Map<String, String> parseShellOutput(String output) throws IOException {
+        if (output.startsWith("legacy")) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String line : output.split("\n")) {
+                int sep = line.indexOf('=');
+                if (sep > 0) {
+                    values.put(line.substring(0, sep).trim(), line.substring(sep + 1).trim());
+                }
+            }
+            return values;
+        }
+        try {
+            return decode(Base64.getMimeDecoder().decode(output));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not base64", e);
+        }
+    }
+
+    /**
+     * Prints a config file as key=value lines, for debugging on the device, after
+     * setting any KEY=VALUE arguments, e.g. LOG_LEVEL=debug; the file is created
+     * if it does not exist.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ConfigFile FILE [KEY=VALUE...]");
+            System.exit(2);
+        }
+        if (args.length > 1) {
+            Map<String, String> updates = new LinkedHashMap<>();
+            for (int i = 1; i < args.length; i++) {
+                int sep = args[i].indexOf('=');
+                if (sep <= 0) {
+                    System.err.println("Not KEY=VALUE: " + args[i]);
+                    System.exit(2);
+                }
+                updates.put(args[i].substring(0, sep), args[i].substring(sep + 1));
+            }
+            File file = new File(args[0]);
+            if (file.exists()) {
+                update(file, updates);
+            } else {
+                write(file, updates);
+            }
+        }
+        for (Map.Entry<String, String> entry : read(new File(args[0])).entrySet()) {
+            System.out.println(entry.getKey() + "=" + entry.getValue());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Config value too long");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,24 @@
+package com.seilent.rpfanctl;
+
+/** How a preset turns temperature into fan duty. */
+public enum ControlMode {
+    /** Static temperature to fan curve, through {@link FanController}. */
+    CURVE("curve"),
+    /** Closed loop around a target temperature, through {@link PidController}. */
+    PID("pid");
+
+    public final String key;
+
+    ControlMode(String key) {
+        this.key = key;
+    }
+
+    public static ControlMode fromKey(String key) {
+        for (ControlMode mode : values()) {
+            if (mode.key.equals(key)) {
+                return mode;
+            }
+        }
+        return CURVE;
+    }
+}
@@ -0,0 +1,84 @@
+package com.seilent.rpfanctl;
+
+/** Per-preset tuning of {@link FanController}. */
+public final class ControllerSettings {
+    public static final ControllerSettings DEFAULT = new ControllerSettings(0.5f, 2f, 1000, 6000, 20f, 8f, 4000);
+
+    /** Degrees the temperature must rise above the tracked value before the curve is re-read. */
+    public final float riseDeadband;
+    /** Degrees the temperature must fall below the tracked value before the curve is re-read. */
+    public final float fallDeadband;
+    /** How long a higher target must persist before the fan speeds up. */
+    public final long attackMs;
+    /** How long a lower target must persist before the fan slows down. */
+    public final long releaseMs;
+    /** Maximum change in fan percent per second; 0 disables the limit. */
+    public final float maxSlewPerSecond;
+    /**
+     * How far ahead a rising temperature is projected; the curve is read at the
+     * projection when that asks for more. 0 disables prediction.
+     */
+    public final float lookAheadSeconds;
+    /** Time constant of the moving average the temperature slope is taken from. */
+    public final long slopeWindowMs;
+
+    public ControllerSettings(float riseDeadband, float fallDeadband, long attackMs, long releaseMs,
+                              float maxSlewPerSecond, float lookAheadSeconds, long slopeWindowMs) {
+        this.riseDeadband = Math.max(0, riseDeadband);
+        this.fallDeadband = Math.max(0, fallDeadband);
+        this.attackMs = Math.max(0, attackMs);
+        this.releaseMs = Math.max(0, releaseMs);
+        this.maxSlewPerSecond = Math.max(0, maxSlewPerSecond);
+        this.lookAheadSeconds = Math.max(0, lookAheadSeconds);
+        this.slopeWindowMs = Math.max(1, slopeWindowMs);
+    }
+
+    /**
+     * Serialises as RISE:FALL:ATTACK_MS:RELEASE_MS:SLEW:LOOKAHEAD_S:SLOPE_WINDOW_MS,
+     * the FAN_CONTROLLER config format. Settings saved before prediction existed
+     * have only the first five fields and get the default prediction.
+     */
+    @Override
+    public String toString() {
+        return riseDeadband + ":" + fallDeadband + ":" + attackMs + ":" + releaseMs + ":" + maxSlewPerSecond
+                + ":" + lookAheadSeconds + ":" + slopeWindowMs;
+    }
+
+    public static ControllerSettings parse(String spec) {
+        if (spec == null) {
+            return DEFAULT;
+        }
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 5 && parts.length != 7) {
+            return DEFAULT;
+        }
+        boolean predictive = parts.length == 7;
+        try {
+            return new ControllerSettings(
+                    Float.parseFloat(parts[0]),
+                    Float.parseFloat(parts[1]),
+                    Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]),
+                    Float.parseFloat(parts[4]),
+                    predictive ? Float.parseFloat(parts[5]) : DEFAULT.lookAheadSeconds,
+                    predictive ? Long.parseLong(parts[6]) : DEFAULT.slopeWindowMs);
+        } catch (NumberFormatException e) {
+            return DEFAULT;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ControllerSettings)) return false;
+        ControllerSettings other = (ControllerSettings) o;
+        return riseDeadband == other.riseDeadband && fallDeadband == other.fallDeadband
+                && attackMs == other.attackMs && releaseMs == other.releaseMs
+                && maxSlewPerSecond == other.maxSlewPerSecond
+                && lookAheadSeconds == other.lookAheadSeconds && slopeWindowMs == other.slopeWindowMs;
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
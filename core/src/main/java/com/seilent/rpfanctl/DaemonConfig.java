@@ -0,0 +1,94 @@
+package com.seilent.rpfanctl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+
+/** The daemon's view of fan.conf at one point in time. */
+public final class DaemonConfig {
+    public static final String ACTUATOR_SETTINGS = "settings";
+    public static final String ACTUATOR_SYSFS = "sysfs";
+
+    public final boolean enabled;
+    public final FanCurve curve;
+    public final String presetName;
+    public final String presetUuid;
+    /** Duty write path: "settings" (default) or "sysfs". */
+    public final String actuator;
+    /** PWM duty node override, or null for the device default. */
+    public final String pwmNode;
+    /** Fan tachometer node override, or null to look for one. */
+    public final String tachNode;
+    /** Fan speed at full duty from FAN_MAX_RPM; above 0 the duty is corrected by the tachometer. */
+    public final int maxRpm;
+    public final ControllerSettings controller;
+    public final ControlMode mode;
+    public final PidSettings pid;
+    public final SensorSettings sensors;
+    /** Daemon log level from LOG_LEVEL, or null to leave it as started. */
+    public final DaemonLog.Level logLevel;
+
+    public DaemonConfig(boolean enabled, FanCurve curve, ControllerSettings controller,
+                        ControlMode mode, PidSettings pid, SensorSettings sensors,
+                        String presetName, String presetUuid, String actuator, String pwmNode,
+                        String tachNode, int maxRpm, DaemonLog.Level logLevel) {
+        this.enabled = enabled;
+        this.curve = curve;
+        this.controller = controller;
+        this.mode = mode;
+        this.pid = pid;
+        this.sensors = sensors;
+        this.presetName = presetName;
+        this.presetUuid = presetUuid;
+        this.actuator = actuator;
+        this.pwmNode = pwmNode;
+        this.tachNode = tachNode;
+        this.maxRpm = maxRpm;
+        this.logLevel = logLevel;
+    }
+
+    public boolean useSysfsActuator() {
+        return ACTUATOR_SYSFS.equals(actuator);
+    }
+
+    public static DaemonConfig fromValues(Map<String, String> values) {
+        return new DaemonConfig(
+                "1".equals(values.get("ENABLED")),
+                FanCurve.parse(values.get("FAN_CURVE"),
+                        FanCurve.Interpolation.fromKey(values.get("FAN_INTERP"))).precompute(),
+                ControllerSettings.parse(values.get("FAN_CONTROLLER")),
+                ControlMode.fromKey(values.get("FAN_MODE")),
+                PidSettings.parse(values.get("FAN_PID")),
+                SensorSettings.parse(values.get("FAN_SENSORS")),
+                values.get("CURRENT_PRESET"),
+                values.get("CURRENT_PRESET_UUID"),
+                values.containsKey("ACTUATOR") ? values.get("ACTUATOR") : ACTUATOR_SETTINGS,
+                values.get("PWM_NODE"),
+                values.get("FAN_TACH"),
+                parseRpm(values.get("FAN_MAX_RPM")),
+                DaemonLog.Level.fromKey(values.get("LOG_LEVEL")));
+    }
+
+    private static int parseRpm(String value) {
+        try {
+            return value != null ? Math.max(0, Integer.parseInt(value.trim())) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static void readKeyValues(File file, Map<String, String> into) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int sep = line.indexOf('=');
+                if (sep > 0) {
+                    into.put(line.substring(0, sep).trim(), line.substring(sep + 1).trim());
+                }
+            }
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * The daemon log: one JSON object per line, {"ts":epochMillis,"level":"info",
+ * "src":"daemon","msg":"..."}, the same shape rpfanctld and service.sh write.
+ *
+ * Lines are collected in memory and written in one append when the buffer fills,
+ * every few seconds, or straight away for warnings and errors. A message that
+ * repeats is counted rather than written again, and the file is rotated to
+ * daemon.log.1 and .2 once it reaches {@link #MAX_BYTES}, so a fan flapping
+ * across a hysteresis boundary costs neither storage nor loop time. The level
+ * can be changed at any time through LOG_LEVEL in fan.conf.
+ */
+public class DaemonLog implements Closeable {
+    public enum Level {
+        DEBUG("debug"), INFO("info"), WARN("warn"), ERROR("error");
+
+        public final String key;
+
+        Level(String key) {
+            this.key = key;
+        }
+
+        /** The level named by {@code key}, or null if it names none. */
+        public static Level fromKey(String key) {
+            for (Level level : values()) {
+                if (level.key.equalsIgnoreCase(key)) {
+                    return level;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final long MAX_BYTES = 256 * 1024;
+    static final int KEEP_FILES = 2;
+    private static final int BUFFER_CHARS = 8 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    private final File file;
+    private final boolean echo;
+    private final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private final StringBuilder buffer = new StringBuilder(BUFFER_CHARS + 256);
+    private final Thread flusher;
+    private volatile Level level;
+    private Level lastLevel;
+    private String lastMessage;
+    private int repeats;
+    private long fileBytes = -1;
+    private boolean closed;
+
+    /** @param echo also print every accepted line to stdout; starts at DEBUG instead of INFO */
+    public DaemonLog(File file, boolean echo) {
+        this.file = file;
+        this.echo = echo;
+        this.level = echo ? Level.DEBUG : Level.INFO;
+        flusher = new Thread(this::flushLoop, "DaemonLog");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        if (level != null && level != this.level) {
+            this.level = level;
+            log(Level.INFO, "Log level " + level.key);
+        }
+    }
+
+    public boolean isLoggable(Level level) {
+        return level.compareTo(this.level) >= 0;
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public void log(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public synchronized void log(Level level, String message) {
+        if (!isLoggable(level) || closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (echo) {
+            System.out.println("[" + format.format(new Date(now)) + "] " + message);
+        }
+        if (level == lastLevel && message.equals(lastMessage)) {
+            repeats++;
+            return;
+        }
+        appendRepeats(now);
+        append(now, level, message);
+        lastLevel = level;
+        lastMessage = message;
+        if (level.compareTo(Level.WARN) >= 0 || buffer.length() >= BUFFER_CHARS) {
+            flush();
+        }
+    }
+
+    /** Writes out everything buffered so far. */
+    public synchronized void flush() {
+        appendRepeats(System.currentTimeMillis());
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.setLength(0);
+        if (fileBytes < 0) {
+            fileBytes = file.length();
+        }
+        if (fileBytes > 0 && fileBytes + bytes.length > MAX_BYTES) {
+            rotate();
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+            // The shell scripts append to the same file, so trust its size over our count.
+            fileBytes = file.length();
+        } catch (IOException e) {
+            fileBytes = -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            flush();
+            closed = true;
+        }
+        flusher.interrupt();
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+                flush();
+            }
+        } catch (InterruptedException e) {
+        }
+    }
+
+    private void rotate() {
+        for (int i = KEEP_FILES; i > 1; i--) {
+            File older = new File(file.getPath() + "." + (i - 1));
+            if (older.exists()) {
+                older.renameTo(new File(file.getPath() + "." + i));
+            }
+        }
+        file.renameTo(new File(file.getPath() + ".1"));
+        fileBytes = 0;
+    }
+
+    private void appendRepeats(long now) {
+        if (repeats > 0) {
+            append(now, lastLevel, "Last message repeated " + repeats + " times");
+            repeats = 0;
+            lastMessage = null;
+        }
+    }
+
+    private void append(long now, Level level, String message) {
+        buffer.append("{\"ts\":").append(now)
+                .append(",\"level\":\"").append(level.key)
+                .append("\",\"src\":\"daemon\",\"msg\":\"");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        buffer.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append("\"}\n");
+    }
+}
@@ -0,0 +1,12 @@
+package com.seilent.rpfanctl;
+
+/** Applies fan duty on behalf of the daemon. */
+public interface FanActuator {
+    /** Takes the fan away from the stock smart-fan logic. */
+    void enable();
+
+    void setDuty(int duty);
+
+    /** Hands the fan back to the stock performance and smart-fan modes. */
+    void restoreStock();
+}
@@ -0,0 +1,147 @@
+package com.seilent.rpfanctl;
+
+/**
+ * Turns raw temperature readings into a fan duty. The curve is read at a
+ * tracked temperature that only follows the sensor once it leaves the rise/fall
+ * deadband, a new target must hold for the attack (up) or release (down) time
+ * before it is accepted, and the output then moves toward it no faster than the
+ * slew limit. All state is primitive and time is passed in, so the controller
+ * can be replayed against recorded traces.
+ *
+ * While the temperature climbs, its slope (an exponentially weighted average of
+ * dT/dt) projects it {@link ControllerSettings#lookAheadSeconds} ahead, and the
+ * curve is read there instead when that asks for more. The fan then reaches a
+ * breakpoint's speed before the SoC does, rather than after it has started to
+ * throttle.
+ *
+ * When the duty comes from elsewhere, such as {@link SensorFusion}'s per-zone
+ * curves, {@link #updateDemand} takes it in place of the curve reading. The
+ * attack and release times and the slew limit still apply; the deadband and
+ * look-ahead, which work on the curve's temperature axis, do not.
+ */
+public class FanController {
+    /** Bounds the projection, so a glitching sensor cannot send the fan to full speed. */
+    static final float MAX_LEAD_DEGREES = 15f;
+
+    private FanCurve curve;
+    private ControllerSettings settings;
+
+    private boolean primed;
+    private float trackedTemp;
+    private int acceptedDuty;
+    private int pendingDuty;
+    private long pendingSince;
+    private float outputDuty;
+    private long lastUpdate;
+    private float lastTemp;
+    private float slope;
+
+    public FanController(FanCurve curve, ControllerSettings settings) {
+        this.curve = curve;
+        this.settings = settings;
+    }
+
+    /** Swaps the curve or tuning without resetting the current output. */
+    public void configure(FanCurve curve, ControllerSettings settings) {
+        this.curve = curve;
+        this.settings = settings;
+        pendingSince = -1;
+    }
+
+    /** Forgets all state; the next update jumps straight to the curve. */
+    public void reset() {
+        primed = false;
+    }
+
+    public float getTrackedTemp() {
+        return trackedTemp;
+    }
+
+    public int getTargetDuty() {
+        return acceptedDuty;
+    }
+
+    /** Smoothed temperature slope in degrees per second. */
+    public float getSlope() {
+        return slope;
+    }
+
+    /**
+     * Where the curve is read: the tracked temperature, or the projection when it
+     * is higher. The lead is taken in whole degrees so the target does not move
+     * with every wobble of the slope.
+     */
+    public float getProjectedTemp() {
+        float lead = (float) Math.floor(Math.min(MAX_LEAD_DEGREES, slope * settings.lookAheadSeconds));
+        return lead >= 1 ? Math.max(trackedTemp, lastTemp + lead) : trackedTemp;
+    }
+
+    public int update(int tempMilli, long nowMs) {
+        return update(tempMilli, -1, nowMs);
+    }
+
+    /**
+     * @param duty      the demanded duty, followed instead of the curve
+     * @param tempMilli the temperature, still tracked for the slope
+     */
+    public int updateDemand(int duty, int tempMilli, long nowMs) {
+        return update(tempMilli, Math.max(0, duty), nowMs);
+    }
+
+    private int update(int tempMilli, int demand, long nowMs) {
+        float temp = tempMilli / 1000f;
+        if (!primed) {
+            primed = true;
+            trackedTemp = temp;
+            acceptedDuty = demand >= 0 ? demand : curve.dutyForTemp(tempMilli);
+            outputDuty = acceptedDuty;
+            pendingSince = -1;
+            lastUpdate = nowMs;
+            lastTemp = temp;
+            slope = 0;
+            return acceptedDuty;
+        }
+
+        long elapsed = Math.max(0, nowMs - lastUpdate);
+        if (elapsed > 0) {
+            float alpha = 1f - (float) Math.exp(-(double) elapsed / settings.slopeWindowMs);
+            slope += alpha * ((temp - lastTemp) * 1000f / elapsed - slope);
+        }
+        lastTemp = temp;
+
+        if (temp > trackedTemp + settings.riseDeadband || temp < trackedTemp - settings.fallDeadband) {
+            trackedTemp = temp;
+        }
+        int target = demand >= 0 ? demand : curve.dutyForTenths(Math.round(getProjectedTemp() * 10));
+
+        if (target == acceptedDuty) {
+            pendingSince = -1;
+        } else {
+            boolean rising = target > acceptedDuty;
+            boolean pendingRising = pendingDuty > acceptedDuty;
+            if (pendingSince < 0 || rising != pendingRising) {
+                pendingSince = nowMs;
+            }
+            pendingDuty = target;
+            long hold = rising ? settings.attackMs : settings.releaseMs;
+            if (nowMs - pendingSince >= hold) {
+                acceptedDuty = target;
+                pendingSince = -1;
+            }
+        }
+
+        lastUpdate = nowMs;
+        if (settings.maxSlewPerSecond <= 0) {
+            outputDuty = acceptedDuty;
+        } else {
+            float maxStep = settings.maxSlewPerSecond * FanCurve.MAX_DUTY / 100f * elapsed / 1000f;
+            float delta = acceptedDuty - outputDuty;
+            if (Math.abs(delta) <= maxStep) {
+                outputDuty = acceptedDuty;
+            } else {
+                outputDuty += Math.signum(delta) * maxStep;
+            }
+        }
+        return Math.round(outputDuty);
+    }
+}
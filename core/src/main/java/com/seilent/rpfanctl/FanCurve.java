@@ -0,0 +1,262 @@
+package com.seilent.rpfanctl;
+
+import java.util.Arrays;
+
+/**
+ * Immutable temperature to fan percent curve. This class has no Android
+ * dependencies so the daemon can use it outside the app.
+ *
+ * The curve is evaluated through a duty table with one entry per tenth of a
+ * degree from 0 to {@link #TABLE_MAX_TEMP}, built on first use, so lookups are
+ * constant time and allocate nothing.
+ */
+public final class FanCurve {
+    public static final int MAX_DUTY = 50000;
+    public static final int TABLE_MAX_TEMP = 120;
+    static final int TABLE_SIZE = TABLE_MAX_TEMP * 10 + 1;
+
+    public enum Interpolation {
+        /** Holds each point's fan speed until the next point, like the original daemon. */
+        STEP("step"),
+        LINEAR("linear"),
+        /** Fritsch-Carlson monotone cubic: smooth, never overshoots between points. */
+        MONOTONE_CUBIC("cubic");
+
+        public final String key;
+
+        Interpolation(String key) {
+            this.key = key;
+        }
+
+        public static Interpolation fromKey(String key) {
+            for (Interpolation interpolation : values()) {
+                if (interpolation.key.equals(key)) {
+                    return interpolation;
+                }
+            }
+            return STEP;
+        }
+    }
+
+    private final int[] temps;
+    private final int[] fans;
+    private final Interpolation interpolation;
+    private volatile int[] dutyTable;
+
+    public FanCurve(int[] temps, int[] fans) {
+        this(temps, fans, Interpolation.STEP);
+    }
+
+    public FanCurve(int[] temps, int[] fans, Interpolation interpolation) {
+        if (temps.length != fans.length) {
+            throw new IllegalArgumentException("Mismatched curve arrays");
+        }
+        this.temps = temps.clone();
+        this.fans = fans.clone();
+        this.interpolation = interpolation;
+        sortByTemperature(this.temps, this.fans);
+    }
+
+    public static FanCurve parse(String spec) {
+        return parse(spec, Interpolation.STEP);
+    }
+
+    /** Parses the FAN_CURVE format: TEMP1:FAN1,TEMP2:FAN2,... */
+    public static FanCurve parse(String spec, Interpolation interpolation) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return new FanCurve(new int[0], new int[0], interpolation);
+        }
+        String[] parts = spec.trim().split(",");
+        int[] temps = new int[parts.length];
+        int[] fans = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            int sep = part.indexOf(':');
+            if (sep <= 0) continue;
+            try {
+                temps[count] = Integer.parseInt(part.substring(0, sep).trim());
+                fans[count] = Integer.parseInt(part.substring(sep + 1).trim());
+                count++;
+            } catch (NumberFormatException e) {
+            }
+        }
+        return new FanCurve(Arrays.copyOf(temps, count), Arrays.copyOf(fans, count), interpolation);
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    public int size() {
+        return temps.length;
+    }
+
+    public int getTemperature(int index) {
+        return temps[index];
+    }
+
+    public int getFanPercent(int index) {
+        return fans[index];
+    }
+
+    public int getMinFanPercent() {
+        int min = 100;
+        for (int fan : fans) min = Math.min(min, fan);
+        return fans.length == 0 ? 0 : min;
+    }
+
+    public int getMaxFanPercent() {
+        int max = 0;
+        for (int fan : fans) max = Math.max(max, fan);
+        return fans.length == 0 ? 100 : max;
+    }
+
+    public int dutyForTemp(int tempMillis) {
+        return dutyForTenths(tempMillis / 100);
+    }
+
+    /** Builds the lookup table now rather than on the first evaluation. */
+    public FanCurve precompute() {
+        dutyForTenths(0);
+        return this;
+    }
+
+    /** Duty at a temperature given in tenths of a degree, clamped to the table. */
+    public int dutyForTenths(int tenths) {
+        int[] table = dutyTable;
+        if (table == null) {
+            table = buildTable();
+            dutyTable = table;
+        }
+        if (tenths <= 0) return table[0];
+        if (tenths >= TABLE_SIZE) return table[TABLE_SIZE - 1];
+        return table[tenths];
+    }
+
+    public int fanPercentForTemp(int tempMillis) {
+        return (dutyForTemp(tempMillis) * 100 + MAX_DUTY / 2) / MAX_DUTY;
+    }
+
+    public static int percentToDuty(int percent) {
+        return (percent * MAX_DUTY) / 100;
+    }
+
+    public static int dutyToPercent(int duty) {
+        return (duty * 100) / MAX_DUTY;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < temps.length; i++) {
+            if (i > 0) sb.append(",");
+            sb.append(temps[i]).append(":").append(fans[i]);
+        }
+        return sb.toString();
+    }
+
+    private int[] buildTable() {
+        int[] table = new int[TABLE_SIZE];
+        fillTable(temps, fans, temps.length, interpolation, table, new double[2 * temps.length]);
+        return table;
+    }
+
+    /**
+     * Evaluates the first {@code n} points, sorted by temperature, into a duty
+     * table of {@link #TABLE_SIZE} entries. Allocates nothing, so an editor can
+     * re-evaluate a curve on every touch event; {@code scratch} needs room for
+     * {@code 2 * n} values.
+     */
+    static void fillTable(int[] temps, int[] fans, int n, Interpolation interpolation, int[] table, double[] scratch) {
+        if (n == 0) {
+            Arrays.fill(table, 0, TABLE_SIZE, 0);
+            return;
+        }
+        if (interpolation == Interpolation.STEP || n == 1) {
+            // Below the first point the fan is off, as in the original daemon.
+            int point = -1;
+            for (int t = 0; t < TABLE_SIZE; t++) {
+                while (point + 1 < n && t >= temps[point + 1] * 10) point++;
+                table[t] = point < 0 ? 0 : percentToDuty(fans[point]);
+            }
+            return;
+        }
+
+        boolean cubic = interpolation == Interpolation.MONOTONE_CUBIC;
+        if (cubic) {
+            monotoneTangents(temps, fans, n, scratch);
+        }
+        int segment = 0;
+        for (int t = 0; t < TABLE_SIZE; t++) {
+            double temp = t / 10.0;
+            double fan;
+            if (temp <= temps[0]) {
+                fan = fans[0];
+            } else if (temp >= temps[n - 1]) {
+                fan = fans[n - 1];
+            } else {
+                while (temp > temps[segment + 1]) segment++;
+                double x0 = temps[segment];
+                double x1 = temps[segment + 1];
+                double h = x1 - x0;
+                double u = (temp - x0) / h;
+                if (!cubic) {
+                    fan = fans[segment] + (fans[segment + 1] - fans[segment]) * u;
+                } else {
+                    double u2 = u * u;
+                    double u3 = u2 * u;
+                    fan = (2 * u3 - 3 * u2 + 1) * fans[segment]
+                            + (u3 - 2 * u2 + u) * h * scratch[segment]
+                            + (-2 * u3 + 3 * u2) * fans[segment + 1]
+                            + (u3 - u2) * h * scratch[segment + 1];
+                }
+            }
+            table[t] = (int) Math.round(Math.max(0, Math.min(100, fan)) * MAX_DUTY / 100.0);
+        }
+    }
+
+    /** Writes the tangents to {@code out[0..n)}, using {@code out[n..2n-1)} for the secants. */
+    private static void monotoneTangents(int[] temps, int[] fans, int n, double[] out) {
+        for (int i = 0; i < n - 1; i++) {
+            out[n + i] = (double) (fans[i + 1] - fans[i]) / Math.max(1, temps[i + 1] - temps[i]);
+        }
+        out[0] = out[n];
+        out[n - 1] = out[n + n - 2];
+        for (int i = 1; i < n - 1; i++) {
+            double before = out[n + i - 1];
+            double after = out[n + i];
+            out[i] = before * after <= 0 ? 0 : (before + after) / 2;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            double secant = out[n + i];
+            if (secant == 0) {
+                out[i] = 0;
+                out[i + 1] = 0;
+                continue;
+            }
+            double a = out[i] / secant;
+            double b = out[i + 1] / secant;
+            double sum = a * a + b * b;
+            if (sum > 9) {
+                double tau = 3 / Math.sqrt(sum);
+                out[i] = tau * a * secant;
+                out[i + 1] = tau * b * secant;
+            }
+        }
+    }
+
+    private static void sortByTemperature(int[] temps, int[] fans) {
+        for (int i = 1; i < temps.length; i++) {
+            int t = temps[i];
+            int f = fans[i];
+            int j = i - 1;
+            while (j >= 0 && temps[j] > t) {
+                temps[j + 1] = temps[j];
+                fans[j + 1] = fans[j];
+                j--;
+            }
+            temps[j + 1] = t;
+            fans[j + 1] = f;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+
+/**
+ * Measured fan speed, for fans wired to a tachometer. On the device this is a
+ * hwmon or PWM driver node; anything else, such as a simulated fan, can stand in.
+ */
+public interface FanTachometer extends Closeable {
+    /** Reading when the speed could not be read. */
+    int INVALID = -1;
+
+    /** Where the speed comes from, for the log. */
+    String getSource();
+
+    /** Current speed in RPM, or {@link #INVALID}. */
+    int readRpm();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,71 @@
+package com.seilent.rpfanctl;
+
+/**
+ * Holds a target temperature instead of following a static curve. The output
+ * is clamped to the preset's fan range; the integral only accumulates while
+ * that clamp is not already pushing the same way (conditional integration), and
+ * is itself bounded, so it cannot wind up during long saturations. The
+ * derivative acts on the measurement rather than the error, so setpoint edits
+ * do not kick the fan.
+ */
+public class PidController {
+    private PidSettings settings;
+    private float minPercent;
+    private float maxPercent;
+
+    private boolean primed;
+    private float integral;
+    private float lastTemp;
+    private long lastTime;
+
+    public PidController(PidSettings settings, int minPercent, int maxPercent) {
+        configure(settings, minPercent, maxPercent);
+    }
+
+    public void configure(PidSettings settings, int minPercent, int maxPercent) {
+        this.settings = settings;
+        this.minPercent = Math.max(0, minPercent);
+        this.maxPercent = Math.max(this.minPercent, Math.min(100, maxPercent));
+        float range = this.maxPercent - this.minPercent;
+        integral = Math.max(-range, Math.min(integral, range));
+    }
+
+    public void reset() {
+        primed = false;
+        integral = 0;
+    }
+
+    public float getIntegral() {
+        return integral;
+    }
+
+    /**
+     * @param cpuLoad CPU utilisation in [0, 1] for feed-forward, or 0 if unknown
+     */
+    public int update(int tempMilli, long nowMs, float cpuLoad) {
+        float temp = tempMilli / 1000f;
+        float dt = primed ? Math.max(0, nowMs - lastTime) / 1000f : 0;
+        float slope = primed && dt > 0 ? (temp - lastTemp) / dt : 0;
+        primed = true;
+        lastTemp = temp;
+        lastTime = nowMs;
+
+        float error = temp - settings.setpoint;
+        float base = minPercent
+                + settings.kp * error
+                + settings.kd * slope
+                + settings.feedForward * cpuLoad;
+
+        float candidate = integral + settings.ki * error * dt;
+        float unclamped = base + candidate;
+        boolean pushingHigh = unclamped > maxPercent && error > 0;
+        boolean pushingLow = unclamped < minPercent && error < 0;
+        if (!pushingHigh && !pushingLow) {
+            float range = maxPercent - minPercent;
+            integral = Math.max(-range, Math.min(candidate, range));
+        }
+
+        float output = Math.max(minPercent, Math.min(maxPercent, base + integral));
+        return Math.round(output * FanCurve.MAX_DUTY / 100f);
+    }
+}
@@ -0,0 +1,64 @@
+package com.seilent.rpfanctl;
+
+/** Per-preset tuning of {@link PidController}. Gains work in fan percent. */
+public final class PidSettings {
+    public static final PidSettings DEFAULT = new PidSettings(65f, 4f, 0.2f, 4f, 10f);
+
+    /** Temperature the controller holds, in degrees. */
+    public final float setpoint;
+    /** Percent per degree above the setpoint. */
+    public final float kp;
+    /** Percent per degree-second of accumulated error. */
+    public final float ki;
+    /** Percent per degree-per-second of temperature change. */
+    public final float kd;
+    /** Percent added at 100% CPU load, ahead of any temperature change. */
+    public final float feedForward;
+
+    public PidSettings(float setpoint, float kp, float ki, float kd, float feedForward) {
+        this.setpoint = setpoint;
+        this.kp = Math.max(0, kp);
+        this.ki = Math.max(0, ki);
+        this.kd = Math.max(0, kd);
+        this.feedForward = Math.max(0, feedForward);
+    }
+
+    /** Serialises as SETPOINT:KP:KI:KD:FF, the FAN_PID config format. */
+    @Override
+    public String toString() {
+        return setpoint + ":" + kp + ":" + ki + ":" + kd + ":" + feedForward;
+    }
+
+    public static PidSettings parse(String spec) {
+        if (spec == null) {
+            return DEFAULT;
+        }
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 5) {
+            return DEFAULT;
+        }
+        try {
+            return new PidSettings(
+                    Float.parseFloat(parts[0]),
+                    Float.parseFloat(parts[1]),
+                    Float.parseFloat(parts[2]),
+                    Float.parseFloat(parts[3]),
+                    Float.parseFloat(parts[4]));
+        } catch (NumberFormatException e) {
+            return DEFAULT;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PidSettings)) return false;
+        PidSettings other = (PidSettings) o;
+        return setpoint == other.setpoint && kp == other.kp && ki == other.ki
+                && kd == other.kd && feedForward == other.feedForward;
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,283 @@
+package com.seilent.rpfanctl;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+public class Preset {
+    private String name;
+    private String uuid;
+    private List<TempPoint> points;
+    // Presets loaded from the repository keep their points in FAN_CURVE form
+    // until something asks for them.
+    private String pointsSpec;
+    private FanCurve.Interpolation interpolation = FanCurve.Interpolation.STEP;
+    private ControllerSettings controllerSettings = ControllerSettings.DEFAULT;
+    private ControlMode controlMode = ControlMode.CURVE;
+    private PidSettings pidSettings = PidSettings.DEFAULT;
+    private SensorSettings sensorSettings = SensorSettings.DEFAULT;
+    // Built on first use and dropped when the points or interpolation change.
+    private FanCurve curve;
+
+    public static class TempPoint {
+        int temperature;
+        int fanPercent;
+
+        public TempPoint(int temp, int fan) {
+            this.temperature = temp;
+            this.fanPercent = fan;
+        }
+
+        public int getTemperature() { return temperature; }
+        public int getFanPercent() { return fanPercent; }
+        public int getDuty() { return FanCurve.percentToDuty(fanPercent); }
+    }
+
+    public Preset(String name, List<TempPoint> points) {
+        this.name = name;
+        this.points = points;
+        this.uuid = UUID.randomUUID().toString();
+        Collections.sort(this.points, Comparator.comparingInt(TempPoint::getTemperature));
+    }
+
+    public Preset(String name, List<TempPoint> points, FanCurve.Interpolation interpolation) {
+        this(name, points);
+        this.interpolation = interpolation;
+    }
+
+    private Preset(String name, List<TempPoint> points, String uuid) {
+        this.name = name;
+        this.points = points;
+        this.uuid = uuid;
+        if (points != null) {
+            Collections.sort(this.points, Comparator.comparingInt(TempPoint::getTemperature));
+        }
+    }
+
+    static Preset restore(String uuid, String name, String pointsSpec) {
+        Preset preset = new Preset(name, null, uuid);
+        preset.pointsSpec = pointsSpec;
+        return preset;
+    }
+
+    /** A copy with new curve points that keeps this preset's identity and settings. */
+    public Preset edited(String name, List<TempPoint> points, FanCurve.Interpolation interpolation) {
+        Preset preset = new Preset(name, points, uuid);
+        preset.interpolation = interpolation;
+        preset.controllerSettings = controllerSettings;
+        preset.controlMode = controlMode;
+        preset.pidSettings = pidSettings;
+        preset.sensorSettings = sensorSettings;
+        return preset;
+    }
+
+    public static Preset createDefault() {
+        List<TempPoint> points = new ArrayList<>();
+        points.add(new TempPoint(20, 0));
+        points.add(new TempPoint(50, 10));
+        points.add(new TempPoint(70, 15));
+        points.add(new TempPoint(80, 20));
+        return new Preset("Default", points, "550e8400-e29b-41d4-a716-446655440000");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /** The points, which cannot be changed in place; {@link #edited} makes a preset with new ones. */
+    public List<TempPoint> getPoints() {
+        if (points == null) {
+            FanCurve curve = FanCurve.parse(pointsSpec);
+            List<TempPoint> parsed = new ArrayList<>(curve.size());
+            for (int i = 0; i < curve.size(); i++) {
+                parsed.add(new TempPoint(curve.getTemperature(i), curve.getFanPercent(i)));
+            }
+            points = parsed;
+        }
+        return Collections.unmodifiableList(points);
+    }
+
+    /** The points in FAN_CURVE form, without parsing them if they are still unread. */
+    String getPointsSpec() {
+        return points != null ? toPointsSpec(points) : pointsSpec;
+    }
+
+    static String toPointsSpec(List<TempPoint> points) {
+        StringBuilder sb = new StringBuilder(points.size() * 6);
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(points.get(i).temperature).append(':').append(points.get(i).fanPercent);
+        }
+        return sb.toString();
+    }
+
+    public FanCurve.Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    void setInterpolation(FanCurve.Interpolation interpolation) {
+        this.interpolation = interpolation;
+        curve = null;
+    }
+
+    public ControllerSettings getControllerSettings() {
+        return controllerSettings;
+    }
+
+    public void setControllerSettings(ControllerSettings controllerSettings) {
+        this.controllerSettings = controllerSettings;
+    }
+
+    public ControlMode getControlMode() {
+        return controlMode;
+    }
+
+    public void setControlMode(ControlMode controlMode) {
+        this.controlMode = controlMode;
+    }
+
+    public PidSettings getPidSettings() {
+        return pidSettings;
+    }
+
+    public void setPidSettings(PidSettings pidSettings) {
+        this.pidSettings = pidSettings;
+    }
+
+    public SensorSettings getSensorSettings() {
+        return sensorSettings;
+    }
+
+    public void setSensorSettings(SensorSettings sensorSettings) {
+        this.sensorSettings = sensorSettings;
+    }
+
+    /** The preset's curve, built once and shared; FanCurve is immutable. */
+    public FanCurve toFanCurve() {
+        FanCurve curve = this.curve;
+        if (curve == null) {
+            curve = buildFanCurve();
+            this.curve = curve;
+        }
+        return curve;
+    }
+
+    private FanCurve buildFanCurve() {
+        if (points == null) {
+            return FanCurve.parse(pointsSpec, interpolation);
+        }
+        int[] temps = new int[points.size()];
+        int[] fans = new int[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            temps[i] = points.get(i).temperature;
+            fans[i] = points.get(i).fanPercent;
+        }
+        return new FanCurve(temps, fans, interpolation);
+    }
+
+    public int getDutyForTemp(int tempMillis) {
+        return toFanCurve().dutyForTemp(tempMillis);
+    }
+
+    public static int dutyToPercent(int duty) {
+        return FanCurve.dutyToPercent(duty);
+    }
+
+    public static int percentToDuty(int percent) {
+        return FanCurve.percentToDuty(percent);
+    }
+
+    public String toJson() {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("uuid", uuid);
+            json.put("name", name);
+            JSONArray array = new JSONArray();
+            for (TempPoint point : getPoints()) {
+                JSONObject p = new JSONObject();
+                p.put("temp", point.temperature);
+                p.put("fan", point.fanPercent);
+                array.put(p);
+            }
+            json.put("points", array);
+            json.put("interp", interpolation.key);
+            json.put("controller", controllerSettings.toString());
+            json.put("mode", controlMode.key);
+            json.put("pid", pidSettings.toString());
+            json.put("sensors", sensorSettings.toString());
+            return json.toString();
+        } catch (JSONException e) {
+            return "";
+        }
+    }
+
+    public static Preset fromJson(String jsonStr) {
+        try {
+            JSONObject json = new JSONObject(jsonStr);
+            String name = json.getString("name");
+
+            String uuid;
+            if (json.has("uuid")) {
+                uuid = json.getString("uuid");
+            } else {
+                uuid = UUID.randomUUID().toString();
+            }
+            JSONArray array = json.getJSONArray("points");
+            List<TempPoint> points = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject p = array.getJSONObject(i);
+                points.add(new TempPoint(p.getInt("temp"), p.getInt("fan")));
+            }
+            Preset preset = new Preset(name, points, uuid);
+            preset.interpolation = FanCurve.Interpolation.fromKey(json.optString("interp", null));
+            preset.controllerSettings = ControllerSettings.parse(json.optString("controller", null));
+            preset.controlMode = ControlMode.fromKey(json.optString("mode", null));
+            preset.pidSettings = PidSettings.parse(json.optString("pid", null));
+            preset.sensorSettings = SensorSettings.parse(json.optString("sensors", null));
+            return preset;
+        } catch (JSONException e) {
+            return createDefault();
+        }
+    }
+
+    @Override
+    public String toString() {
+        int maxFan = 0;
+        for (TempPoint point : getPoints()) {
+            if (point.fanPercent > maxFan) {
+                maxFan = point.fanPercent;
+            }
+        }
+        return name + " (max " + maxFan + "%)";
+    }
+
+    public String getCurveDetails() {
+        List<TempPoint> points = getPoints();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) sb.append("  ");
+            TempPoint point = points.get(i);
+            sb.append(point.temperature).append("°C/").append(point.fanPercent).append("%");
+        }
+        return sb.toString();
+    }
+
+    public static Preset fromUserInput(String name, int t1, int f1, int t2, int f2, int t3, int f3, int t4, int f4) {
+        List<TempPoint> points = new ArrayList<>();
+        if (t1 > 0 && f1 > 0) points.add(new TempPoint(t1, f1));
+        if (t2 > 0 && f2 > 0) points.add(new TempPoint(t2, f2));
+        if (t3 > 0 && f3 > 0) points.add(new TempPoint(t3, f3));
+        if (t4 > 0 && f4 > 0) points.add(new TempPoint(t4, f4));
+        return new Preset(name, points, UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,289 @@
+package com.seilent.rpfanctl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A long-lived shell session. Commands are queued on a single worker thread and
+ * written to the same shell process; each one is followed by a sentinel line that
+ * carries its exit code, so output can be split without waiting for EOF.
+ * If the shell dies or a command times out, the process is discarded and a new
+ * one is started on the next command; commands still queued behind the one that
+ * timed out fail straight away rather than each waiting out its own timeout.
+ */
+public class RootShell {
+    public interface Backend {
+        Process start() throws IOException;
+    }
+
+    public static final Backend SU = () -> new ProcessBuilder("su").start();
+
+    public static Backend shell(String path) {
+        return () -> new ProcessBuilder(path).start();
+    }
+
+    public static class Result {
+        public final int exitCode;
+        public final String output;
+
+        public Result(int exitCode, String output) {
+            this.exitCode = exitCode;
+            this.output = output;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+    }
+
+    public static class BatchResult {
+        public final List<Result> steps;
+        public final boolean success;
+
+        public BatchResult(List<Result> steps, boolean success) {
+            this.steps = steps;
+            this.success = success;
+        }
+
+        /** Index of the step that failed, or -1 if every step succeeded. */
+        public int failedStep() {
+            return success ? -1 : steps.size() - 1;
+        }
+    }
+
+    /**
+     * Commands collected here are sent as a single script. Steps run in order and
+     * the first failing step stops the rest; results are reported per step.
+     */
+    public class Batch {
+        private final List<String> commands = new ArrayList<>();
+
+        public Batch add(String command) {
+            commands.add(command);
+            return this;
+        }
+
+        public int size() {
+            return commands.size();
+        }
+
+        public BatchResult execute() {
+            return runBatch(commands);
+        }
+    }
+
+    private static final long DEFAULT_TIMEOUT_MS = 10000;
+
+    private final Backend backend;
+    private final long timeoutMs;
+    private final String sentinel = "__rpfanctl_" + UUID.randomUUID().toString().replace("-", "");
+    private ExecutorService worker = newWorker();
+    private Process process;
+    private OutputStream stdin;
+    private BufferedReader stdout;
+
+    public RootShell(Backend backend) {
+        this(backend, DEFAULT_TIMEOUT_MS);
+    }
+
+    public RootShell(Backend backend, long timeoutMs) {
+        this.backend = backend;
+        this.timeoutMs = timeoutMs;
+    }
+
+    private static ExecutorService newWorker() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "RootShell");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public synchronized Future<Result> submit(String command) {
+        return worker.submit(() -> exec(command));
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Runs a command and waits for it. Returns null if the shell could not be
+     * started, died mid-command or did not answer within the timeout.
+     */
+    public Result run(String command) {
+        return call(() -> exec(command));
+    }
+
+    /**
+     * Runs the commands as one script. Returns null if the shell failed; otherwise
+     * the result holds one entry per step that ran.
+     */
+    public BatchResult runBatch(List<String> commands) {
+        return call(() -> execBatch(commands));
+    }
+
+    private <T> T call(Callable<T> task) {
+        ExecutorService owner;
+        Future<T> future;
+        synchronized (this) {
+            owner = worker;
+            future = worker.submit(task);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandonWorker(owner);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    public synchronized boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    public synchronized void close() {
+        kill(process);
+        worker.shutdownNow();
+    }
+
+    // A hung command can keep the pipe open even after the shell is killed, so the
+    // stuck worker is left to die on its own and later commands get a fresh one.
+    // Only the worker that ran the timed-out command is abandoned: a caller that
+    // times out after another already replaced it must not kill the new shell.
+    private synchronized void abandonWorker(ExecutorService owner) {
+        if (owner != worker) {
+            return;
+        }
+        kill(process);
+        for (Runnable queued : worker.shutdownNow()) {
+            if (queued instanceof Future) {
+                ((Future<?>) queued).cancel(false);
+            }
+        }
+        worker = newWorker();
+    }
+
+    private Result exec(String command) throws IOException {
+        List<Result> results = new ArrayList<>(1);
+        String script = frame(command) + "__rc=$?; echo; echo \"" + sentinel + " $__rc\"\n";
+        runScript(script, results, false);
+        return results.get(0);
+    }
+
+    private BatchResult execBatch(List<String> commands) throws IOException {
+        if (commands.isEmpty()) {
+            return new BatchResult(Collections.<Result>emptyList(), true);
+        }
+        StringBuilder script = new StringBuilder("__ok=1\n");
+        for (String command : commands) {
+            script.append("if [ $__ok = 1 ]; then\n")
+                    .append(frame(command))
+                    .append("__rc=$?; echo; echo \"").append(sentinel).append(" $__rc\"\n")
+                    .append("[ $__rc = 0 ] || __ok=0\n")
+                    .append("fi\n");
+        }
+        script.append("echo \"").append(sentinel).append("_end\"\n");
+
+        List<Result> results = new ArrayList<>(commands.size());
+        runScript(script.toString(), results, true);
+        boolean success = results.size() == commands.size()
+                && results.get(results.size() - 1).isSuccess();
+        return new BatchResult(results, success);
+    }
+
+    private static String frame(String command) {
+        return "{\n" + command + "\n} </dev/null\n";
+    }
+
+    /**
+     * Writes the script and collects one result per sentinel line. A batch ends at
+     * the "_end" sentinel, a single command at its first sentinel.
+     */
+    private void runScript(String script, List<Result> results, boolean batch) throws IOException {
+        Process owner;
+        OutputStream writer;
+        BufferedReader reader;
+        synchronized (this) {
+            ensureStarted();
+            owner = process;
+            writer = stdin;
+            reader = stdout;
+        }
+        try {
+            writer.write(script.getBytes(StandardCharsets.UTF_8));
+            writer.flush();
+
+            StringBuilder output = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(sentinel)) {
+                    output.append(line).append("\n");
+                    continue;
+                }
+                if (line.startsWith("_end", sentinel.length())) {
+                    return;
+                }
+                results.add(new Result(parseExitCode(line), output.toString().trim()));
+                output.setLength(0);
+                if (!batch) {
+                    return;
+                }
+            }
+            throw new IOException("Shell closed");
+        } catch (IOException e) {
+            kill(owner);
+            throw e;
+        }
+    }
+
+    private void ensureStarted() throws IOException {
+        if (process != null && process.isAlive()) {
+            return;
+        }
+        kill(process);
+        process = backend.start();
+        stdin = process.getOutputStream();
+        stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        stdin.write("exec 2>/dev/null\n".getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+    }
+
+    private int parseExitCode(String line) {
+        try {
+            return Integer.parseInt(line.substring(sentinel.length()).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized void kill(Process target) {
+        if (target == null || target != process) {
+            return;
+        }
+        process.destroy();
+        process = null;
+        stdin = null;
+        stdout = null;
+    }
+}
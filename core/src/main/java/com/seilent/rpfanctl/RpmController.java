@@ -0,0 +1,80 @@
+package com.seilent.rpfanctl;
+
+/**
+ * Closes the loop around a fan tachometer. The duty the curve or PID stage asks
+ * for is read as a share of the fan's top speed, and the duty actually written
+ * is trimmed until the measured speed matches. The requested duty doubles as
+ * feed-forward, so the trim only corrects for the fan's nonlinearity, wear and
+ * supply voltage; it is integral only, stops growing while the output is
+ * clamped, and ignores errors within the tachometer's jitter.
+ */
+public class RpmController {
+    /** Trim per second for an error of the whole speed range, as a share of full duty. */
+    static final float GAIN_PER_SECOND = 0.5f;
+    /** Speed errors below this share of the top speed are left alone. */
+    static final float DEADBAND = 0.02f;
+    static final int MAX_TRIM = FanCurve.MAX_DUTY / 2;
+    /** Longer gaps between ticks integrate as this much, so a stalled loop does not jump. */
+    private static final long MAX_STEP_MS = 5000;
+
+    private int maxRpm;
+    private float trim;
+    private long lastTime = -1;
+
+    public RpmController(int maxRpm) {
+        configure(maxRpm);
+    }
+
+    /** @param maxRpm the fan's speed at full duty; 0 turns the loop off */
+    public void configure(int maxRpm) {
+        this.maxRpm = Math.max(0, maxRpm);
+    }
+
+    public boolean isActive() {
+        return maxRpm > 0;
+    }
+
+    public void reset() {
+        trim = 0;
+        lastTime = -1;
+    }
+
+    public float getTrim() {
+        return trim;
+    }
+
+    /** Speed the loop aims for at the given requested duty. */
+    public int targetRpm(int duty) {
+        return (int) ((long) duty * maxRpm / FanCurve.MAX_DUTY);
+    }
+
+    /**
+     * @param duty the duty the outer stage asks for
+     * @param rpm  the measured speed, or {@link FanTachometer#INVALID}
+     * @return the duty to write
+     */
+    public int update(int duty, int rpm, long nowMs) {
+        float dt = lastTime >= 0 ? Math.min(MAX_STEP_MS, Math.max(0, nowMs - lastTime)) / 1000f : 0;
+        lastTime = nowMs;
+        if (maxRpm <= 0) {
+            return duty;
+        }
+        // With the fan asked to stop, or no reading, keep the trim as it is.
+        if (duty > 0 && rpm != FanTachometer.INVALID) {
+            float error = (targetRpm(duty) - rpm) / (float) maxRpm;
+            if (Math.abs(error) >= DEADBAND) {
+                float candidate = trim + GAIN_PER_SECOND * error * FanCurve.MAX_DUTY * dt;
+                float unclamped = duty + candidate;
+                boolean pushingHigh = unclamped > FanCurve.MAX_DUTY && error > 0;
+                boolean pushingLow = unclamped < 0 && error < 0;
+                if (!pushingHigh && !pushingLow) {
+                    trim = Math.max(-MAX_TRIM, Math.min(MAX_TRIM, candidate));
+                }
+            }
+        }
+        if (duty <= 0) {
+            return duty;
+        }
+        return Math.max(0, Math.min(FanCurve.MAX_DUTY, Math.round(duty + trim)));
+    }
+}
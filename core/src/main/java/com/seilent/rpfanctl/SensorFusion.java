@@ -0,0 +1,106 @@
+package com.seilent.rpfanctl;
+
+import java.util.Arrays;
+
+/**
+ * Combines thermal zone readings into the one temperature the controllers
+ * work on. Selectors are resolved to zone indices when the settings change,
+ * so fusing a poll allocates nothing.
+ *
+ * In curves mode each zone's duty comes from its own curve and the highest
+ * one is kept as {@link #getDemandedDuty()} for the controller; the fused
+ * temperature is then the hottest reading, for display and telemetry.
+ */
+public class SensorFusion {
+    private SensorSettings.Mode mode = SensorSettings.Mode.MAX;
+    private int[] zones = new int[0];
+    private float[] weights = new float[0];
+    private FanCurve[] curves = new FanCurve[0];
+    private int demandedDuty = -1;
+
+    public void configure(SensorSettings settings, String[] names, String[] types, FanCurve presetCurve) {
+        this.mode = settings.mode;
+        int[] zones = new int[names.length];
+        float[] weights = new float[names.length];
+        FanCurve[] curves = new FanCurve[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            SensorSettings.Selector selector = find(settings, names[i], types[i]);
+            if (selector == null && !settings.selectors.isEmpty()) continue;
+            zones[count] = i;
+            weights[count] = selector != null ? selector.weight : 1f;
+            curves[count] = selector != null && selector.curve != null
+                    ? selector.curve.precompute() : presetCurve;
+            count++;
+        }
+        this.zones = Arrays.copyOf(zones, count);
+        this.weights = Arrays.copyOf(weights, count);
+        this.curves = Arrays.copyOf(curves, count);
+    }
+
+    private static SensorSettings.Selector find(SensorSettings settings, String name, String type) {
+        for (SensorSettings.Selector selector : settings.selectors) {
+            if (selector.matches(name, type)) {
+                return selector;
+            }
+        }
+        return null;
+    }
+
+    /** Number of zones the current settings select. */
+    public int getZoneCount() {
+        return zones.length;
+    }
+
+    /**
+     * Duty the zone curves asked for at the last {@link #fuse}, or -1 outside
+     * curves mode or if no selected zone could be read.
+     */
+    public int getDemandedDuty() {
+        return demandedDuty;
+    }
+
+    /** Fused temperature in millidegrees, or the fallback if no selected zone could be read. */
+    public int fuse(int[] readings, int fallback) {
+        demandedDuty = -1;
+        switch (mode) {
+            case WEIGHTED:
+                return weighted(readings, fallback);
+            case CURVES:
+                return byCurves(readings, fallback);
+            default:
+                return max(readings, fallback);
+        }
+    }
+
+    private int max(int[] readings, int fallback) {
+        int result = TemperatureSensor.INVALID;
+        for (int zone : zones) {
+            result = Math.max(result, readings[zone]);
+        }
+        return result == TemperatureSensor.INVALID ? fallback : result;
+    }
+
+    private int weighted(int[] readings, int fallback) {
+        double sum = 0;
+        double weightSum = 0;
+        for (int i = 0; i < zones.length; i++) {
+            int reading = readings[zones[i]];
+            if (reading == TemperatureSensor.INVALID) continue;
+            sum += (double) reading * weights[i];
+            weightSum += weights[i];
+        }
+        return weightSum > 0 ? (int) Math.round(sum / weightSum) : fallback;
+    }
+
+    private int byCurves(int[] readings, int fallback) {
+        int duty = -1;
+        for (int i = 0; i < zones.length; i++) {
+            int reading = readings[zones[i]];
+            if (reading == TemperatureSensor.INVALID) continue;
+            duty = Math.max(duty, curves[i].dutyForTemp(reading));
+        }
+        demandedDuty = duty;
+        return max(readings, fallback);
+    }
+}
@@ -0,0 +1,125 @@
+package com.seilent.rpfanctl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-preset choice of thermal zones and how their readings are combined.
+ * Zones are selected by type prefix ("gpu" matches gpuss-0-usr) or by
+ * directory name ("thermal_zone3"); with no selectors every zone is used.
+ */
+public final class SensorSettings {
+    public enum Mode {
+        /** Hottest selected zone. */
+        MAX("max"),
+        /** Average of the selected zones, weighted by each selector's value. */
+        WEIGHTED("weighted"),
+        /** Each zone through its own curve; the zone asking for the most fan wins. */
+        CURVES("curves");
+
+        public final String key;
+
+        Mode(String key) {
+            this.key = key;
+        }
+
+        public static Mode fromKey(String key) {
+            for (Mode mode : values()) {
+                if (mode.key.equals(key)) {
+                    return mode;
+                }
+            }
+            return MAX;
+        }
+    }
+
+    public static final class Selector {
+        public final String zone;
+        /** Weight in weighted mode, otherwise ignored. */
+        public final float weight;
+        /** Zone curve in curves mode, or null to use the preset curve. */
+        public final FanCurve curve;
+
+        public Selector(String zone, float weight, FanCurve curve) {
+            this.zone = zone;
+            this.weight = Math.max(0, weight);
+            this.curve = curve;
+        }
+
+        public boolean matches(String name, String type) {
+            return zone.equals(name) || (type != null && type.startsWith(zone));
+        }
+
+        @Override
+        public String toString() {
+            if (curve != null) return zone + "=" + curve;
+            if (weight != 1f) return zone + "=" + weight;
+            return zone;
+        }
+    }
+
+    /** Only thermal_zone0, which is what the original daemon read. */
+    public static final SensorSettings DEFAULT = parse("max|thermal_zone0");
+
+    public final Mode mode;
+    public final List<Selector> selectors;
+
+    public SensorSettings(Mode mode, List<Selector> selectors) {
+        this.mode = mode;
+        this.selectors = Collections.unmodifiableList(new ArrayList<>(selectors));
+    }
+
+    /** Serialises as MODE|ZONE[=VALUE]|..., the FAN_SENSORS config format. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(mode.key);
+        for (Selector selector : selectors) {
+            sb.append('|').append(selector);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses MODE|ZONE[=VALUE]|... where VALUE is a weight in weighted mode and
+     * a TEMP:FAN,... curve in curves mode.
+     */
+    public static SensorSettings parse(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return DEFAULT;
+        }
+        String[] parts = spec.trim().split("\\|");
+        Mode mode = Mode.fromKey(parts[0].trim());
+        List<Selector> selectors = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            int sep = part.indexOf('=');
+            String zone = (sep < 0 ? part : part.substring(0, sep)).trim();
+            String value = sep < 0 ? null : part.substring(sep + 1).trim();
+            if (zone.isEmpty()) continue;
+            float weight = 1f;
+            FanCurve curve = null;
+            if (value != null && mode == Mode.WEIGHTED) {
+                try {
+                    weight = Float.parseFloat(value);
+                } catch (NumberFormatException e) {
+                }
+            } else if (value != null && mode == Mode.CURVES) {
+                curve = FanCurve.parse(value, FanCurve.Interpolation.LINEAR);
+                if (curve.size() == 0) curve = null;
+            }
+            selectors.add(new Selector(zone, weight, curve));
+        }
+        return new SensorSettings(mode, selectors);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SensorSettings && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,43 @@
+package com.seilent.rpfanctl;
+
+/**
+ * Notices a fan that is driven but not turning: a tachometer reading below
+ * {@link #STALL_RPM} while the written duty has been at least
+ * {@link #MIN_DUTY} for {@link #STALL_MS}, which leaves time to spin up from
+ * standstill. A stall lasts until the fan turns again.
+ */
+public class StallDetector {
+    static final int MIN_DUTY = FanCurve.MAX_DUTY * 15 / 100;
+    static final int STALL_RPM = 100;
+    static final long STALL_MS = 5000;
+
+    private long suspectSince = -1;
+    private boolean stalled;
+
+    public void reset() {
+        suspectSince = -1;
+        stalled = false;
+    }
+
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * @param duty the duty written before this reading
+     * @param rpm  the measured speed; {@link FanTachometer#INVALID} clears the state
+     */
+    public boolean update(int duty, int rpm, long nowMs) {
+        if (rpm == FanTachometer.INVALID || rpm >= STALL_RPM) {
+            reset();
+        } else if (stalled || duty >= MIN_DUTY) {
+            if (suspectSince < 0) {
+                suspectSince = nowMs;
+            }
+            stalled = nowMs - suspectSince >= STALL_MS;
+        } else {
+            suspectSince = -1;
+        }
+        return stalled;
+    }
+}
@@ -0,0 +1,103 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A sysfs attribute kept open for the lifetime of the daemon. Reads and writes
+ * reuse a fixed buffer and rewind to offset 0, so polling allocates nothing.
+ */
+public final class SysfsNode implements Closeable {
+    private final String path;
+    private final RandomAccessFile file;
+    private final byte[] buffer = new byte[32];
+
+    private SysfsNode(String path, RandomAccessFile file) {
+        this.path = path;
+        this.file = file;
+    }
+
+    public static SysfsNode openRead(File path) throws IOException {
+        return new SysfsNode(path.getPath(), new RandomAccessFile(path, "r"));
+    }
+
+    public static SysfsNode openReadWrite(File path) throws IOException {
+        return new SysfsNode(path.getPath(), new RandomAccessFile(path, "rw"));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /** Reads the node as a decimal integer, or returns the fallback on any error. */
+    public int readInt(int fallback) {
+        try {
+            file.seek(0);
+            int len = file.read(buffer, 0, buffer.length);
+            if (len <= 0) {
+                return fallback;
+            }
+            return parseInt(buffer, len, fallback);
+        } catch (IOException e) {
+            return fallback;
+        }
+    }
+
+    public boolean writeInt(int value) {
+        int len = formatInt(value, buffer);
+        try {
+            file.seek(0);
+            file.write(buffer, 0, len);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+        }
+    }
+
+    static int parseInt(byte[] data, int len, int fallback) {
+        int i = 0;
+        while (i < len && (data[i] == ' ' || data[i] == '\t')) i++;
+        boolean negative = false;
+        if (i < len && data[i] == '-') {
+            negative = true;
+            i++;
+        }
+        int start = i;
+        long value = 0;
+        while (i < len && data[i] >= '0' && data[i] <= '9') {
+            value = value * 10 + (data[i] - '0');
+            if (value > Integer.MAX_VALUE) return fallback;
+            i++;
+        }
+        if (i == start) {
+            return fallback;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    static int formatInt(int value, byte[] out) {
+        int pos = out.length;
+        out[--pos] = '\n';
+        long v = Math.abs((long) value);
+        do {
+            out[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        if (value < 0) {
+            out[--pos] = '-';
+        }
+        int len = out.length - pos;
+        System.arraycopy(out, pos, out, 0, len);
+        return len;
+    }
+}
@@ -0,0 +1,21 @@
+package com.seilent.rpfanctl;
+
+import java.io.Closeable;
+
+/**
+ * Temperature sources read together on every control-loop tick, in the order
+ * {@link SensorFusion} was configured with. On the device these are the
+ * thermal zones; anything else, such as a simulated plant, can stand in.
+ */
+public interface TemperatureSensor extends Closeable {
+    /** Reading for a source that could not be read. */
+    int INVALID = Integer.MIN_VALUE;
+
+    String[] getNames();
+
+    /** Kernel type of each source, matched against {@link SensorSettings}. */
+    String[] getTypes();
+
+    /** Reads every source in millidegrees; the returned array may be reused by the next call. */
+    int[] read();
+}
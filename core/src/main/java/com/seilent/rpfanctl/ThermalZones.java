@@ -0,0 +1,105 @@
+package com.seilent.rpfanctl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Every /sys/class/thermal/thermal_zone* node, found once at startup with its
+ * type. The temp attributes stay open, so a poll is one read per zone into a
+ * reused array.
+ */
+public class ThermalZones implements TemperatureSensor {
+    private static final String PREFIX = "thermal_zone";
+
+    private final String[] names;
+    private final String[] types;
+    private final SysfsNode[] nodes;
+    private final int[] readings;
+
+    private ThermalZones(String[] names, String[] types, SysfsNode[] nodes) {
+        this.names = names;
+        this.types = types;
+        this.nodes = nodes;
+        this.readings = new int[nodes.length];
+        Arrays.fill(readings, INVALID);
+    }
+
+    /** Opens the zones under a thermal class directory; zones without a readable temp are skipped. */
+    public static ThermalZones open(File thermalDir) {
+        File[] dirs = thermalDir.listFiles((dir, name) -> zoneIndex(name) >= 0);
+        if (dirs == null) {
+            dirs = new File[0];
+        }
+        Arrays.sort(dirs, Comparator.comparingInt(dir -> zoneIndex(dir.getName())));
+
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<SysfsNode> nodes = new ArrayList<>();
+        for (File dir : dirs) {
+            try {
+                nodes.add(SysfsNode.openRead(new File(dir, "temp")));
+            } catch (IOException e) {
+                continue;
+            }
+            names.add(dir.getName());
+            types.add(readType(new File(dir, "type")));
+        }
+        return new ThermalZones(names.toArray(new String[0]), types.toArray(new String[0]),
+                nodes.toArray(new SysfsNode[0]));
+    }
+
+    private static int zoneIndex(String name) {
+        if (!name.startsWith(PREFIX) || name.length() == PREFIX.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readType(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    @Override
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    @Override
+    public String[] getTypes() {
+        return types.clone();
+    }
+
+    /** Reads every zone; the returned array is reused by the next call. */
+    @Override
+    public int[] read() {
+        for (int i = 0; i < nodes.length; i++) {
+            readings[i] = nodes[i].readInt(INVALID);
+        }
+        return readings;
+    }
+
+    @Override
+    public void close() {
+        for (SysfsNode node : nodes) {
+            node.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.seilent.rpfanctl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How often and how long the clocks were throttled under each preset, kept by
+ * the daemon in throttle_stats.conf next to fan.conf in the {@link ConfigFile}
+ * format. Presets are keyed by UUID, with {@link #STOCK} standing for the stock
+ * fan service; "UUID.events", "UUID.throttled" and "UUID.active" hold the
+ * throttle count and the seconds spent throttled and in total.
+ */
+public final class ThrottleStats {
+    public static final String FILE_NAME = "throttle_stats.conf";
+    /** Key for the time custom control was disabled. */
+    public static final String STOCK = "stock";
+
+    /** Longer gaps between samples are only counted up to this. */
+    static final long MAX_GAP_MS = 120000;
+
+    public static final class Entry {
+        public long events;
+        public long throttledMs;
+        public long activeMs;
+
+        /** Share of the active time spent throttled, in percent. */
+        public int getThrottledPercent() {
+            return activeMs > 0 ? (int) (throttledMs * 100 / activeMs) : 0;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String lastKey;
+    private boolean lastThrottled;
+    private long lastMs = -1;
+
+    /** The entry for a preset UUID or {@link #STOCK}, or null if nothing was recorded for it. */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Adds one sample: the time since the previous one goes to the key and
+     * throttle state that sample had. A null key records nothing.
+     *
+     * @return true if this sample starts a throttle event
+     */
+    public boolean record(String key, boolean throttled, long nowMs) {
+        if (lastKey != null && lastMs >= 0) {
+            Entry last = entry(lastKey);
+            long elapsed = Math.max(0, Math.min(MAX_GAP_MS, nowMs - lastMs));
+            last.activeMs += elapsed;
+            if (lastThrottled) {
+                last.throttledMs += elapsed;
+            }
+        }
+        boolean started = key != null && throttled && !(lastThrottled && key.equals(lastKey));
+        if (started) {
+            entry(key).events++;
+        }
+        lastKey = key;
+        lastThrottled = throttled;
+        lastMs = nowMs;
+        return started;
+    }
+
+    private Entry entry(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    public static ThrottleStats fromValues(Map<String, String> values) {
+        ThrottleStats stats = new ThrottleStats();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            String key = value.getKey();
+            int sep = key.lastIndexOf('.');
+            if (sep <= 0) {
+                continue;
+            }
+            long number;
+            try {
+                number = Long.parseLong(value.getValue());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Entry entry = stats.entry(key.substring(0, sep));
+            switch (key.substring(sep + 1)) {
+                case "events":
+                    entry.events = number;
+                    break;
+                case "throttled":
+                    entry.throttledMs = number * 1000;
+                    break;
+                case "active":
+                    entry.activeMs = number * 1000;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return stats;
+    }
+
+    public Map<String, String> toValues() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            Entry stats = entry.getValue();
+            values.put(key + ".events", Long.toString(stats.events));
+            values.put(key + ".throttled", Long.toString(stats.throttledMs / 1000));
+            values.put(key + ".active", Long.toString(stats.activeMs / 1000));
+        }
+        return values;
+    }
+}
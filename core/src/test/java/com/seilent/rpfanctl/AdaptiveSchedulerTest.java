@@ -0,0 +1,63 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveSchedulerTest {
+    private static final FanCurve CURVE = FanCurve.parse("20:0,50:30,70:50,80:100");
+
+    private static AdaptiveScheduler scheduler() {
+        return new AdaptiveScheduler(250, 4000, 10000);
+    }
+
+    /** Feeds a steady temperature until the interval stops changing and returns it. */
+    private static long settle(AdaptiveScheduler scheduler, int tempMilli, boolean screenOn) {
+        long now = 0;
+        long interval = 0;
+        for (int i = 0; i < 20; i++) {
+            interval = scheduler.next(tempMilli, now, CURVE, false, screenOn);
+            now += interval;
+        }
+        return interval;
+    }
+
+    @Test
+    public void backsOffGeometricallyWhileStable() {
+        AdaptiveScheduler scheduler = scheduler();
+        assertEquals(375, scheduler.next(40000, 0, CURVE, false, true));
+        assertEquals(562, scheduler.next(40000, 375, CURVE, false, true));
+        assertEquals(4000, settle(scheduler, 40000, true));
+    }
+
+    @Test
+    public void screenOffBacksOffFurther() {
+        assertEquals(10000, settle(scheduler(), 40000, false));
+    }
+
+    @Test
+    public void fastRiseDropsToTheMinimum() {
+        AdaptiveScheduler scheduler = scheduler();
+        settle(scheduler, 40000, false);
+        scheduler.reset();
+        scheduler.next(40000, 0, CURVE, false, false);
+        assertEquals(250, scheduler.next(42000, 1000, CURVE, false, false));
+    }
+
+    @Test
+    public void nearBreakpointOrSettlingPollsFastOnlyWithTheScreenOn() {
+        AdaptiveScheduler scheduler = scheduler();
+        settle(scheduler, 49000, false);
+        assertEquals(10000, scheduler.next(49000, 100000, CURVE, true, false));
+        assertEquals(250, scheduler.next(49000, 110000, CURVE, false, true));
+        settle(scheduler, 40000, true);
+        assertEquals(250, scheduler.next(40000, 200000, CURVE, true, true));
+    }
+
+    @Test
+    public void fixedNeverChanges() {
+        AdaptiveScheduler scheduler = AdaptiveScheduler.fixed(1000);
+        assertEquals(1000, scheduler.next(40000, 0, CURVE, false, true));
+        assertEquals(1000, scheduler.next(60000, 100, CURVE, true, false));
+    }
+}
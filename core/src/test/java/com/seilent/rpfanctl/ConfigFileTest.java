@@ -0,0 +1,132 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigFileTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> values() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("FAN_CURVE", "20:0,50:30,70:50,80:100");
+        values.put("ENABLED", "1");
+        values.put("CURRENT_PRESET", "Quiet °C");
+        values.put("EMPTY", "");
+        return values;
+    }
+
+    private static void assertRejected(byte[] data, String message) {
+        try {
+            ConfigFile.decode(data);
+            fail("decoded " + message);
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void roundTripsKeysInOrder() throws IOException {
+        Map<String, String> decoded = ConfigFile.decode(ConfigFile.encode(values()));
+        assertEquals(values(), decoded);
+        assertArrayEquals(values().keySet().toArray(), decoded.keySet().toArray());
+    }
+
+    @Test
+    public void rejectsAFlippedBodyByte() {
+        byte[] data = ConfigFile.encode(values());
+        data[data.length - 1] ^= 1;
+        assertRejected(data, "Config checksum mismatch");
+    }
+
+    @Test
+    public void rejectsAnotherFile() {
+        byte[] data = ConfigFile.encode(values());
+        data[0] = 'X';
+        assertRejected(data, "Not a fan config file");
+        assertRejected("FAN_CURVE=20:0".getBytes(), "Not a fan config file");
+        assertRejected(new byte[3], "Not a fan config file");
+    }
+
+    @Test
+    public void rejectsTruncation() {
+        byte[] data = ConfigFile.encode(values());
+        assertRejected(Arrays.copyOf(data, data.length - 5), "Truncated config file");
+        assertRejected(Arrays.copyOf(data, data.length + 1), "Truncated config file");
+    }
+
+    @Test
+    public void rejectsANewerVersion() {
+        byte[] data = ConfigFile.encode(values());
+        data[5] = (byte) (ConfigFile.VERSION + 1);
+        assertRejected(data, "Unsupported config version " + (ConfigFile.VERSION + 1));
+    }
+
+    @Test
+    public void writeReplacesTheFileAndLeavesNoTemporaryCopy() throws IOException {
+        File file = new File(folder.getRoot(), ConfigFile.NAME);
+        ConfigFile.write(file, Collections.singletonMap("ENABLED", "0"));
+        ConfigFile.write(file, values());
+        assertEquals(values(), ConfigFile.read(file));
+        assertArrayEquals(new String[] {ConfigFile.NAME}, folder.getRoot().list());
+    }
+
+    @Test
+    public void updateMergesIntoTheCurrentContents() throws IOException {
+        File file = new File(folder.getRoot(), ConfigFile.NAME);
+        ConfigFile.write(file, values());
+        ConfigFile.update(file, Collections.singletonMap("ENABLED", "0"));
+        Map<String, String> expected = values();
+        expected.put("ENABLED", "0");
+        assertEquals(expected, ConfigFile.read(file));
+    }
+
+    @Test
+    public void updateRepairsACorruptFileFromTheBackup() throws IOException {
+        File file = new File(folder.getRoot(), ConfigFile.NAME);
+        ConfigFile.write(ConfigFile.backupOf(file), values());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Arrays.copyOf(ConfigFile.encode(values()), 20));
+        }
+        ConfigFile.update(file, Collections.singletonMap("ENABLED", "0"));
+        Map<String, String> expected = values();
+        expected.put("ENABLED", "0");
+        assertEquals(expected, ConfigFile.read(file));
+    }
+
+    @Test
+    public void readWithBackupFailsWithoutABackup() throws IOException {
+        File file = new File(folder.getRoot(), ConfigFile.NAME);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[20]);
+        }
+        try {
+            ConfigFile.readWithBackup(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a fan config file"));
+        }
+    }
+
+    @Test
+    public void parsesLegacyShellOutput() throws IOException {
+        Map<String, String> values = ConfigFile.parseShellOutput("legacy\nFAN_CURVE=20:0\nENABLED = 1\nnoise\n");
+        assertEquals("20:0", values.get("FAN_CURVE"));
+        assertEquals("1", values.get("ENABLED"));
+        assertEquals(2, values.size());
+    }
+}
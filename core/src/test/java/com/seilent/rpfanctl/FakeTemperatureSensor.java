@@ -0,0 +1,46 @@
+package com.seilent.rpfanctl;
+
+/** Thermal zones whose readings a test sets by hand. */
+class FakeTemperatureSensor implements TemperatureSensor {
+    private final String[] names;
+    private final String[] types;
+    private final int[] readings;
+
+    /** @param zones pairs of zone name and kernel type */
+    FakeTemperatureSensor(String... zones) {
+        names = new String[zones.length / 2];
+        types = new String[zones.length / 2];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = zones[2 * i];
+            types[i] = zones[2 * i + 1];
+        }
+        readings = new int[names.length];
+    }
+
+    /** Sets every zone's reading in degrees; {@link #INVALID} marks a zone that cannot be read. */
+    FakeTemperatureSensor set(int... degrees) {
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = degrees[i] == INVALID ? INVALID : degrees[i] * 1000;
+        }
+        return this;
+    }
+
+    @Override
+    public String[] getNames() {
+        return names;
+    }
+
+    @Override
+    public String[] getTypes() {
+        return types;
+    }
+
+    @Override
+    public int[] read() {
+        return readings;
+    }
+
+    @Override
+    public void close() {
+    }
+}
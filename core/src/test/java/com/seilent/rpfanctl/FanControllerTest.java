@@ -0,0 +1,89 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FanControllerTest {
+    private static final FanCurve CURVE = FanCurve.parse("20:0,50:30,70:50,80:100").precompute();
+    /** Rise 1, fall 2 degrees; attack 1 s, release 3 s; no slew limit or look-ahead. */
+    private static final ControllerSettings SETTINGS = new ControllerSettings(1f, 2f, 1000, 3000, 0f, 0f, 4000);
+
+    @Test
+    public void firstUpdateJumpsToTheCurve() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        assertEquals(FanCurve.percentToDuty(50), controller.update(72000, 0));
+        assertEquals(72f, controller.getTrackedTemp(), 0f);
+    }
+
+    @Test
+    public void higherTargetWaitsForTheAttackTime() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        controller.update(45000, 0);
+        assertEquals(0, controller.update(55000, 100));
+        assertEquals(0, controller.update(55000, 1000));
+        assertEquals(FanCurve.percentToDuty(30), controller.update(55000, 1100));
+    }
+
+    @Test
+    public void lowerTargetWaitsForTheReleaseTime() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        controller.update(55000, 0);
+        assertEquals(FanCurve.percentToDuty(30), controller.update(40000, 100));
+        assertEquals(FanCurve.percentToDuty(30), controller.update(40000, 3000));
+        assertEquals(0, controller.update(40000, 3100));
+    }
+
+    @Test
+    public void deadbandKeepsTheTrackedTemperature() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        controller.update(50500, 0);
+        controller.update(49000, 1000);
+        controller.update(51400, 2000);
+        assertEquals(50.5f, controller.getTrackedTemp(), 0f);
+        assertEquals(FanCurve.percentToDuty(30), controller.update(48600, 10000));
+        controller.update(48400, 11000);
+        assertEquals(48.4f, controller.getTrackedTemp(), 0.001f);
+    }
+
+    @Test
+    public void slewLimitsTheOutputRate() {
+        ControllerSettings slewed = new ControllerSettings(1f, 2f, 0, 0, 10f, 0f, 4000);
+        FanController controller = new FanController(CURVE, slewed);
+        controller.update(40000, 0);
+        assertEquals(FanCurve.percentToDuty(10), controller.update(85000, 1000));
+        assertEquals(FanCurve.percentToDuty(20), controller.update(85000, 2000));
+        assertEquals(FanCurve.MAX_DUTY, controller.getTargetDuty());
+    }
+
+    @Test
+    public void risingSlopeReadsTheCurveAhead() {
+        ControllerSettings predictive = new ControllerSettings(0f, 2f, 0, 3000, 0f, 8f, 1000);
+        FanController controller = new FanController(CURVE, predictive);
+        controller.update(44000, 0);
+        int duty = 0;
+        for (int t = 1; t <= 4; t++) {
+            duty = controller.update(44000 + t * 1000, t * 1000);
+        }
+        assertTrue(controller.getProjectedTemp() >= 50f);
+        assertEquals(FanCurve.percentToDuty(30), duty);
+    }
+
+    @Test
+    public void demandReplacesTheCurveButKeepsTheHoldTimes() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        assertEquals(FanCurve.percentToDuty(40), controller.updateDemand(FanCurve.percentToDuty(40), 30000, 0));
+        assertEquals(FanCurve.percentToDuty(40), controller.updateDemand(FanCurve.percentToDuty(70), 30000, 500));
+        assertEquals(FanCurve.percentToDuty(70), controller.updateDemand(FanCurve.percentToDuty(70), 30000, 1500));
+        assertEquals(30f, controller.getTrackedTemp(), 0f);
+    }
+
+    @Test
+    public void resetJumpsStraightToTheCurveAgain() {
+        FanController controller = new FanController(CURVE, SETTINGS);
+        controller.update(40000, 0);
+        controller.reset();
+        assertEquals(FanCurve.MAX_DUTY, controller.update(85000, 100));
+    }
+}
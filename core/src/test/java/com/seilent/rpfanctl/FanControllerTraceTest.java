@@ -0,0 +1,91 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/** Replays recorded temperature traces through {@link FanController}. */
+public class FanControllerTraceTest {
+    private static final FanCurve CURVE = FanCurve.parse("20:0,50:30,70:50,80:100").precompute();
+    /** The default deadband and hold times, without slew limiting or look-ahead. */
+    private static final ControllerSettings HOLD = new ControllerSettings(1f, 2f, 1000, 6000, 0f, 0f, 4000);
+    private static final ControllerSettings RAW = new ControllerSettings(0f, 0f, 0, 0, 0f, 0f, 4000);
+
+    /** Indices of the samples where the duty changed. */
+    private static List<Integer> changes(int[] duties) {
+        List<Integer> changes = new ArrayList<>();
+        for (int i = 1; i < duties.length; i++) {
+            if (duties[i] != duties[i - 1]) changes.add(i);
+        }
+        return changes;
+    }
+
+    @Test
+    public void noiseOnABreakpointDoesNotHunt() throws IOException {
+        TemperatureTrace trace = TemperatureTrace.load("idle_breakpoint.trace");
+        long minutes = trace.times[trace.size() - 1] / 60000;
+        assertTrue(changes(trace.replay(new FanController(CURVE, RAW))).size() > 20 * minutes);
+        assertTrue(changes(trace.replay(new FanController(CURVE, HOLD))).size() <= minutes);
+    }
+
+    @Test
+    public void launchSpikesAreRejectedByTheAttackTime() throws IOException {
+        TemperatureTrace trace = TemperatureTrace.load("app_launch_spikes.trace");
+        int load = trace.firstAtOrAbove(50000, 195000);
+        ControllerSettings noAttack = new ControllerSettings(1f, 2f, 0, 6000, 0f, 0f, 4000);
+        assertTrue(changes(trace.replay(new FanController(CURVE, noAttack))).get(0) < load);
+        assertTrue(changes(trace.replay(new FanController(CURVE, HOLD))).get(0) > load);
+    }
+
+    @Test
+    public void sustainedLoadStepsUpAfterAttackAndDownAfterRelease() throws IOException {
+        TemperatureTrace trace = TemperatureTrace.load("app_launch_spikes.trace");
+        int[] duties = trace.replay(new FanController(CURVE, HOLD));
+        List<Integer> changes = changes(duties);
+        int[] steps = new int[changes.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = duties[changes.get(i)];
+        }
+        int low = FanCurve.percentToDuty(30);
+        int high = FanCurve.percentToDuty(50);
+        assertArrayEquals(new int[] {low, high, low, 0}, steps);
+
+        long up = trace.times[changes.get(0)];
+        long upAgain = trace.times[changes.get(1)];
+        long down = trace.times[changes.get(2)];
+        long off = trace.times[changes.get(3)];
+        assertTrue(up >= trace.times[trace.firstAtOrAbove(50000, 195000)] + HOLD.attackMs);
+        assertTrue(upAgain >= trace.times[trace.firstAtOrAbove(70000, up)] + HOLD.attackMs);
+        assertTrue(down >= trace.times[trace.firstBelow(70000, upAgain)] + HOLD.releaseMs);
+        assertTrue(off >= trace.times[trace.firstBelow(50000, down)] + HOLD.releaseMs);
+    }
+
+    @Test
+    public void slewLimitsEveryStepOfABurst() throws IOException {
+        TemperatureTrace trace = TemperatureTrace.load("benchmark_burst.trace");
+        int[] unlimited = trace.replay(new FanController(CURVE, RAW));
+        int largest = 0;
+        for (int i = 1; i < unlimited.length; i++) {
+            largest = Math.max(largest, Math.abs(unlimited[i] - unlimited[i - 1]));
+        }
+        assertTrue(largest >= FanCurve.percentToDuty(50));
+
+        float slew = 20f;
+        int[] duties = trace.replay(new FanController(CURVE, new ControllerSettings(0f, 0f, 0, 0, slew, 0f, 4000)));
+        for (int i = 1; i < duties.length; i++) {
+            float maxStep = slew * FanCurve.MAX_DUTY / 100f * (trace.times[i] - trace.times[i - 1]) / 1000f;
+            assertTrue("step " + i, Math.abs(duties[i] - duties[i - 1]) <= maxStep + 1);
+        }
+        List<Integer> changes = changes(duties);
+        long start = trace.times[changes.get(0)];
+        int full = 0;
+        while (duties[full] != FanCurve.MAX_DUTY) full++;
+        assertTrue(trace.times[full] - start >= 100 / slew * 1000 - 500);
+        assertTrue(duties[duties.length - 1] <= FanCurve.percentToDuty(30));
+    }
+}
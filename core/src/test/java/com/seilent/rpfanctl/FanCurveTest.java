@@ -0,0 +1,75 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FanCurveTest {
+    private static final String SPEC = "20:0,50:30,70:50,80:100";
+
+    @Test
+    public void stepHoldsEachPointUntilTheNext() {
+        FanCurve curve = FanCurve.parse(SPEC);
+        assertEquals(0, curve.dutyForTemp(19900));
+        assertEquals(0, curve.dutyForTemp(49900));
+        assertEquals(FanCurve.percentToDuty(30), curve.dutyForTemp(50000));
+        assertEquals(FanCurve.percentToDuty(30), curve.dutyForTemp(69900));
+        assertEquals(FanCurve.percentToDuty(50), curve.dutyForTemp(75000));
+        assertEquals(FanCurve.MAX_DUTY, curve.dutyForTemp(80000));
+    }
+
+    @Test
+    public void linearInterpolatesAndHoldsTheEnds() {
+        FanCurve curve = FanCurve.parse(SPEC, FanCurve.Interpolation.LINEAR);
+        assertEquals(0, curve.dutyForTemp(10000));
+        assertEquals(FanCurve.percentToDuty(15), curve.dutyForTemp(35000));
+        assertEquals(FanCurve.percentToDuty(40), curve.dutyForTemp(60000));
+        assertEquals(FanCurve.percentToDuty(75), curve.dutyForTemp(75000));
+        assertEquals(FanCurve.MAX_DUTY, curve.dutyForTemp(95000));
+    }
+
+    @Test
+    public void cubicPassesThroughThePointsWithoutOvershoot() {
+        FanCurve curve = FanCurve.parse(SPEC, FanCurve.Interpolation.MONOTONE_CUBIC);
+        for (int i = 0; i < curve.size(); i++) {
+            assertEquals(FanCurve.percentToDuty(curve.getFanPercent(i)),
+                    curve.dutyForTemp(curve.getTemperature(i) * 1000));
+        }
+        int previous = -1;
+        for (int tenths = 0; tenths < FanCurve.TABLE_SIZE; tenths++) {
+            int duty = curve.dutyForTenths(tenths);
+            assertTrue("not monotone at " + tenths, duty >= previous);
+            assertTrue(duty <= FanCurve.MAX_DUTY);
+            previous = duty;
+        }
+        int between = curve.dutyForTemp(60000);
+        assertTrue(between > FanCurve.percentToDuty(30) && between < FanCurve.percentToDuty(50));
+    }
+
+    @Test
+    public void clampsTemperaturesOutsideTheTable() {
+        FanCurve curve = FanCurve.parse("0:20,100:100", FanCurve.Interpolation.LINEAR);
+        assertEquals(FanCurve.percentToDuty(20), curve.dutyForTemp(-5000));
+        assertEquals(FanCurve.MAX_DUTY, curve.dutyForTemp(500000));
+        assertEquals(FanCurve.MAX_DUTY, curve.dutyForTenths(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void emptyAndSinglePointCurves() {
+        FanCurve empty = FanCurve.parse("");
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.dutyForTemp(90000));
+
+        FanCurve single = FanCurve.parse("40:60", FanCurve.Interpolation.MONOTONE_CUBIC);
+        assertEquals(0, single.dutyForTemp(39000));
+        assertEquals(FanCurve.percentToDuty(60), single.dutyForTemp(40000));
+        assertEquals(FanCurve.percentToDuty(60), single.dutyForTemp(100000));
+    }
+
+    @Test
+    public void parseSortsPointsAndSkipsMalformedOnes() {
+        FanCurve curve = FanCurve.parse("70:50, junk,20:0,x:5,50:30");
+        assertEquals("20:0,50:30,70:50", curve.toString());
+    }
+}
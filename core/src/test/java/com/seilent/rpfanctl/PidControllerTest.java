@@ -0,0 +1,62 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PidControllerTest {
+    /** Setpoint 60 degrees, proportional and integral only. */
+    private static final PidSettings PI = new PidSettings(60f, 4f, 0.2f, 0f, 0f);
+
+    @Test
+    public void proportionalActsOnTheErrorAboveTheMinimum() {
+        PidController pid = new PidController(PI, 20, 100);
+        assertEquals(FanCurve.percentToDuty(28), pid.update(62000, 0, 0));
+    }
+
+    @Test
+    public void outputIsClampedToTheFanRange() {
+        PidController pid = new PidController(PI, 20, 80);
+        assertEquals(FanCurve.percentToDuty(20), pid.update(40000, 0, 0));
+        assertEquals(FanCurve.percentToDuty(80), pid.update(95000, 1000, 0));
+    }
+
+    @Test
+    public void integralAccumulatesAStandingError() {
+        PidController pid = new PidController(PI, 20, 100);
+        pid.update(62000, 0, 0);
+        int duty = 0;
+        for (int t = 1; t <= 10; t++) {
+            duty = pid.update(62000, t * 1000, 0);
+        }
+        assertEquals(4f, pid.getIntegral(), 0.001f);
+        assertEquals(FanCurve.percentToDuty(32), duty);
+    }
+
+    @Test
+    public void integralDoesNotWindUpWhileSaturated() {
+        PidController pid = new PidController(PI, 20, 100);
+        for (int t = 0; t <= 300; t++) {
+            pid.update(90000, t * 1000, 0);
+        }
+        assertEquals(0f, pid.getIntegral(), 0f);
+        int duty = pid.update(61000, 301000, 0);
+        assertTrue(duty < FanCurve.percentToDuty(30));
+    }
+
+    @Test
+    public void derivativeActsOnTheMeasurement() {
+        PidController pid = new PidController(new PidSettings(60f, 0f, 0f, 4f, 0f), 20, 100);
+        pid.update(60000, 0, 0);
+        assertEquals(FanCurve.percentToDuty(24), pid.update(61000, 1000, 0));
+        pid.configure(new PidSettings(50f, 0f, 0f, 4f, 0f), 20, 100);
+        assertEquals(FanCurve.percentToDuty(20), pid.update(61000, 2000, 0));
+    }
+
+    @Test
+    public void feedForwardAddsTheLoadShare() {
+        PidController pid = new PidController(new PidSettings(60f, 0f, 0f, 0f, 10f), 20, 100);
+        assertEquals(FanCurve.percentToDuty(25), pid.update(60000, 0, 0.5f));
+    }
+}
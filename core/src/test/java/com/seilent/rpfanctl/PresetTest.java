@@ -0,0 +1,73 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PresetTest {
+    private static List<Preset.TempPoint> points(int... pairs) {
+        List<Preset.TempPoint> points = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            points.add(new Preset.TempPoint(pairs[i], pairs[i + 1]));
+        }
+        return points;
+    }
+
+    @Test
+    public void curveIsBuiltOnceAndShared() {
+        Preset preset = new Preset("Quiet", points(20, 0, 50, 30, 70, 50));
+        FanCurve curve = preset.toFanCurve();
+        assertSame(curve, preset.toFanCurve());
+        assertEquals(FanCurve.percentToDuty(30), preset.getDutyForTemp(60000));
+        assertSame(curve, preset.toFanCurve());
+    }
+
+    @Test
+    public void interpolationChangeRebuildsTheCurve() {
+        Preset preset = new Preset("Quiet", points(20, 0, 50, 30, 70, 50));
+        FanCurve step = preset.toFanCurve();
+        preset.setInterpolation(FanCurve.Interpolation.LINEAR);
+        assertNotSame(step, preset.toFanCurve());
+        assertEquals(FanCurve.Interpolation.LINEAR, preset.toFanCurve().getInterpolation());
+        assertEquals(FanCurve.percentToDuty(40), preset.getDutyForTemp(60000));
+    }
+
+    @Test
+    public void editedPresetGetsItsOwnCurve() {
+        Preset preset = new Preset("Quiet", points(20, 0, 50, 30));
+        preset.toFanCurve();
+        Preset edited = preset.edited("Quiet", points(20, 0, 50, 60), FanCurve.Interpolation.STEP);
+        assertEquals(FanCurve.percentToDuty(60), edited.getDutyForTemp(55000));
+        assertEquals(FanCurve.percentToDuty(30), preset.getDutyForTemp(55000));
+    }
+
+    @Test
+    public void restoredPresetParsesItsSpecOnce() {
+        Preset preset = Preset.restore("uuid", "Loud", "70:100,30:20");
+        preset.setInterpolation(FanCurve.Interpolation.LINEAR);
+        FanCurve curve = preset.toFanCurve();
+        assertEquals("30:20,70:100", curve.toString());
+        assertSame(curve, preset.toFanCurve());
+        assertEquals(2, preset.getPoints().size());
+        assertSame(curve, preset.toFanCurve());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void pointsCannotBeChangedInPlace() {
+        new Preset("Quiet", points(20, 0, 50, 30)).getPoints().add(new Preset.TempPoint(80, 100));
+    }
+
+    @Test
+    public void jsonRoundTripKeepsTheCurve() {
+        Preset preset = new Preset("Quiet", points(20, 0, 50, 30, 70, 50), FanCurve.Interpolation.MONOTONE_CUBIC);
+        Preset restored = Preset.fromJson(preset.toJson());
+        assertEquals(preset.getUuid(), restored.getUuid());
+        assertEquals(preset.toFanCurve().toString(), restored.toFanCurve().toString());
+        assertEquals(preset.getDutyForTemp(60000), restored.getDutyForTemp(60000));
+    }
+}
@@ -0,0 +1,80 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+/** Runs {@link RootShell} against /bin/sh in place of su. */
+public class RootShellTest {
+    private static final long TIMEOUT_MS = 1000;
+
+    private final RootShell shell = new RootShell(RootShell.shell("/bin/sh"), TIMEOUT_MS);
+
+    @After
+    public void closeShell() {
+        shell.close();
+    }
+
+    @Test
+    public void outputWithoutATrailingNewlineIsFramed() {
+        assertEquals("partial", shell.run("printf partial").output);
+        assertEquals("one\ntwo", shell.run("printf 'one\\ntwo'").output);
+        assertEquals("next", shell.run("echo next").output);
+        assertEquals("", shell.run("true").output);
+    }
+
+    @Test
+    public void reportsExitCodes() {
+        RootShell.Result failed = shell.run("echo before; sh -c 'exit 3'");
+        assertEquals(3, failed.exitCode);
+        assertFalse(failed.isSuccess());
+        assertEquals("before", failed.output);
+        assertTrue(shell.run("true").isSuccess());
+    }
+
+    @Test
+    public void batchStopsAtTheFirstFailingStep() {
+        RootShell.BatchResult result = shell.runBatch(Arrays.asList("echo one", "printf two; false", "echo three"));
+        assertFalse(result.success);
+        assertEquals(2, result.steps.size());
+        assertEquals(1, result.failedStep());
+        assertEquals("one", result.steps.get(0).output);
+        assertEquals("two", result.steps.get(1).output);
+        assertEquals(1, result.steps.get(1).exitCode);
+
+        RootShell.BatchResult ok = shell.batch().add("echo a").add("echo b").execute();
+        assertTrue(ok.success);
+        assertEquals(-1, ok.failedStep());
+        assertEquals("b", ok.steps.get(1).output);
+    }
+
+    @Test
+    public void timeoutFailsTheQueuedCommands() {
+        shell.submit("sleep 30");
+        Future<RootShell.Result> queued = shell.submit("echo queued");
+        long start = System.currentTimeMillis();
+        assertNull(shell.run("echo behind"));
+        assertTrue(queued.isCancelled());
+        assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS * 3);
+        assertEquals("fresh", shell.run("echo fresh").output);
+    }
+
+    @Test
+    public void restartsAfterTheShellIsKilled() {
+        String pid = shell.run("echo $$").output;
+        assertNull(shell.run("kill -9 $$"));
+        RootShell.Result result = shell.run("echo $$");
+        assertNotNull(result);
+        assertNotEquals(pid, result.output);
+        assertTrue(shell.isAlive());
+    }
+}
@@ -0,0 +1,83 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SensorFusionTest {
+    private static final int FALLBACK = 99000;
+    private static final FanCurve PRESET_CURVE = FanCurve.parse("30:0,90:100", FanCurve.Interpolation.LINEAR);
+
+    private final FakeTemperatureSensor sensor = new FakeTemperatureSensor(
+            "thermal_zone0", "cpu-0-0-usr",
+            "thermal_zone1", "gpuss-0-usr",
+            "thermal_zone2", "battery");
+
+    private SensorFusion fusion(String settings) {
+        SensorFusion fusion = new SensorFusion();
+        fusion.configure(SensorSettings.parse(settings), sensor.getNames(), sensor.getTypes(), PRESET_CURVE);
+        return fusion;
+    }
+
+    @Test
+    public void maxTakesTheHottestSelectedZone() {
+        SensorFusion fusion = fusion("max|cpu|gpu");
+        assertEquals(2, fusion.getZoneCount());
+        assertEquals(55000, fusion.fuse(sensor.set(50, 55, 70).read(), FALLBACK));
+    }
+
+    @Test
+    public void noSelectorsUsesEveryZone() {
+        SensorFusion fusion = fusion("max");
+        assertEquals(3, fusion.getZoneCount());
+        assertEquals(70000, fusion.fuse(sensor.set(50, 55, 70).read(), FALLBACK));
+    }
+
+    @Test
+    public void selectsByZoneName() {
+        assertEquals(70000, fusion("max|thermal_zone2").fuse(sensor.set(50, 55, 70).read(), FALLBACK));
+    }
+
+    @Test
+    public void weightedAveragesBySelectorWeight() {
+        SensorFusion fusion = fusion("weighted|cpu=3|gpu=1");
+        assertEquals(57500, fusion.fuse(sensor.set(60, 50, 90).read(), FALLBACK));
+    }
+
+    @Test
+    public void unreadableZonesAreSkipped() {
+        SensorFusion fusion = fusion("weighted|cpu=3|gpu=1");
+        assertEquals(50000, fusion.fuse(sensor.set(TemperatureSensor.INVALID, 50, 90).read(), FALLBACK));
+        assertEquals(FALLBACK, fusion.fuse(
+                sensor.set(TemperatureSensor.INVALID, TemperatureSensor.INVALID, 90).read(), FALLBACK));
+        assertEquals(FALLBACK, fusion("max|cpu").fuse(sensor.set(TemperatureSensor.INVALID, 50, 90).read(), FALLBACK));
+    }
+
+    @Test
+    public void curvesModeDemandsTheHighestZoneDutyAndReportsTheHottestZone() {
+        SensorFusion fusion = fusion("curves|cpu=40:0,80:100|gpu");
+        // The CPU's own curve asks for 50% at 60 degrees, the GPU's preset curve 25% at 45.
+        assertEquals(60000, fusion.fuse(sensor.set(60, 45, 90).read(), FALLBACK));
+        assertEquals(FanCurve.percentToDuty(50), fusion.getDemandedDuty());
+        // A cooler zone can ask for more than the hottest one.
+        assertEquals(65000, fusion.fuse(sensor.set(64, 65, 90).read(), FALLBACK));
+        assertEquals(FanCurve.percentToDuty(60), fusion.getDemandedDuty());
+    }
+
+    @Test
+    public void curvesModeBelowEveryCurveStillReportsTheRealTemperature() {
+        SensorFusion fusion = fusion("curves|cpu=40:0,80:100|gpu");
+        assertEquals(28000, fusion.fuse(sensor.set(25, 28, 90).read(), FALLBACK));
+        assertEquals(0, fusion.getDemandedDuty());
+        assertEquals(FALLBACK, fusion.fuse(
+                sensor.set(TemperatureSensor.INVALID, TemperatureSensor.INVALID, 90).read(), FALLBACK));
+        assertEquals(-1, fusion.getDemandedDuty());
+    }
+
+    @Test
+    public void otherModesDemandNothing() {
+        SensorFusion fusion = fusion("max|cpu|gpu");
+        fusion.fuse(sensor.set(60, 45, 90).read(), FALLBACK);
+        assertEquals(-1, fusion.getDemandedDuty());
+    }
+}
@@ -0,0 +1,84 @@
+package com.seilent.rpfanctl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A recorded temperature trace from src/test/resources/traces: one
+ * "EPOCH_MS MILLIDEGREES" line per poll, with # comments. The same format
+ * comes out of polling a zone on the device:
+ * {@code while true; do echo $(date +%s%3N) $(cat /sys/class/thermal/thermal_zone0/temp); sleep 0.25; done}
+ * Times are made relative to the first sample.
+ */
+final class TemperatureTrace {
+    final long[] times;
+    final int[] temps;
+
+    private TemperatureTrace(long[] times, int[] temps) {
+        this.times = times;
+        this.temps = temps;
+    }
+
+    static TemperatureTrace load(String name) throws IOException {
+        InputStream in = TemperatureTrace.class.getResourceAsStream("/traces/" + name);
+        if (in == null) {
+            throw new IOException("No trace " + name);
+        }
+        long[] times = new long[1024];
+        int[] temps = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    temps = Arrays.copyOf(temps, count * 2);
+                }
+                times[count] = Long.parseLong(parts[0]);
+                temps[count] = Integer.parseInt(parts[1]);
+                count++;
+            }
+        }
+        long start = count > 0 ? times[0] : 0;
+        for (int i = 0; i < count; i++) {
+            times[i] -= start;
+        }
+        return new TemperatureTrace(Arrays.copyOf(times, count), Arrays.copyOf(temps, count));
+    }
+
+    int size() {
+        return times.length;
+    }
+
+    /** Runs the controller over the trace and returns its duty after each sample. */
+    int[] replay(FanController controller) {
+        int[] duties = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            duties[i] = controller.update(temps[i], times[i]);
+        }
+        return duties;
+    }
+
+    /** Index of the first sample at or after fromMs whose temperature is at least tempMilli, or -1. */
+    int firstAtOrAbove(int tempMilli, long fromMs) {
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] >= fromMs && temps[i] >= tempMilli) return i;
+        }
+        return -1;
+    }
+
+    /** Index of the first sample at or after fromMs whose temperature is below tempMilli, or -1. */
+    int firstBelow(int tempMilli, long fromMs) {
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] >= fromMs && temps[i] < tempMilli) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package com.seilent.rpfanctl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ThermalZonesTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File zone(String name, String type, String temp) throws IOException {
+        File dir = new File(folder.getRoot(), name);
+        dir.mkdirs();
+        if (type != null) {
+            write(new File(dir, "type"), type + "\n");
+        }
+        if (temp != null) {
+            write(new File(dir, "temp"), temp + "\n");
+        }
+        return dir;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void enumeratesZonesInIndexOrder() throws IOException {
+        zone("thermal_zone10", "battery", "31000");
+        zone("thermal_zone2", "gpuss-0-usr", "52000");
+        zone("thermal_zone0", "cpu-0-0-usr", "48000");
+        zone("thermal_zone1", "skin-therm", null);
+        zone("thermal_zone3", null, "40000");
+        zone("thermal_zoneX", "bogus", "1000");
+        zone("cooling_device0", "fan", "1");
+
+        try (ThermalZones zones = ThermalZones.open(folder.getRoot())) {
+            assertEquals(4, zones.size());
+            assertArrayEquals(new String[] {"thermal_zone0", "thermal_zone2", "thermal_zone3", "thermal_zone10"},
+                    zones.getNames());
+            assertArrayEquals(new String[] {"cpu-0-0-usr", "gpuss-0-usr", "", "battery"}, zones.getTypes());
+            assertArrayEquals(new int[] {48000, 52000, 40000, 31000}, zones.read());
+        }
+    }
+
+    @Test
+    public void rereadsTheOpenNodes() throws IOException {
+        File dir = zone("thermal_zone0", "cpu-0-0-usr", "48000");
+        try (ThermalZones zones = ThermalZones.open(folder.getRoot())) {
+            assertEquals(48000, zones.read()[0]);
+            write(new File(dir, "temp"), "61500\n");
+            assertEquals(61500, zones.read()[0]);
+            write(new File(dir, "temp"), "garbage\n");
+            assertEquals(TemperatureSensor.INVALID, zones.read()[0]);
+        }
+    }
+
+    @Test
+    public void missingDirectoryHasNoZones() {
+        try (ThermalZones zones = ThermalZones.open(new File(folder.getRoot(), "absent"))) {
+            assertEquals(0, zones.size());
+        }
+    }
+}
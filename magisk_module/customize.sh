@@ -43,6 +43,7 @@ if [ ! -f "/data/adb/modules/rpfanctl/fan_config" ]; then
     cat > /data/adb/modules/rpfanctl/fan_config << 'EOF'
 FAN_CURVE=20:0,50:10,70:15,80:20
 ENABLED=0
+ACTUATOR=settings
 EOF
 fi
 
@@ -5,14 +5,28 @@ DAEMON="/system/bin/rpfanctld"
 PIDFILE="$CONFIG_DIR/daemon.pid"
 LOGFILE="$CONFIG_DIR/daemon.log"
 
+# Same JSON line format as DaemonLog and rpfanctld's log_msg
+log_msg() {
+    if [ -n "$EPOCHREALTIME" ]; then
+        FRAC=${EPOCHREALTIME#*.}
+        TS="${EPOCHREALTIME%.*}${FRAC%???}"
+    else
+        TS="$(date +%s)000"
+    fi
+    echo "{\"ts\":$TS,\"level\":\"info\",\"src\":\"service\",\"msg\":\"$1\"}" >> "$LOGFILE"
+}
+
 sleep 30
 
 mkdir -p "$CONFIG_DIR"
 
+# Defaults in the old key=value format; the daemon converts them into fan.conf
+# the first time it starts.
 if [ ! -f "$CONFIG_DIR/fan_config" ]; then
     cat > "$CONFIG_DIR/fan_config" << 'EOF'
 FAN_CURVE=20:0,50:10,70:15,80:20
 ENABLED=0
+ACTUATOR=settings
 EOF
 fi
 
@@ -26,7 +40,7 @@ fi
 if [ -f "$PIDFILE" ]; then
     PID=$(cat "$PIDFILE")
     if [ -d "/proc/$PID" ]; then
-        echo "Daemon already running (PID: $PID)" >> "$LOGFILE"
+        log_msg "Daemon already running (PID: $PID)"
         exit 0
     fi
 fi
@@ -35,7 +49,7 @@ nohup "$DAEMON" >/dev/null 2>&1 &
 DAEMON_PID=$!
 
 echo $DAEMON_PID > "$PIDFILE"
-echo "Daemon started with PID: $DAEMON_PID" >> "$LOGFILE"
+log_msg "Daemon started with PID: $DAEMON_PID"
 
 chmod 644 "$CONFIG_DIR"/*
 chmod 755 "$DAEMON"
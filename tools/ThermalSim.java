@@ -0,0 +1,82 @@
+import com.seilent.rpfanctl.ControllerSettings;
+import com.seilent.rpfanctl.FanController;
+import com.seilent.rpfanctl.FanCurve;
+import com.seilent.rpfanctl.PidController;
+import com.seilent.rpfanctl.PidSettings;
+
+/**
+ * Compares curve mode and PID mode on a first-order thermal model of the
+ * handheld: C dT/dt = P(load) - G(fan) (T - ambient). The load idles, bursts
+ * to full for two minutes and idles again; both controllers see the same
+ * temperatures and the PID also gets the CPU load for feed-forward. Curve mode
+ * is run with and without its look-ahead.
+ *
+ * Usage: ThermalSim [CURVE] [SETPOINT:KP:KI:KD:FF]
+ */
+public class ThermalSim {
+    private static final double AMBIENT = 30;
+    private static final double CAPACITY = 15;
+    private static final long STEP_MS = 250;
+
+    public static void main(String[] args) {
+        FanCurve curve = FanCurve.parse(args.length > 0 ? args[0] : "40:20,55:40,70:70,80:100",
+                FanCurve.Interpolation.LINEAR);
+        PidSettings pid = PidSettings.parse(args.length > 1 ? args[1] : PidSettings.DEFAULT.toString());
+
+        FanController curveController = new FanController(curve, ControllerSettings.DEFAULT);
+        ControllerSettings d = ControllerSettings.DEFAULT;
+        FanController reactiveController = new FanController(curve, new ControllerSettings(d.riseDeadband,
+                d.fallDeadband, d.attackMs, d.releaseMs, d.maxSlewPerSecond, 0, d.slopeWindowMs));
+        PidController pidController = new PidController(pid, curve.getMinFanPercent(), curve.getMaxFanPercent());
+
+        Plant curvePlant = new Plant();
+        Plant reactivePlant = new Plant();
+        Plant pidPlant = new Plant();
+        for (long now = 0; now <= 360000; now += STEP_MS) {
+            float load = now >= 60000 && now < 180000 ? 1f : 0.1f;
+            double curveDuty = curveController.update(curvePlant.milli(), now);
+            double reactiveDuty = reactiveController.update(reactivePlant.milli(), now);
+            double pidDuty = pidController.update(pidPlant.milli(), now, load);
+            curvePlant.step(load, curveDuty / FanCurve.MAX_DUTY, pid.setpoint);
+            reactivePlant.step(load, reactiveDuty / FanCurve.MAX_DUTY, pid.setpoint);
+            pidPlant.step(load, pidDuty / FanCurve.MAX_DUTY, pid.setpoint);
+            if (now % 20000 == 0) {
+                System.out.printf("t=%3ds load=%3.0f%%  curve %5.1fC %3.0f%%  pid %5.1fC %3.0f%%%n",
+                        now / 1000, load * 100,
+                        curvePlant.temp, curveDuty * 100 / FanCurve.MAX_DUTY,
+                        pidPlant.temp, pidDuty * 100 / FanCurve.MAX_DUTY);
+            }
+        }
+        System.out.println();
+        curvePlant.report("curve", pid.setpoint);
+        reactivePlant.report("curve without look-ahead", pid.setpoint);
+        pidPlant.report("pid  ", pid.setpoint);
+    }
+
+    private static class Plant {
+        double temp = 45;
+        double maxTemp;
+        double fanSum;
+        double errorSum;
+        int steps;
+
+        int milli() {
+            return (int) Math.round(temp * 1000);
+        }
+
+        void step(float load, double fan, double setpoint) {
+            double power = 2 + 8 * load;
+            double conductance = 0.08 + 0.5 * fan;
+            temp += (power - conductance * (temp - AMBIENT)) * STEP_MS / 1000.0 / CAPACITY;
+            maxTemp = Math.max(maxTemp, temp);
+            fanSum += fan;
+            errorSum += Math.abs(temp - setpoint);
+            steps++;
+        }
+
+        void report(String label, double setpoint) {
+            System.out.printf("%s: peak %.1fC (overshoot %.1fC), mean |T-target| %.1fC, mean fan %.0f%%%n",
+                    label, maxTemp, Math.max(0, maxTemp - setpoint), errorSum / steps, fanSum * 100 / steps);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+#!/bin/sh
+# Runs the Java fan control loop on a desktop JVM against a fake sysfs tree.
+# Usage: [ACTUATOR=sysfs] [MODE=pid] [SENSORS=SPEC] tools/daemon_harness.sh [TEMP_C ...]
+# Each temperature is held for HOLD_MS (default 3000); duty changes are printed as they
+# would be applied on the device. With ACTUATOR=sysfs the duty is written to the
+# fake PWM node instead. The temperatures go to the CPU zone; a GPU zone
+# (thermal_zone1) stays at GPU_C (default 30), and SENSORS sets FAN_SENSORS.
+# From THROTTLE_C (default 80) up, the fake CPU and GPU clocks are capped the way
+# the kernel's thermal framework would, and the daemon logs a throttle event.
+
+set -e
+
+REPO_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+SRC_DIR="$REPO_DIR/app/src/main/java"
+CORE_DIR="$REPO_DIR/core/src/main/java"
+WORK_DIR="$(mktemp -d)"
+trap 'kill $DAEMON_PID 2>/dev/null; wait $DAEMON_PID 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+ROOT="$WORK_DIR/root"
+CLASSES="$WORK_DIR/classes"
+MODULE_DIR="$ROOT/data/adb/modules/rpfanctl"
+TEMP_NODE="$ROOT/sys/class/thermal/thermal_zone0/temp"
+GPU_NODE="$ROOT/sys/class/thermal/thermal_zone1/temp"
+PWM_NODE="$ROOT/sys/class/gpio5_pwm2/duty"
+CPUFREQ_DIR="$ROOT/sys/devices/system/cpu/cpufreq/policy0"
+KGSL_DIR="$ROOT/sys/class/kgsl/kgsl-3d0"
+INTERVAL_MS=100
+HOLD_MS=${HOLD_MS:-3000}
+
+mkdir -p "$CLASSES" "$MODULE_DIR" "$(dirname "$TEMP_NODE")" "$(dirname "$GPU_NODE")" "$(dirname "$PWM_NODE")"
+
+cat > "$MODULE_DIR/fan_config" << CFG
+FAN_CURVE=20:0,50:10,70:15,80:20
+ENABLED=0
+ACTUATOR=${ACTUATOR:-settings}
+FAN_MODE=${MODE:-curve}
+FAN_SENSORS=${SENSORS:-max|thermal_zone0}
+CFG
+
+cat > "$MODULE_DIR/fan_state" << 'CFG'
+ENABLED=1
+CURRENT_PRESET=Default
+CFG
+
+echo cpu-0-0-usr > "$(dirname "$TEMP_NODE")/type"
+echo gpuss-0-usr > "$(dirname "$GPU_NODE")/type"
+echo 40000 > "$TEMP_NODE"
+echo $((${GPU_C:-30} * 1000)) > "$GPU_NODE"
+echo 0 > "$PWM_NODE"
+
+# Both cores share policy0, as cpuN/cpufreq links do on the device.
+mkdir -p "$CPUFREQ_DIR" "$KGSL_DIR"
+for CPU in cpu0 cpu1; do
+    mkdir -p "$ROOT/sys/devices/system/cpu/$CPU"
+    ln -s ../cpufreq/policy0 "$ROOT/sys/devices/system/cpu/$CPU/cpufreq"
+done
+echo 2841600 > "$CPUFREQ_DIR/cpuinfo_max_freq"
+echo 2841600 > "$CPUFREQ_DIR/scaling_max_freq"
+echo 1804800 > "$CPUFREQ_DIR/scaling_cur_freq"
+echo "587000000 525000000 490000000 305000000" > "$KGSL_DIR/gpu_available_frequencies"
+echo 587000000 > "$KGSL_DIR/max_gpuclk"
+echo 305000000 > "$KGSL_DIR/gpuclk"
+
+javac -d "$CLASSES" -sourcepath "$SRC_DIR:$CORE_DIR" "$SRC_DIR/com/seilent/rpfanctl/FanDaemon.java"
+
+java -cp "$CLASSES" com.seilent.rpfanctl.FanDaemon \
+    --root "$ROOT" --interval $INTERVAL_MS --dry-run --verbose &
+DAEMON_PID=$!
+
+if [ $# -eq 0 ]; then
+    set -- 40 55 72 85 60 30
+fi
+
+for TEMP_C in "$@"; do
+    echo "harness: temperature ${TEMP_C}C"
+    echo $((TEMP_C * 1000)) > "$TEMP_NODE"
+    if [ "$TEMP_C" -ge "${THROTTLE_C:-80}" ]; then
+        echo 1996800 > "$CPUFREQ_DIR/scaling_max_freq"
+        echo 490000000 > "$KGSL_DIR/max_gpuclk"
+    else
+        echo 2841600 > "$CPUFREQ_DIR/scaling_max_freq"
+        echo 587000000 > "$KGSL_DIR/max_gpuclk"
+    fi
+    sleep $(awk "BEGIN { print $HOLD_MS / 1000 }")
+    echo "harness: pwm duty $(cat "$PWM_NODE")"
+done
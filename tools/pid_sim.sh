@@ -0,0 +1,12 @@
+#!/bin/sh
+# Runs the curve and PID controllers against a simulated thermal model.
+# Usage: tools/pid_sim.sh [CURVE] [SETPOINT:KP:KI:KD:FF]
+
+set -e
+
+REPO_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+CLASSES="$(mktemp -d)"
+trap 'rm -rf "$CLASSES"' EXIT
+
+javac -d "$CLASSES" -sourcepath "$REPO_DIR/core/src/main/java" "$REPO_DIR/tools/ThermalSim.java"
+java -cp "$CLASSES" ThermalSim "$@"
@@ -0,0 +1,96 @@
+#!/bin/sh
+# Exercises the daemon's control protocol on a desktop JVM: starts FanDaemon on
+# a fake sysfs tree with the protocol on a loopback port, subscribes to state
+# pushes and sends each command, including one APPLY transaction, printing the
+# resulting fan.conf. The old fan_config/fan_state files are migrated to
+# fan.conf on startup.
+# Usage: [PORT=47211] tools/protocol_harness.sh
+
+set -e
+
+REPO_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+SRC_DIR="$REPO_DIR/app/src/main/java"
+CORE_DIR="$REPO_DIR/core/src/main/java"
+WORK_DIR="$(mktemp -d)"
+trap 'kill $SUB_PID $DAEMON_PID 2>/dev/null; wait $DAEMON_PID 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+ROOT="$WORK_DIR/root"
+CLASSES="$WORK_DIR/classes"
+MODULE_DIR="$ROOT/data/adb/modules/rpfanctl"
+ZONE_DIR="$ROOT/sys/class/thermal/thermal_zone0"
+PORT=${PORT:-47211}
+
+mkdir -p "$CLASSES" "$MODULE_DIR" "$ZONE_DIR"
+
+cat > "$MODULE_DIR/fan_config" << 'CFG'
+FAN_CURVE=20:0,50:10,70:15,80:20
+ENABLED=0
+ACTUATOR=settings
+CFG
+
+cat > "$MODULE_DIR/fan_state" << 'CFG'
+ENABLED=0
+CURRENT_PRESET=Default
+CFG
+
+echo cpu-0-0-usr > "$ZONE_DIR/type"
+echo 45000 > "$ZONE_DIR/temp"
+
+# A launcher in front, and a game mapped to its own preset
+TOP_APP="$ROOT/dev/cpuset/top-app/cgroup.procs"
+mkdir -p "$(dirname "$TOP_APP")" "$ROOT/proc/4242" "$ROOT/proc/4343"
+printf 'com.example.game\0' > "$ROOT/proc/4242/cmdline"
+printf 'com.example.launcher\0' > "$ROOT/proc/4343/cmdline"
+echo 4343 > "$TOP_APP"
+GAME_UUID=00000000-0000-0000-0000-00000000beef
+
+javac -d "$CLASSES" -sourcepath "$SRC_DIR:$CORE_DIR" \
+    "$SRC_DIR/com/seilent/rpfanctl/FanDaemon.java" \
+    "$SRC_DIR/com/seilent/rpfanctl/DaemonClient.java" \
+    "$CORE_DIR/com/seilent/rpfanctl/ConfigFile.java"
+
+java -cp "$CLASSES" com.seilent.rpfanctl.ConfigFile "$MODULE_DIR/app_presets.conf" \
+    app.com.example.game=$GAME_UUID \
+    preset.$GAME_UUID.CURRENT_PRESET=Game \
+    preset.$GAME_UUID.CURRENT_PRESET_UUID=$GAME_UUID \
+    preset.$GAME_UUID.FAN_CURVE=40:40,60:80,75:100 > /dev/null
+
+java -cp "$CLASSES" com.seilent.rpfanctl.FanDaemon \
+    --root "$ROOT" --interval 100 --tcp "$PORT" --dry-run > "$WORK_DIR/daemon.out" &
+DAEMON_PID=$!
+sleep 1
+
+client() {
+    java -cp "$CLASSES" com.seilent.rpfanctl.DaemonClient --tcp "$PORT" "$@"
+}
+
+client subscribe &
+SUB_PID=$!
+sleep 1
+
+step() {
+    echo "harness: $*"
+    client "$@"
+    sleep 1
+}
+
+step enable
+echo 75000 > "$ZONE_DIR/temp"
+sleep 2
+step curve 40:20,60:50,80:100 FAN_INTERP=linear FAN_MODE=curve
+step select Quiet 123e4567-e89b-12d3-a456-426614174000
+step apply 30:10,60:40,85:100 Balanced 00000000-0000-0000-0000-0000000ba1a7 enable
+step disable
+step history 60 5
+
+echo "harness: game in front"
+echo 4242 > "$TOP_APP"
+sleep 6
+java -cp "$CLASSES" com.seilent.rpfanctl.ConfigFile "$MODULE_DIR/fan.conf" | grep '^CURRENT_PRESET='
+echo "harness: launcher in front"
+echo 4343 > "$TOP_APP"
+sleep 6
+java -cp "$CLASSES" com.seilent.rpfanctl.ConfigFile "$MODULE_DIR/fan.conf" | grep '^CURRENT_PRESET='
+
+echo "harness: fan.conf"
+java -cp "$CLASSES" com.seilent.rpfanctl.ConfigFile "$MODULE_DIR/fan.conf"
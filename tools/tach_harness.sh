@@ -0,0 +1,86 @@
+#!/bin/sh
+# Runs the Java fan control loop against a fake sysfs tree whose fan reports its
+# speed through hwmon, to check RPM feedback and stall handling.
+# Usage: tools/tach_harness.sh
+# The fake fan follows the PWM node but only reaches FULL_RPM (default 4800) of
+# the 6000 RPM fan.conf promises, so the RPM loop has to raise the duty to hit
+# the curve's speed; look-ahead is off so the temperature steps map straight
+# to speeds. It is then blocked for STALL_MS (default 8000), which the
+# daemon should report as a stall and answer with full duty, and freed again.
+
+set -e
+
+REPO_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+SRC_DIR="$REPO_DIR/app/src/main/java"
+CORE_DIR="$REPO_DIR/core/src/main/java"
+WORK_DIR="$(mktemp -d)"
+trap 'kill $FAN_PID $DAEMON_PID 2>/dev/null; wait $DAEMON_PID 2>/dev/null || true; rm -rf "$WORK_DIR"' EXIT
+
+ROOT="$WORK_DIR/root"
+CLASSES="$WORK_DIR/classes"
+MODULE_DIR="$ROOT/data/adb/modules/rpfanctl"
+TEMP_NODE="$ROOT/sys/class/thermal/thermal_zone0/temp"
+PWM_NODE="$ROOT/sys/class/gpio5_pwm2/duty"
+HWMON_DIR="$ROOT/sys/class/hwmon/hwmon0"
+MAX_DUTY=50000
+FULL_RPM=${FULL_RPM:-4800}
+HOLD_MS=${HOLD_MS:-6000}
+STALL_MS=${STALL_MS:-8000}
+
+mkdir -p "$CLASSES" "$MODULE_DIR" "$(dirname "$TEMP_NODE")" "$(dirname "$PWM_NODE")" "$HWMON_DIR"
+
+cat > "$MODULE_DIR/fan_config" << 'CFG'
+FAN_CURVE=20:0,50:30,70:50,80:100
+ENABLED=1
+ACTUATOR=sysfs
+FAN_MAX_RPM=6000
+FAN_CONTROLLER=0.5:2.0:1000:6000:20.0:0:4000
+FAN_SENSORS=max
+LOG_LEVEL=info
+CFG
+: > "$MODULE_DIR/fan_state"
+
+echo cpu-0-0-usr > "$(dirname "$TEMP_NODE")/type"
+echo 40000 > "$TEMP_NODE"
+echo 0 > "$PWM_NODE"
+echo pwmfan > "$HWMON_DIR/name"
+echo 0 > "$HWMON_DIR/fan1_input"
+
+# The fan: speed follows the duty, unless it is blocked.
+(
+    while true; do
+        if [ -f "$WORK_DIR/blocked" ]; then
+            echo 0 > "$HWMON_DIR/fan1_input"
+        else
+            echo $(($(cat "$PWM_NODE") * FULL_RPM / MAX_DUTY)) > "$HWMON_DIR/fan1_input"
+        fi
+        sleep 0.1
+    done
+) &
+FAN_PID=$!
+
+javac -d "$CLASSES" -sourcepath "$SRC_DIR:$CORE_DIR" "$SRC_DIR/com/seilent/rpfanctl/FanDaemon.java"
+
+java -cp "$CLASSES" com.seilent.rpfanctl.FanDaemon --root "$ROOT" --interval 200 --verbose &
+DAEMON_PID=$!
+
+hold() {
+    sleep $(awk "BEGIN { print $1 / 1000 }")
+    echo "harness: duty $(cat "$PWM_NODE"), $(cat "$HWMON_DIR/fan1_input") RPM"
+}
+
+# Curve percentage of 6000 RPM at each temperature.
+for STEP in 50:1800 70:3000; do
+    TEMP_C=${STEP%%:*}
+    echo "harness: temperature ${TEMP_C}C, target ${STEP#*:} RPM"
+    echo $((TEMP_C * 1000)) > "$TEMP_NODE"
+    hold $HOLD_MS
+done
+
+echo "harness: fan blocked"
+touch "$WORK_DIR/blocked"
+hold $STALL_MS
+
+echo "harness: fan freed"
+rm "$WORK_DIR/blocked"
+hold $HOLD_MS